@@ -88,7 +88,22 @@ public class ClientKVStore {
      * @return a message that confirms the insertion of the tuple, update of a the tuple or an error.
      */
     public String put(String key, String value) {
-        String putRequest = "put " + this.username + " " + key + " " + value;
+        return sendPut("put " + this.username + " " + key + " " + value, key);
+    }
+
+    /**
+     * Inserts a key-value pair that expires after the given time into the KVServer.
+     *
+     * @param key   the key that identifies the given value.
+     * @param seconds the time to live of the key in seconds.
+     * @param value the value that is indexed by the given key.
+     * @return a message that confirms the insertion of the tuple, update of a the tuple or an error.
+     */
+    public String putWithTtl(String key, long seconds, String value) {
+        return sendPut("put_ttl " + this.username + " " + key + " " + seconds + " " + value, key);
+    }
+
+    private String sendPut(String putRequest, String key) {
         connectToCorrectServer(key);
         String putResponse = requestUntilNotStopped(putRequest);
         String putResponseCommand = putResponse.split(" ")[0];
@@ -257,6 +272,55 @@ public class ClientKVStore {
         }
     }
 
+    /**
+     * Imports the key-value pairs of a file into the KVServers, e.g. to seed the cluster with a dataset.
+     * The file is read by the servers, so it has to be in the import folder of every server (<data dir>/import)
+     * under the given relative path.
+     * Every server imports the keys of its own range and replicates them once at the end.
+     *
+     * @param file the path of the file relative to the import folder, one pair per line with the key separated from the value by a space.
+     * @return the number of imported pairs or an error.
+     */
+    public String importFile(String file) {
+        String importRequest = "import " + this.username + " " + file;
+        fetchLatestMetadata();
+        if (this.metadata.getData().size() == 0)
+            return importResponse(requestUntilNotStopped(importRequest), 0);
+        int imported = 0;
+        for (ServerEntry server : this.metadata.getData().values()) {
+            this.disconnect();
+            this.connect(server.getIp(), server.getClientPort());
+            String importResponse = requestUntilNotStopped(importRequest);
+            if (!importResponse.startsWith(Constants.IMPORT_SUCCESS))
+                return importResponse(importResponse, imported);
+            imported += Integer.parseInt(importResponse.split(" ")[1]);
+        }
+        LOGGER.fine("IMPORT | imported " + imported + " pairs into " + this.metadata.numberOfServers() + " servers");
+        return "SUCCESS: imported " + imported + " pairs";
+    }
+
+    private String importResponse(String importResponse, int imported) {
+        switch (importResponse.split(" ")[0]) {
+            case "import_success":
+                LOGGER.fine("IMPORT | import_success: " + importResponse);
+                return "SUCCESS: imported " + (imported + Integer.parseInt(importResponse.split(" ")[1])) + " pairs";
+            case "server_stopped":
+            case "server_write_lock":
+                LOGGER.fine("IMPORT | " + importResponse);
+                // the server reports the pairs it imported before it stopped accepting writes
+                String[] parts = importResponse.split(" ");
+                if (parts.length > 1 && parts[1].matches("\\d+"))
+                    imported += Integer.parseInt(parts[1]);
+                return "A server is currently blocked for write requests, please try again later. Imported " + imported + " pairs so far.";
+            case "import_error":
+                LOGGER.fine("IMPORT | import_error: " + importResponse);
+                return "ERROR: " + importResponse.replaceFirst("import_error ", "");
+            default:
+                LOGGER.severe("IMPORT | invalid import response received: " + importResponse);
+                return "Error: invalid import response.";
+        }
+    }
+
     /**
      * Quits the client application.
      *
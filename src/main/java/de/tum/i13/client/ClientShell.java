@@ -154,6 +154,37 @@ public class ClientShell {
                         }
                     }
                     break;
+                case "put_ttl":
+                    if(!isLoggedIn){
+                        printEchoLine("You are not logged in, please register/login!");
+                        break;
+                    }
+                    // ---------------------------------------- put_ttl -----------------------------------------------
+                    if (user_input_arr.length < 4) {
+                        printEchoLine("Invalid input for command \"put_ttl\": invalid amount of input arguments provided, see \"help\" command.");
+                    } else if (!user_input_arr[2].matches("[1-9]\\d{0,8}")) {
+                        printEchoLine("Invalid input for command \"put_ttl\": the time to live has to be a positive number of seconds.");
+                    } else {
+                        String key = user_input_arr[1];
+                        long seconds = Long.parseLong(user_input_arr[2]);
+                        String value = user_input_arr[3];
+                        for (int i = 4; i < user_input_arr.length; i++)
+                            value += " " + user_input_arr[i];
+                        printEchoLine(client.putWithTtl(key, seconds, value));
+                    }
+                    break;
+                case "import":
+                    if(!isLoggedIn){
+                        printEchoLine("You are not logged in, please register/login!");
+                        break;
+                    }
+                    // ----------------------------------------- import -----------------------------------------------
+                    if (user_input_arr.length != 2) {
+                        printEchoLine("Invalid input for command \"import\": invalid amount of input arguments provided, see \"help\" command.");
+                    } else {
+                        printEchoLine(client.importFile(user_input_arr[1]));
+                    }
+                    break;
                 case "get":
                      if(!isLoggedIn){
                         printEchoLine("You are not logged in, please register/login!");
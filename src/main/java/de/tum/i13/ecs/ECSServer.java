@@ -196,7 +196,10 @@ public class ECSServer extends Thread {
             logger.info("Server: " + ip + ":" + clientPort +" left successfully.");
 
             logger.info("transfer data to predecessor " + predIp + ":" + predClientPort + " with command " + "transfer_data_pred_leaving");
-            sendDataToTheServer(new MessageObject("transfer_data_pred_leaving", null, data, owners),  predIp, predServerPort);
+            MessageObject transfer = new MessageObject("transfer_data_pred_leaving", null, data, owners);
+            transfer.setCompressedData(mobj.getCompressedData());
+            transfer.setExpiries(mobj.getExpiries());
+            sendDataToTheServer(transfer,  predIp, predServerPort);
             return;
         } else if (commandArr.length == 3){
             String ip = commandArr[1];
@@ -0,0 +1,106 @@
+package de.tum.i13.evaluation;
+
+import de.tum.i13.server.kvcache.KVCache;
+import de.tum.i13.shared.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Measures the latency of cache hits and of inserts that evict a key for growing cache sizes,
+ * the cost of neither should grow with the size.
+ * Then measures the hit throughput of a sharded cache with a growing number of threads.
+ * Every strategy is filled to its capacity, warmed up and then read at random keys that are all cached.
+ */
+public class CacheBenchmark {
+    private final static Logger LOGGER = Logger.getLogger(CacheBenchmark.class.getName());
+    private static final int[] CACHE_SIZES = {1000, 10000, 100000, 1000000};
+    private static final int NUMBER_OF_HITS = 1000000;
+    private static final int NUMBER_OF_ROUNDS = 5;
+    private static final int NUMBER_OF_EVICTIONS = 100000;
+    private static final int CONCURRENT_CACHE_SIZE = 100000;
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws InterruptedException {
+        for (String strategy : new String[]{Constants.FIFO, Constants.LRU, Constants.LFU, Constants.TINYLFU}) {
+            for (int size : CACHE_SIZES) {
+                KVCache cache = new KVCache(size, strategy);
+                for (int i = 0; i < size; i++)
+                    cache.put("key" + i, "value" + i);
+                // the keys are not spread evenly over the shards, so some were displaced by their shard
+                List<String> cached = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    if (cache.isKeyInCache("key" + i))
+                        cached.add("key" + i);
+                }
+                String[] keys = cached.toArray(new String[0]);
+                Random random = new Random(42);
+                int[] order = new int[NUMBER_OF_HITS];
+                for (int i = 0; i < NUMBER_OF_HITS; i++)
+                    order[i] = random.nextInt(keys.length);
+
+                // the first round warms up the JIT, the best of the others is reported
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round <= NUMBER_OF_ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < NUMBER_OF_HITS; i++) {
+                        if (cache.get(keys[order[i]]) == null)
+                            throw new IllegalStateException("Missed a cached key: " + keys[order[i]]);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (round > 0)
+                        best = Math.min(best, elapsed);
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < NUMBER_OF_EVICTIONS; i++)
+                    cache.put("new" + i, "value" + i);
+                long evictions = System.nanoTime() - start;
+
+                String result = strategy + " with " + keys.length + " of " + size + " keys cached: " + NUMBER_OF_HITS + " hits in " + best / 1000000 + " ms, "
+                        + ((double) best / NUMBER_OF_HITS) + " ns per hit, "
+                        + NUMBER_OF_EVICTIONS + " evicting puts in " + evictions / 1000000 + " ms, "
+                        + ((double) evictions / NUMBER_OF_EVICTIONS) + " ns per evicting put";
+                LOGGER.info(result);
+                System.out.println(result);
+            }
+        }
+        measureConcurrentHits();
+    }
+
+    /**
+     * every thread reads its own random order of the cached keys, the hits per second should grow with the threads
+     * up to the number of cores.
+     */
+    private static void measureConcurrentHits() throws InterruptedException {
+        KVCache cache = new KVCache(CONCURRENT_CACHE_SIZE, Constants.LRU);
+        String[] keys = new String[CONCURRENT_CACHE_SIZE];
+        for (int i = 0; i < CONCURRENT_CACHE_SIZE; i++) {
+            keys[i] = "key" + i;
+            cache.put(keys[i], "value" + i);
+        }
+        for (int threads : THREADS) {
+            Thread[] readers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(t);
+                readers[t] = new Thread(() -> {
+                    for (int i = 0; i < NUMBER_OF_HITS; i++)
+                        cache.get(keys[random.nextInt(CONCURRENT_CACHE_SIZE)]);
+                });
+            }
+            long start = System.nanoTime();
+            for (Thread reader : readers)
+                reader.start();
+            for (Thread reader : readers)
+                reader.join();
+            long elapsed = System.nanoTime() - start;
+
+            String result = "LRU with " + threads + " threads on " + Runtime.getRuntime().availableProcessors() + " cores: "
+                    + ((long) threads * NUMBER_OF_HITS * 1000000000L / elapsed) + " hits per second";
+            LOGGER.info(result);
+            System.out.println(result);
+        }
+    }
+}
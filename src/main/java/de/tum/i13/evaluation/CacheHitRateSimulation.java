@@ -0,0 +1,67 @@
+package de.tum.i13.evaluation;
+
+import de.tum.i13.server.kvcache.KVCache;
+import de.tum.i13.shared.Constants;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Replays the same trace of key accesses against every cache strategy and compares their hit rates.
+ * The trace mixes a Zipfian distributed hot set, as of client gets, with scans over keys that are read once,
+ * as of rebalancing and replication. A miss puts the key into the cache, as the server does after reading the storage.
+ */
+public class CacheHitRateSimulation {
+    private final static Logger LOGGER = Logger.getLogger(CacheHitRateSimulation.class.getName());
+    private static final int CACHE_SIZE = 1000;
+    private static final int NUMBER_OF_KEYS = 100000;
+    private static final double ZIPF_EXPONENT = 0.9;
+    private static final int NUMBER_OF_ACCESSES = 1000000;
+    // every SCAN_INTERVAL accesses a scan reads SCAN_LENGTH keys that are not part of the hot set
+    private static final int SCAN_INTERVAL = 20000;
+    private static final int SCAN_LENGTH = 5000;
+
+    public static void main(String[] args) {
+        String[] trace = createTrace();
+        for (String strategy : new String[]{Constants.FIFO, Constants.LRU, Constants.LFU, Constants.TINYLFU}) {
+            KVCache cache = new KVCache(CACHE_SIZE, strategy);
+            long hits = 0;
+            for (String key : trace) {
+                if (cache.get(key) != null)
+                    hits++;
+                else
+                    cache.put(key, key);
+            }
+            String result = strategy + ": " + hits + " hits of " + trace.length + " accesses, hit rate "
+                    + String.format("%.2f", 100.0 * hits / trace.length) + " %";
+            LOGGER.info(result);
+            System.out.println(result);
+        }
+    }
+
+    private static String[] createTrace() {
+        // cumulative distribution of the Zipf law over the hot keys
+        double[] cdf = new double[NUMBER_OF_KEYS];
+        double sum = 0;
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cdf[i] = sum;
+        }
+        Random random = new Random(42);
+        String[] trace = new String[NUMBER_OF_ACCESSES];
+        int scanned = 0;
+        int i = 0;
+        while (i < NUMBER_OF_ACCESSES) {
+            if (i > 0 && i % SCAN_INTERVAL == 0) {
+                for (int j = 0; j < SCAN_LENGTH && i < NUMBER_OF_ACCESSES; j++)
+                    trace[i++] = "scan" + scanned++;
+            }
+            if (i == NUMBER_OF_ACCESSES)
+                break;
+            int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i++] = "key" + (rank < 0 ? -rank - 1 : rank);
+        }
+        return trace;
+    }
+}
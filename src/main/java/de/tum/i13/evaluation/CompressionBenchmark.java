@@ -0,0 +1,152 @@
+package de.tum.i13.evaluation;
+
+import de.tum.i13.server.storage.Compression;
+import de.tum.i13.server.storage.FsyncPolicy;
+import de.tum.i13.server.storage.LogStorageEngine;
+import de.tum.i13.shared.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Measures the value compression of the log storage engine for every deflate level:
+ * the compression ratio, the CPU time spent per MB to compress and to decompress the values
+ * and the size of the data log with and without compression.
+ * Uses the Enron mails of the DataLoader if the dataset is available and generated mail-like text otherwise.
+ */
+public class CompressionBenchmark {
+    private final static Logger LOGGER = Logger.getLogger(CompressionBenchmark.class.getName());
+    private static final int NUMBER_OF_VALUES = 2000;
+    private static final int ROUNDS = 5;
+    private static final int[] LEVELS = {1, 3, 6, 9};
+    private static final String[] WORDS = {"the", "meeting", "energy", "trading", "contract", "please", "forward",
+            "attached", "regards", "California", "power", "gas", "price", "deal", "schedule", "Enron", "report",
+            "thanks", "call", "market", "will", "be", "on", "for", "to", "of", "and", "a", "in", "we"};
+
+    public static void main(String[] args) throws IOException {
+        TreeMap<String, String> data = loadValues();
+        List<byte[]> values = new ArrayList<>();
+        long rawBytes = 0;
+        for (String value : data.values()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            values.add(bytes);
+            rawBytes += bytes.length;
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        double megabytes = rawBytes * ROUNDS / 1048576.0;
+        report(String.format("%d values, %.1f MB", values.size(), rawBytes / 1048576.0));
+
+        for (int level : LEVELS) {
+            Compression compression = new Compression(level, Constants.DEFAULT_COMPRESSION_THRESHOLD);
+            List<byte[]> compressed = new ArrayList<>();
+            for (byte[] value : values) // warm up
+                compression.compress(value);
+
+            long storedBytes = 0;
+            long start = threads.getCurrentThreadCpuTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                compressed.clear();
+                storedBytes = 0;
+                for (byte[] value : values) {
+                    byte[] result = compression.compress(value);
+                    compressed.add(result);
+                    storedBytes += result == null ? value.length : result.length;
+                }
+            }
+            long compressNanos = threads.getCurrentThreadCpuTime() - start;
+
+            start = threads.getCurrentThreadCpuTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (byte[] value : compressed) {
+                    if (value != null)
+                        Compression.decompress(value);
+                }
+            }
+            long decompressNanos = threads.getCurrentThreadCpuTime() - start;
+
+            report(String.format("level %d: ratio %.2f, compress %.2f ms CPU/MB, decompress %.2f ms CPU/MB, on disk %s",
+                    level, (double) rawBytes / storedBytes, compressNanos / 1e6 / megabytes, decompressNanos / 1e6 / megabytes,
+                    logSize(data, compression)));
+        }
+        report("uncompressed: on disk " + logSize(data, Compression.none()));
+    }
+
+    /**
+     * @return the size of the data log after putting all values with the given compression.
+     */
+    private static String logSize(TreeMap<String, String> data, Compression compression) throws IOException {
+        Path dir = Files.createTempDirectory("compression-benchmark");
+        LogStorageEngine engine = new LogStorageEngine(dir, Constants.MAX_SEGMENT_SIZE,
+                FsyncPolicy.parse(Constants.FSYNC_NEVER), false, compression);
+        for (Map.Entry<String, String> entry : data.entrySet())
+            engine.put(entry.getKey(), entry.getValue());
+        long size = directorySize(dir.toFile());
+        deleteDirectory(dir.toFile());
+        return String.format("%.1f MB", size / 1048576.0);
+    }
+
+    private static void report(String result) {
+        LOGGER.info(result);
+        System.out.println(result);
+    }
+
+    /**
+     * @return the Enron mails, or generated mail-like text if the dataset is missing.
+     */
+    private static TreeMap<String, String> loadValues() {
+        try {
+            DataLoader dataLoader = new DataLoader();
+            dataLoader.loadAllData();
+            return dataLoader.data;
+        } catch (IOException e) {
+            LOGGER.info("Dataset was not found, using generated values");
+        }
+        TreeMap<String, String> data = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            // most mails are a few KB, some carry large bodies
+            int size = random.nextInt(10) == 0 ? 20000 + random.nextInt(100000) : 500 + random.nextInt(5000);
+            StringBuilder value = new StringBuilder(size + 16);
+            value.append("Message-ID: <").append(random.nextInt()).append(".JavaMail>\n");
+            while (value.length() < size) {
+                value.append(WORDS[random.nextInt(WORDS.length)]);
+                value.append(random.nextInt(12) == 0 ? ".\n" : " ");
+            }
+            data.put("mail" + i, value.toString());
+        }
+        return data;
+    }
+
+    private static long directorySize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                size += file.isDirectory() ? directorySize(file) : file.length();
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory())
+                    deleteDirectory(file);
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
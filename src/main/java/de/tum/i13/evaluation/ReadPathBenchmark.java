@@ -0,0 +1,95 @@
+package de.tum.i13.evaluation;
+
+import de.tum.i13.server.storage.FsyncPolicy;
+import de.tum.i13.server.storage.LogStorageEngine;
+import de.tum.i13.shared.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Compares positioned reads against memory mapped reads of the log storage engine.
+ * Uses the Enron mails of the DataLoader if the dataset is available and values of similar sizes otherwise.
+ */
+public class ReadPathBenchmark {
+    private final static Logger LOGGER = Logger.getLogger(ReadPathBenchmark.class.getName());
+    private static final int NUMBER_OF_VALUES = 2000;
+    private static final int NUMBER_OF_READS = 200000;
+    private static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        TreeMap<String, String> data = loadValues();
+        List<String> keys = new ArrayList<>(data.keySet());
+        for (String readMode : new String[]{Constants.READ_MODE_PREAD, Constants.READ_MODE_MMAP}) {
+            Path dir = Files.createTempDirectory("read-benchmark-" + readMode);
+            LogStorageEngine engine = new LogStorageEngine(dir, SEGMENT_SIZE, FsyncPolicy.parse(Constants.FSYNC_NEVER),
+                    readMode.equals(Constants.READ_MODE_MMAP));
+            for (Map.Entry<String, String> entry : data.entrySet())
+                engine.put(entry.getKey(), entry.getValue());
+            // a second engine on the same files, so all but the last segment are sealed (and mapped in mmap mode)
+            engine = new LogStorageEngine(dir, SEGMENT_SIZE, FsyncPolicy.parse(Constants.FSYNC_NEVER),
+                    readMode.equals(Constants.READ_MODE_MMAP));
+
+            Random random = new Random(42);
+            for (int i = 0; i < NUMBER_OF_READS / 10; i++) // warm up
+                engine.get(keys.get(random.nextInt(keys.size())));
+
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < NUMBER_OF_READS; i++)
+                bytes += engine.get(keys.get(random.nextInt(keys.size()))).length();
+            long elapsed = System.nanoTime() - start;
+
+            String result = readMode + ": " + NUMBER_OF_READS + " reads in " + elapsed / 1000000 + " ms, "
+                    + (elapsed / NUMBER_OF_READS / 1000.0) + " us per read, "
+                    + (bytes * 1000 / Math.max(elapsed, 1)) + " MB/s";
+            LOGGER.info(result);
+            System.out.println(result);
+            deleteDirectory(dir.toFile());
+        }
+    }
+
+    /**
+     * @return the Enron mails, or random values with the size distribution of mails if the dataset is missing.
+     */
+    private static TreeMap<String, String> loadValues() {
+        try {
+            DataLoader dataLoader = new DataLoader();
+            dataLoader.loadAllData();
+            return dataLoader.data;
+        } catch (IOException e) {
+            LOGGER.info("Dataset was not found, using generated values");
+        }
+        TreeMap<String, String> data = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            // most mails are a few KB, some carry large bodies or attachments
+            int size = random.nextInt(10) == 0 ? 20000 + random.nextInt(100000) : 500 + random.nextInt(5000);
+            StringBuilder value = new StringBuilder(size);
+            for (int j = 0; j < size; j++)
+                value.append((char) ('a' + random.nextInt(26)));
+            data.put("mail" + i, value.toString());
+        }
+        return data;
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory())
+                    deleteDirectory(file);
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,103 @@
+package de.tum.i13.evaluation;
+
+import de.tum.i13.server.filemanager.FileManager;
+import de.tum.i13.server.kv.PersistenceKVStore;
+import de.tum.i13.server.storage.StorageEngine;
+import de.tum.i13.server.storage.StorageSnapshot;
+import de.tum.i13.shared.Config;
+import de.tum.i13.shared.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Runs the same workload against every storage engine, so the designs can be compared under equal conditions.
+ * The engines are created by PersistenceKVStore.createStorageEngine from the given command line arguments,
+ * so the options of the server (e.g. -fsync or -compression) apply, only the storage engine is varied.
+ */
+public class StorageEngineBenchmark {
+    private final static Logger LOGGER = Logger.getLogger(StorageEngineBenchmark.class.getName());
+    private static final int NUMBER_OF_KEYS = 1000;
+    private static final int NUMBER_OF_READS = 100000;
+    private static final int VALUE_SIZE = 1000;
+
+    public static void main(String[] args) throws IOException {
+        Config config = Config.parseCommandlineArgs(args);
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            keys.add("key" + i);
+            StringBuilder value = new StringBuilder(VALUE_SIZE);
+            for (int j = 0; j < VALUE_SIZE; j++)
+                value.append((char) ('a' + random.nextInt(26)));
+            values.add(value.toString());
+        }
+
+        for (String storageEngine : new String[]{Constants.STORAGE_MEMORY, Constants.STORAGE_LOG, Constants.STORAGE_LEGACY}) {
+            Path dir = Files.createTempDirectory("storage-benchmark-" + storageEngine);
+            config.storageEngine = storageEngine;
+            StorageEngine engine = PersistenceKVStore.createStorageEngine(config, dir);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < NUMBER_OF_KEYS; i++)
+                engine.put(keys.get(i), values.get(i));
+            long putNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < NUMBER_OF_READS; i++)
+                engine.get(keys.get(random.nextInt(NUMBER_OF_KEYS)));
+            long getNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < NUMBER_OF_READS; i++)
+                engine.get("absent" + random.nextInt(NUMBER_OF_KEYS));
+            long missNanos = System.nanoTime() - start;
+
+            // a quarter of the ring
+            long[] scanned = {0};
+            start = System.nanoTime();
+            engine.rangeScan("0", "40000000000000000000000000000000", (key, value) -> scanned[0]++);
+            long scanNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int snapshotSize;
+            try (StorageSnapshot snapshot = engine.snapshot()) {
+                snapshotSize = snapshot.size();
+            }
+            long snapshotNanos = System.nanoTime() - start;
+
+            String result = storageEngine + ": " + NUMBER_OF_KEYS + " puts in " + putNanos / 1000000 + " ms ("
+                    + (putNanos / NUMBER_OF_KEYS / 1000.0) + " us per put), "
+                    + NUMBER_OF_READS + " gets in " + getNanos / 1000000 + " ms ("
+                    + (getNanos / NUMBER_OF_READS / 1000.0) + " us per get), "
+                    + NUMBER_OF_READS + " gets of absent keys in " + missNanos / 1000000 + " ms, "
+                    + "scan of " + scanned[0] + " keys in " + scanNanos / 1000000 + " ms, "
+                    + "snapshot of " + snapshotSize + " keys in " + snapshotNanos / 1000000 + " ms, "
+                    + engine.size() + " keys stored";
+            if (engine instanceof FileManager)
+                result += ", " + ((FileManager) engine).getBloomFilterStats();
+            LOGGER.info(result);
+            System.out.println(result);
+            deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory())
+                    deleteDirectory(file);
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -8,14 +8,22 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import de.tum.i13.ecs.ECSSocketManager;
+import de.tum.i13.server.kv.ChangeJournal;
 import de.tum.i13.server.kv.PersistenceKVStore;
 import de.tum.i13.server.kv.ReplicaStorage;
+import de.tum.i13.server.storage.StorageEngine;
+import de.tum.i13.server.storage.StorageSnapshot;
 import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.Metadata;
 import de.tum.i13.shared.NeighborsAndSelf;
@@ -38,6 +46,12 @@ public class ECSThread extends Thread{
     private boolean isLeaving;
     private boolean isReplicated1;
     private boolean isReplicated2;
+    // the replica slots (1 and 2) that missed a full copy or too many updates and get the full data again
+    private boolean[] staleReplicas;
+    // the keys whose update a replica slot missed, sent again with its next update
+    private List<Set<String>> pendingReplicaKeys;
+    // orders the updates and full copies sent to the replicas
+    private final Object replicaLock = new Object();
     
     //Address and port of the server successor
     private String succAddress;
@@ -54,7 +68,10 @@ public class ECSThread extends Thread{
     private ObjectInputStream ecsServerIs;
     private ObjectOutputStream ecsServerOs;
 
-    private HashMap<String, String> transferredData = new HashMap<>();
+    // the hash range handed off to the successor, deleted once the ECS lifts the write lock
+    private String[] transferredRange;
+    // when the write lock of the last handoff was set
+    private long writeLockStart;
 
     public ECSThread(PersistenceKVStore kvs, String address, int port, InetSocketAddress ecsAddress){
         this.kvs = kvs;
@@ -69,6 +86,8 @@ public class ECSThread extends Thread{
         this.isLeaving = false;
         this.isReplicated1 = false;
         this.isReplicated2 = false;
+        this.staleReplicas = new boolean[3];
+        this.pendingReplicaKeys = Arrays.asList(new HashSet<>(), new HashSet<>(), new HashSet<>());
     }
 
     @Override
@@ -127,6 +146,8 @@ public class ECSThread extends Thread{
         try {
             String message = "join " + this.address + " " + this.port + " " + this.freePort;
             logger.info("Sending join message: " + message);
+            // clients may write to the new range before the predecessor's data arrives, their writes win
+            this.kvs.getReceiverJournal().open(Constants.HANDOFF_TIMEOUT);
             message = message+"\r\n";
             MessageObject mobj = new MessageObject(message, null, null);
             this.ecsServerOs.writeObject(mobj);
@@ -182,6 +203,8 @@ public class ECSThread extends Thread{
                         handleReceivingReplicaData(mobj); break;
                     case ("eventual_consistency"):
                         handleEventualConsistency(mobj); break;
+                    case ("catch_up_data")://SERVER
+                        handleCatchUp(mobj); break;
                     default:
                         logger.severe("We cant deal with the command: " + in);
                         break;
@@ -197,10 +220,7 @@ public class ECSThread extends Thread{
         logger.info("Received replicated data from server, acting as replica_"+commandArr[3]);
         String startIndex = commandArr[1];
         String endIndex = commandArr[2];
-        if(commandArr[3].equals("1"))
-            this.kvs.setReplica_1(new ReplicaStorage(mobj.getTransferedData(),startIndex, endIndex));
-        else
-            this.kvs.setReplica_2(new ReplicaStorage(mobj.getTransferedData(),startIndex, endIndex));
+        replica(commandArr[3]).replaceAll(mobj.getTransferedData(), mobj.getCompressedData(), mobj.getExpiries(), startIndex, endIndex);
         // Check if this server already did its replication
         if(!isReplicated1){
             this.triggerReplicatedDataTransfer(1);
@@ -217,13 +237,7 @@ public class ECSThread extends Thread{
      */
     private void handleDataFromECS(MessageObject mobj) {
         logger.info("Received data of a leaving server from the ECS ");
-        for (Map.Entry<String, String> entry : mobj.getTransferedData().entrySet()) {
-            this.kvs.getFileManager().put(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<String, String> entry : mobj.getKeyOwners().entrySet()) {
-            this.kvs.getOwnerManager().put(entry.getKey(), entry.getValue());
-        }
+        putTransferedData(mobj.getTransferedData(), mobj.getCompressedData(), mobj.getKeyOwners(), mobj.getExpiries());
         // update the replicas if needed.
         if(this.metadata.numberOfServers()>=3){
             /* we check if the number of server is more than 3
@@ -323,10 +337,13 @@ public class ECSThread extends Thread{
         if (commandArr.length==5){
             handleUsersUpdate(mobj);
         }
+        // without a predecessor no data is handed to this server
+        if(commandArr.length<4)
+            this.kvs.getReceiverJournal().close();
     }
 
     /**
-     * start the data transfer and change the server state to locked
+     * start the data transfer, the server keeps accepting writes until the final catch-up
      * @param commandArr array containing ip, clientPort and serverPort of the successor.
      */
     private void triggerDataTransfer(String[] commandArr) {
@@ -335,8 +352,9 @@ public class ECSThread extends Thread{
         this.succServerPort = Integer.parseInt(commandArr[3]);
 
         if(this.succAddress!=null){
-            this.kvs.setState(Constants.SERVER_WRITELOCK);
-            this.startDataTransfer();
+            // writes that reach the storage after the snapshot are sent by the catch-up
+            this.kvs.getSenderJournal().open(Constants.HANDOFF_TIMEOUT);
+            this.startDataTransfer(false);
 
             logger.info("current metadata in the ecs thread is: " + this.metadata.toString());
             logger.info("Triggering data transfer...");
@@ -346,7 +364,12 @@ public class ECSThread extends Thread{
     }
 
 
-    private void startDataTransfer() {
+    /**
+     * sends a snapshot of the successor's range to the successor.
+     * @param restart true if the handoff is sent again, then the range is sent as well, so the successor drops the keys
+     *                this server no longer has.
+     */
+    private void startDataTransfer(boolean restart) {
         try {
             String succIpAndPort = this.succAddress+":"+this.succClientPort;
             logger.info("START DATA TRANSFER: " + succIpAndPort);
@@ -361,32 +384,66 @@ public class ECSThread extends Thread{
                 succHash = "ALL";
                 senderState = "leaving";
             }
-            HashMap<String,String> data = this.kvs.getFileManager().getTransferedKVPairs(succHash, succHashEnd);
-            HashMap<String,String> owners = this.kvs.getOwnerManager().getTransferedKVPairs(succHash, succHashEnd);
+            // a single scan of a snapshot collects the values, their owners and expiries, compressed values stay compressed,
+            // writes continue meanwhile
+            HashMap<String,String> owners = new HashMap<>();
+            HashMap<String,byte[]> compressed = new HashMap<>();
+            HashMap<String,Long> expiries = new HashMap<>();
+            HashMap<String,String> data;
+            long start = System.currentTimeMillis();
+            try (StorageSnapshot snapshot = this.kvs.getStorageEngine().snapshot()) {
+                data = snapshot.getTransferedKVPairs(succHash, succHashEnd, owners, compressed, expiries);
+            }
+            logger.info("Collected " + (data.size() + compressed.size()) + " pairs from a snapshot in " + (System.currentTimeMillis() - start) + " ms");
+            this.transferredRange = new String[]{succHash, succHashEnd};
 
-            //connecting to the successor server.
-            this.socket = new Socket(this.succAddress, this.succServerPort);
-            this.ecsServerOs = new ObjectOutputStream(this.socket.getOutputStream());
-            this.ecsServerOs.flush();
-            this.ecsServerIs =new ObjectInputStream(this.socket.getInputStream());
-            String reply = "start_data_receipt " + this.address + " " + this.port + " " + this.freePort + " " + senderState + "\r\n";
+            String reply = "start_data_receipt " + this.address + " " + this.port + " " + this.freePort + " " + senderState
+                    + (restart ? " " + succHash + " " + succHashEnd : "") + "\r\n";
             logger.info("Sending a message:("+ reply +") to the server at "+ this.succAddress + ":" + this.succClientPort);
             logger.info("Sending data object ...");
 
             MessageObject mobj = new MessageObject(reply, null, data, owners);
-            this.ecsServerOs.writeObject(mobj);
-            this.ecsServerOs.flush();
+            mobj.setCompressedData(compressed);
+            mobj.setExpiries(expiries);
+            sendToSuccessor(mobj);
 
         } catch (IOException e) {
             logger.severe("Error transferring data");
         }
     }
 
+    /**
+     * sends a message object to the successor the data is handed to.
+     */
+    private void sendToSuccessor(MessageObject mobj) throws IOException {
+        this.socket = new Socket(this.succAddress, this.succServerPort);
+        this.ecsServerOs = new ObjectOutputStream(this.socket.getOutputStream());
+        this.ecsServerOs.flush();
+        this.ecsServerIs =new ObjectInputStream(this.socket.getInputStream());
+        this.ecsServerOs.writeObject(mobj);
+        this.ecsServerOs.flush();
+    }
+
     private void startDataReceipt(MessageObject mobj){
         try {
             logger.info("Starting data receipt");
             String [] commandArr = mobj.getMessage().trim().split(" ");
-            writeDataToFiles(mobj.getTransferedData(), mobj.getKeyOwners(), commandArr[1], commandArr[2], commandArr[3], commandArr[4]);
+            boolean leaving = commandArr[4].equals("leaving");
+            ChangeJournal journal = this.kvs.getReceiverJournal();
+            if(journal.isOpen()){
+                journal.renew();
+            } else if(!leaving){
+                // the catch-up still comes, only the writes from now on are kept over the transfered values
+                logger.warning("The change journal of the handoff expired before the data arrived, opening it again");
+                journal.open(Constants.HANDOFF_TIMEOUT);
+            }
+            // a handoff that is sent again carries its range
+            if(commandArr.length > 6)
+                deleteMissingKeys(mobj, commandArr[5], commandArr[6]);
+            writeDataToFiles(mobj.getTransferedData(), mobj.getKeyOwners(), mobj.getCompressedData(), mobj.getExpiries(), commandArr[1], commandArr[2], commandArr[3], commandArr[4]);
+            // a leaving sender sends no catch-up
+            if(leaving)
+                journal.close();
             logger.info("Received new data, updating the data on the replicas if needed...");
             if(this.metadata.numberOfServers()>=3 && this.metadata.numberOfServers()%2==0){
                 /* we check if the number of server is more than 3
@@ -399,22 +456,41 @@ public class ECSThread extends Thread{
         }
     }
 
+    /**
+     * deletes the keys of a range that a handoff sent again no longer contains, so keys the sender deleted since its first
+     * snapshot do not come back. Keys that clients wrote to this server are kept.
+     * @param mobj the message with the data of the handoff.
+     * @param start the start hash of the range.
+     * @param end the end hash of the range.
+     */
+    private void deleteMissingKeys(MessageObject mobj, String start, String end) {
+        ChangeJournal journal = this.kvs.getReceiverJournal();
+        HashMap<String,byte[]> compressed = mobj.getCompressedData();
+        List<String> missing = new ArrayList<>();
+        this.kvs.getStorageEngine().rangeScanStored(start, end, (key, storedValue, storedCompressed, expiresAt) -> {
+            if(!mobj.getTransferedData().containsKey(key) && (compressed == null || !compressed.containsKey(key)) && !journal.contains(key))
+                missing.add(key);
+        });
+        for(String key : missing)
+            this.kvs.getStorageEngine().delete(key);
+        // the values of the range are replaced, cached ones may be older
+        this.kvs.getCache().deleteRange(start, end);
+        logger.info("Deleted " + missing.size() + " keys the handoff sent again no longer contains");
+    }
+
     /**
      * write the hashmap received to the server data files and sends the confirmation message to the sender server if it's not leaving
      * @param data the map of key-value pairs.
+     * @param owners the owners of the keys that have one.
+     * @param compressed the key-value pairs whose values are compressed, may be null.
+     * @param expiries the expiry times of the keys that have a time to live, may be null.
      * @param senderIp The ip of the sender server
      * @param senderClientPort the clientPort of the sender server
      * @param senderServerPort the serverPort of the sender server
      */
-    private void writeDataToFiles(HashMap<String,String> data, HashMap<String,String> owners, String senderIp, String senderClientPort, String senderServerPort, String state) throws IOException {
+    private void writeDataToFiles(HashMap<String,String> data, HashMap<String,String> owners, HashMap<String,byte[]> compressed, HashMap<String,Long> expiries, String senderIp, String senderClientPort, String senderServerPort, String state) throws IOException {
         logger.info("Writing data to the server's files...");
-        for (Map.Entry<String, String> entry : data.entrySet()) {
-            this.kvs.getFileManager().put(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<String, String> entry : owners.entrySet()) {
-            this.kvs.getOwnerManager().put(entry.getKey(), entry.getValue());
-        }
+        putTransferedData(data, compressed, owners, expiries);
 
         if(state.equals("not_leaving")){
             logger.info("Sending successful_data_receipt message to the sender server...");
@@ -435,11 +511,133 @@ public class ECSThread extends Thread{
         }
     }
 
+    /**
+     * stores transfered pairs with their owners and expiries, values that are compressed are stored without inflating them.
+     * Keys that clients wrote to this server during the handoff are newer than the transfered ones and are kept.
+     * @param data the key-value pairs.
+     * @param compressed the key-value pairs whose values are compressed, may be null.
+     * @param owners the owners of the keys that have one, may be null.
+     * @param expiries the expiry times of the keys that have a time to live, may be null.
+     */
+    private void putTransferedData(HashMap<String,String> data, HashMap<String,byte[]> compressed, HashMap<String,String> owners, HashMap<String,Long> expiries) {
+        StorageEngine storage = this.kvs.getStorageEngine();
+        ChangeJournal journal = this.kvs.getReceiverJournal();
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            if (!journal.contains(entry.getKey()))
+                storage.put(entry.getKey(), entry.getValue(), owners == null ? null : owners.get(entry.getKey()), expiry(expiries, entry.getKey()));
+        }
+        if (compressed == null)
+            return;
+        for (Map.Entry<String, byte[]> entry : compressed.entrySet()) {
+            if (!journal.contains(entry.getKey()))
+                storage.putCompressed(entry.getKey(), entry.getValue(), owners == null ? null : owners.get(entry.getKey()), expiry(expiries, entry.getKey()));
+        }
+    }
+
+    private static long expiry(HashMap<String,Long> expiries, String key) {
+        Long expiresAt = expiries == null ? null : expiries.get(key);
+        return expiresAt == null ? 0 : expiresAt;
+    }
+
+    /**
+     * @param slot the replica slot as sent in the message, "1" or "2".
+     * @return the replica of the slot.
+     */
+    private ReplicaStorage replica(String slot) {
+        return slot.equals("1") ? this.kvs.getReplica_1() : this.kvs.getReplica_2();
+    }
+
     private void handleSuccessfulReceipt() throws IOException {
+        if(this.transferredRange != null && !this.kvs.getSenderJournal().isOpen()){
+            // the journal ran out while the successor did not confirm, the writes since the snapshot are unknown
+            logger.warning("The successor confirmed the data after the handoff expired, sending a new snapshot");
+            this.kvs.getSenderJournal().open(Constants.HANDOFF_TIMEOUT);
+            this.startDataTransfer(true);
+            return;
+        }
+        if(this.transferredRange != null)
+            catchUp();
         logger.info("Sending data_transfer_complete message to the ECS...");
         this.sendToECS("data_transfer_complete "+ this.address + " " + this.port + " " + this.freePort);
     }
 
+    /**
+     * sends the keys of the transferred range that were written after the snapshot of the transfer was taken.
+     * Rounds run while the server accepts writes until few changed keys are left, the last round runs under the write lock,
+     * which the ECS lifts once the successor has the complete range.
+     */
+    private void catchUp() throws IOException {
+        ChangeJournal journal = this.kvs.getSenderJournal();
+        // only the keys of the transferred range are sent, the others were written to the range this server keeps
+        for(int round = 0; round < Constants.CATCH_UP_ROUNDS
+                && journal.size(this.transferredRange[0], this.transferredRange[1]) > Constants.CATCH_UP_LOCK_THRESHOLD; round++){
+            journal.renew();
+            sendChanges(journal, false);
+        }
+        this.kvs.lockWrites();
+        this.writeLockStart = System.currentTimeMillis();
+        int changed = sendChanges(journal, true);
+        journal.close();
+        logger.info("Sent the last " + changed + " changed keys under the write lock in " + (System.currentTimeMillis() - this.writeLockStart) + " ms");
+    }
+
+    /**
+     * sends the current values of the changed keys of the transferred range to the successor, deleted keys are sent by name.
+     * @param last true for the last round, after which the successor stops keeping its own writes over transfered ones.
+     * @return the number of changed keys.
+     */
+    private int sendChanges(ChangeJournal journal, boolean last) throws IOException {
+        StorageEngine storage = this.kvs.getStorageEngine();
+        List<String> keys = journal.drain(this.transferredRange[0], this.transferredRange[1]);
+        HashMap<String,String> data = new HashMap<>();
+        HashMap<String,String> owners = new HashMap<>();
+        HashMap<String,Long> expiries = new HashMap<>();
+        StringBuilder message = new StringBuilder("catch_up_data ").append(last ? "last" : "more");
+        for (String key : keys) {
+            String value = storage.get(key);
+            if (value == null) {
+                message.append(' ').append(key);
+                continue;
+            }
+            data.put(key, value);
+            String owner = storage.getOwner(key);
+            if (owner != null)
+                owners.put(key, owner);
+            long expiresAt = storage.getExpiry(key);
+            if (expiresAt != 0)
+                expiries.put(key, expiresAt);
+        }
+        logger.info("Sending " + keys.size() + " keys that changed during the transfer to " + this.succAddress + ":" + this.succClientPort);
+        MessageObject mobj = new MessageObject(message + "\r\n", null, data, owners);
+        mobj.setExpiries(expiries);
+        sendToSuccessor(mobj);
+        return keys.size();
+    }
+
+    /**
+     * applies the keys the predecessor sends that were written during the transfer (the pairs are sent as data,
+     * deleted keys from the third word on).
+     */
+    private void handleCatchUp(MessageObject mobj) {
+        String [] commandArr = mobj.getMessage().trim().split(" ");
+        ChangeJournal journal = this.kvs.getReceiverJournal();
+        for (int i = 2; i < commandArr.length; i++) {
+            if (!journal.contains(commandArr[i])) {
+                this.kvs.getStorageEngine().delete(commandArr[i]);
+                this.kvs.getCache().delete(commandArr[i]);
+            }
+        }
+        for (String key : mobj.getTransferedData().keySet()) {
+            if (!journal.contains(key))
+                this.kvs.getCache().delete(key);
+        }
+        putTransferedData(mobj.getTransferedData(), null, mobj.getKeyOwners(), mobj.getExpiries());
+        if (commandArr[1].equals("last"))
+            journal.close();
+        else
+            journal.renew();
+    }
+
     /**
      * Receives and sets the metadata.
      * @param mobj message object containing the metadata
@@ -461,8 +659,8 @@ public class ECSThread extends Thread{
         if(this.metadata.numberOfServers()<3) {
             logger.info("No replicated data change is required: Servers are less than 3");
             // reset the replicated data 
-            this.kvs.setReplica_1(new ReplicaStorage());
-            this.kvs.setReplica_2(new ReplicaStorage());
+            this.kvs.getReplica_1().clear();
+            this.kvs.getReplica_2().clear();
             return;
         }
         // We check if we just hit 3 servers, then we send data to the replica servers
@@ -475,47 +673,125 @@ public class ECSThread extends Thread{
         }
     }
 
+    /**
+     * sends the complete data to both replicas, e.g. after an import that did not replicate its keys one by one.
+     */
+    public void bootstrapReplicas() {
+        if(this.metadata.numberOfServers()>=3){
+            this.triggerReplicatedDataTransfer(1);
+            this.triggerReplicatedDataTransfer(2);
+        }
+    }
+
     private void triggerReplicatedDataTransfer(int i) {
-        NeighborsAndSelf replicas = this.metadata.getCandidateReplicas(address, port);
-        HashMap <String,String> data = this.kvs.getFileManager().getAllPairs();
-        String message = "receive_replica_data " + replicas.getSelf().getStartIndex() + " " + replicas.getSelf().getEndIndex();
-        // Sending to the first replica
-        if(i==1)
-        this.sendDataToTheServer(replicas.getSuccessor(), message + " 1", data);
-        
-        if(i==2)
-        // Sending to the second replica
-        this.sendDataToTheServer(replicas.getPredecessor(), message + " 2", data);
+        synchronized(this.replicaLock){
+            NeighborsAndSelf replicas = this.metadata.getCandidateReplicas(address, port);
+            HashMap <String,byte[]> compressed = new HashMap<>();
+            HashMap <String,Long> expiries = new HashMap<>();
+            HashMap <String,String> data = this.kvs.getStorageEngine().getTransferedKVPairs("ALL", "", null, compressed, expiries);
+            String message = "receive_replica_data " + replicas.getSelf().getStartIndex() + " " + replicas.getSelf().getEndIndex();
+            // the first replica is the successor, the second the predecessor
+            ServerEntry server = i == 1 ? replicas.getSuccessor() : replicas.getPredecessor();
+            // a replica that did not get the copy gets it again with the next update
+            this.staleReplicas[i] = !this.sendDataToTheServer(server, message + " " + i, data, compressed, expiries);
+            // the copy contains the updates the replica missed
+            if(!this.staleReplicas[i])
+                this.pendingReplicaKeys.get(i).clear();
+        }
     }
 
-    public void makeDataConsistentAgain(boolean replica_1InUse, boolean replica_2InUse) {
+    /**
+     * sends a put or delete to the replicas, which already hold the rest of the data.
+     * @param key the key that was written.
+     * @param value the new value, null if the key was deleted.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public void makeDataConsistentAgain(String key, String value, long expiresAt, boolean replica_1InUse, boolean replica_2InUse) {
         if(this.metadata.numberOfServers()>=3){
             NeighborsAndSelf replicas = this.metadata.getCandidateReplicas(address, port);
-            HashMap <String,String> data = this.kvs.getFileManager().getAllPairs();
-            String message = "eventual_consistency "+replicas.getSelf().getStartIndex() + " " + replicas.getSelf().getEndIndex();
+            String message = "eventual_consistency "+replicas.getSelf().getStartIndex() + " " + replicas.getSelf().getEndIndex() + " ";
             // Sending to the first replica
             if(replica_1InUse)
-                this.sendDataToTheServer(replicas.getSuccessor(), message + " 1", data);
+                sendUpdate(1, replicas.getSuccessor(), message + "1", key, value, expiresAt);
             
             // Sending to the second replica
             if(replica_2InUse)
-                this.sendDataToTheServer(replicas.getPredecessor(), message + " 2", data);
+                sendUpdate(2, replicas.getPredecessor(), message + "2", key, value, expiresAt);
         }
 
     }
 
+    /**
+     * sends an update to a replica together with the updates it missed, whose keys are read from the storage again.
+     * A replica that missed a full copy gets the full data instead, one that missed more than
+     * REPLICA_PENDING_LIMIT updates gets it with the next update.
+     */
+    private void sendUpdate(int slot, ServerEntry server, String message, String key, String value, long expiresAt) {
+        synchronized(this.replicaLock){
+            if(this.staleReplicas[slot]){
+                logger.warning("Replica " + slot + " at " + server.getIp() + ":" + server.getServerPort() + " missed the full data, sending it again");
+                this.triggerReplicatedDataTransfer(slot);
+                return;
+            }
+            StorageEngine storage = this.kvs.getStorageEngine();
+            Set<String> pending = this.pendingReplicaKeys.get(slot);
+            pending.remove(key);
+            HashMap <String,String> data = new HashMap<>();
+            HashMap <String,Long> expiries = new HashMap<>();
+            StringBuilder deleted = new StringBuilder();
+            addUpdate(key, value, expiresAt, data, expiries, deleted);
+            for(String missed : pending)
+                addUpdate(missed, storage.get(missed), storage.getExpiry(missed), data, expiries, deleted);
+            if(this.sendDataToTheServer(server, message + deleted, data, null, expiries)){
+                if(!pending.isEmpty())
+                    logger.info("Resent " + pending.size() + " missed updates to replica " + slot);
+                pending.clear();
+                return;
+            }
+            pending.add(key);
+            if(pending.size() > Constants.REPLICA_PENDING_LIMIT){
+                logger.warning("Replica " + slot + " at " + server.getIp() + ":" + server.getServerPort() + " missed " + pending.size() + " updates, sending the full data with the next update");
+                pending.clear();
+                this.staleReplicas[slot] = true;
+            } else {
+                logger.warning("Replica " + slot + " at " + server.getIp() + ":" + server.getServerPort() + " missed an update, sending it again with the next update");
+            }
+        }
+    }
+
+    /**
+     * adds a put to the data and expiries of an update or a delete to its deleted keys.
+     * @param value the value of the key, null if it was deleted.
+     */
+    private static void addUpdate(String key, String value, long expiresAt, HashMap<String,String> data, HashMap<String,Long> expiries, StringBuilder deleted) {
+        if(value == null){
+            deleted.append(" ").append(key);
+            return;
+        }
+        data.put(key, value);
+        if(expiresAt != 0)
+            expiries.put(key, expiresAt);
+    }
+
+    /**
+     * applies puts (the pairs are sent as data) and deletes (the keys are sent as the words after the slot) to a replica.
+     */
     private void handleEventualConsistency(MessageObject mobj) {
         logger.info("Handling consistency of the replica");
         String [] commandArr = mobj.getMessage().trim().split(" ");
         String startIndex = commandArr[1];
         String endIndex = commandArr[2];
-        if(commandArr[3].equals("1"))
-            this.kvs.setReplica_1(new ReplicaStorage(mobj.getTransferedData(),startIndex, endIndex));
-        else
-            this.kvs.setReplica_2(new ReplicaStorage(mobj.getTransferedData(),startIndex, endIndex));
+        ReplicaStorage replica = replica(commandArr[3]);
+        for (int i = 4; i < commandArr.length; i++)
+            replica.update(commandArr[i], null, 0, startIndex, endIndex);
+        for (Map.Entry<String, String> entry : mobj.getTransferedData().entrySet())
+            replica.update(entry.getKey(), entry.getValue(), expiry(mobj.getExpiries(), entry.getKey()), startIndex, endIndex);
     }
 
-    private void sendDataToTheServer(ServerEntry server,String message, HashMap<String,String> data){
+    /**
+     * @return true if the message was sent, false if the server could not be reached.
+     */
+    private boolean sendDataToTheServer(ServerEntry server,String message, HashMap<String,String> data, HashMap<String,byte[]> compressed, HashMap<String,Long> expiries){
         try{
             //connecting to the successor server.
             this.socket = new Socket(server.getIp(), server.getServerPort());
@@ -525,19 +801,32 @@ public class ECSThread extends Thread{
             String reply = message+"\r\n";
             logger.info("Sending a message:("+ reply +") to the server at "+ server.getIp() + ":" + server.getClientPort());
             MessageObject mobj = new MessageObject(reply, null, data);
+            mobj.setCompressedData(compressed);
+            mobj.setExpiries(expiries);
             this.ecsServerOs.writeObject(mobj);
             this.ecsServerOs.flush();
+            return true;
         }catch (IOException e) {
-            logger.severe("Error transferring data");
+            logger.severe("Error transferring data to the server at " + server.getIp() + ":" + server.getServerPort() + ": " + e);
+            return false;
         }
     }
 
     private void disableLock() {
         logger.info("Write lock: Disabled, now deleting transferred data and updating the data on the replicas...");
-        this.kvs.getFileManager().deleteTransferedKVPairs(this.transferredData);
-        this.kvs.getCache().deleteTransferedKVPairs(this.transferredData);
-        this.transferredData = new HashMap<>();
+        if(this.transferredRange != null){
+            // a single range delete instead of a delete per transferred key
+            long start = System.currentTimeMillis();
+            this.kvs.getStorageEngine().deleteRange(this.transferredRange[0], this.transferredRange[1]);
+            this.kvs.getCache().deleteRange(this.transferredRange[0], this.transferredRange[1]);
+            logger.info("Deleted the transferred range in " + (System.currentTimeMillis() - start) + " ms");
+            this.transferredRange = null;
+        }
         this.kvs.setState(Constants.SERVER_AVAILABLE);
+        if(this.writeLockStart != 0){
+            logger.info("Write lock held for " + (System.currentTimeMillis() - this.writeLockStart) + " ms");
+            this.writeLockStart = 0;
+        }
         if(this.metadata.numberOfServers()>=3){
             /* we check if the number of server is more than 3
              */
@@ -557,17 +846,21 @@ public class ECSThread extends Thread{
             String x = "";
             HashMap <String, String> map = null;
             HashMap <String, String> owners = null;
+            HashMap <String, byte[]> compressed = null;
+            HashMap <String, Long> expiries = null;
             if(successor!=null){
                 this.kvs.setState(Constants.SERVER_WRITELOCK);
                 this.succAddress = successor.getIp();
                 this.succClientPort = successor.getClientPort();
                 this.succServerPort = successor.getServerPort();
                 x = " " + this.succAddress + " " + this.succClientPort + " " + this.succServerPort + " ";
-                map = this.kvs.getFileManager().getTransferedKVPairs("ALL", "");
-                owners = this.kvs.getOwnerManager().getTransferedKVPairs("ALL", "");
+                owners = new HashMap<>();
+                compressed = new HashMap<>();
+                expiries = new HashMap<>();
+                map = this.kvs.getStorageEngine().getTransferedKVPairs("ALL", "", owners, compressed, expiries);
             }
             String message = "leave " + this.address + " " + this.port + x;
-            this.sendDataToECS(message, map, owners);
+            this.sendDataToECS(message, map, owners, compressed, expiries);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -609,13 +902,16 @@ public class ECSThread extends Thread{
         this.ecsServerOs.flush();
     }
 
-    private void sendDataToECS(String message, HashMap<String,String> data, HashMap<String,String> owners) throws IOException {
+    private void sendDataToECS(String message, HashMap<String,String> data, HashMap<String,String> owners, HashMap<String,byte[]> compressed, HashMap<String,Long> expiries) throws IOException {
         logger.info("Sending the data to the ECS before exiting");
         this.socket = new Socket(this.ecsAddress.getHostName(), this.ecsAddress.getPort());
         this.ecsServerOs = new ObjectOutputStream(this.socket.getOutputStream());
         this.ecsServerOs.flush();
         this.ecsServerIs =new ObjectInputStream(this.socket.getInputStream());
-        this.ecsServerOs.writeObject(new MessageObject(message, null, data, owners));
+        MessageObject mobj = new MessageObject(message, null, data, owners);
+        mobj.setCompressedData(compressed);
+        mobj.setExpiries(expiries);
+        this.ecsServerOs.writeObject(mobj);
         this.ecsServerOs.flush();
     }
     
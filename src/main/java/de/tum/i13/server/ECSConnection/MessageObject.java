@@ -14,6 +14,12 @@ public class MessageObject implements Serializable {
 
     private HashMap<String, String> keyOwners;
 
+    // transfered values that the sender stores compressed, they are sent as they are stored
+    private HashMap<String, byte[]> compressedData;
+
+    // expiry times of the transfered keys that have a time to live, in milliseconds since the epoch
+    private HashMap<String, Long> expiries;
+
     public MessageObject(String message, Metadata metadata, HashMap<String,String> transferedData, HashMap<String, String> keyOwners){
         this.message = message;
         this.metadata = metadata;
@@ -61,4 +67,20 @@ public class MessageObject implements Serializable {
     }
 
     public HashMap<String, String> getKeyOwners() {return this.keyOwners;}
+
+    public HashMap<String, byte[]> getCompressedData() {
+        return compressedData;
+    }
+
+    public void setCompressedData(HashMap<String, byte[]> compressedData) {
+        this.compressedData = compressedData;
+    }
+
+    public HashMap<String, Long> getExpiries() {
+        return expiries;
+    }
+
+    public void setExpiries(HashMap<String, Long> expiries) {
+        this.expiries = expiries;
+    }
 }
@@ -0,0 +1,67 @@
+package de.tum.i13.server.filemanager;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Replaces storage files atomically: the new content is written and synced to a temporary file
+ * that is then renamed over the old one, so a crash leaves either the old or the new file but never a torn one.
+ */
+public class AtomicFile {
+    public static Logger logger = Logger.getLogger(AtomicFile.class.getName());
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * serializes an object into a file, replacing its previous content atomically.
+     * @param target the file to be replaced.
+     * @param data the object to be written.
+     */
+    public static void write(Path target, Object data) throws IOException {
+        Path tmp = tmpPath(target);
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             ObjectOutputStream oos = new ObjectOutputStream(fos)) {
+            oos.writeObject(data);
+            oos.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * discards the temporary file of a write that was interrupted by a crash, the target still holds the old content.
+     * @param target the file that was being replaced.
+     */
+    public static void recover(Path target) {
+        try {
+            if (Files.deleteIfExists(tmpPath(target)))
+                logger.warning("Discarded an incomplete write of " + target);
+        } catch (IOException e) {
+            logger.warning("Could not discard the incomplete write of " + target);
+        }
+    }
+
+    private static Path tmpPath(Path target) {
+        return target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+    }
+
+    /**
+     * makes the rename durable. Not every platform allows to open a directory, there the rename stays in the page cache.
+     */
+    private static void syncDirectory(Path dir) {
+        if (dir == null)
+            return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.fine("Could not sync the directory " + dir);
+        }
+    }
+}
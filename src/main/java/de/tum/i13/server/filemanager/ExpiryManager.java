@@ -0,0 +1,168 @@
+package de.tum.i13.server.filemanager;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Metadata;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the expiry times of the keys of the legacy FileManager that have a time to live in their own bucket files,
+ * like the OwnerManager keeps their owners. Keys without a time to live have no entry.
+ * Writers are serialized by the bucket locks of the FileManager, the files are replaced atomically
+ * so readers always see a complete bucket.
+ */
+public class ExpiryManager {
+    private Path path;
+
+    public ExpiryManager(Path path){
+        this.path=path;
+        for(String fn : Constants.EXPIRY_FILENAMES){
+            AtomicFile.recover(Paths.get(path+"/"+fn));
+            createAFile(fn, path);
+        }
+    }
+
+    private void createAFile(String fileName, Path path) {
+        Path p = Paths.get(path+"/"+fileName);
+        if(!Files.exists(p)){
+            File file = new File(p.toString());
+            try {
+                file.createNewFile();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            writeToFile(new HashMap<String, Long>(), fileName);
+        }
+    }
+
+    /**
+     * reads the expiry HashMap from the storage file.
+     * @param fileName the file name where the HashMap will be loaded.
+     * @return HashMap of the keys and their expiry times
+     */
+    private HashMap<String, Long> readFile(String fileName){
+        HashMap<String, Long> data = null;
+        fileName = this.path.toString() + "/" + fileName;
+        try {
+            FileInputStream fis = new FileInputStream(fileName);
+            ObjectInputStream ois = new ObjectInputStream(fis);
+            // the expiry files are only written by writeToFile, which always stores a HashMap<String, Long>
+            @SuppressWarnings("unchecked")
+            HashMap<String, Long> stored = (HashMap<String, Long>) ois.readObject();
+            data = stored;
+            ois.close();
+            fis.close();
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return data;
+    }
+
+    /**
+     * writes the expiry HashMap into the storage file, replacing the old content atomically.
+     * @param data  the expiry HashMap which will be stored in the file
+     * @param fileName the file name where the HashMap will be stored.
+     */
+    private void writeToFile(HashMap<String, Long> data, String fileName){
+        fileName = this.path.toString() + "/" + fileName;
+        try {
+            AtomicFile.write(Paths.get(fileName), data);
+        } catch (FileNotFoundException e){
+            System.out.println("Data files not found!");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * gets the expiry time of a key.
+     *
+     * @param key   the key that identifies the value.
+     * @return the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public long get(String key){
+        Long expiresAt = readFile(getTargetFile(key)).get(key);
+        return expiresAt == null ? 0 : expiresAt;
+    }
+
+    /**
+     * sets the expiry time of a key.
+     *
+     * @param key   the key that identifies the value.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public void put(String key, long expiresAt){
+        if(expiresAt == 0){
+            delete(key);
+            return;
+        }
+        String fileName = getTargetFile(key);
+        HashMap<String, Long> data = readFile(fileName);
+        data.put(key, expiresAt);
+        writeToFile(data, fileName);
+    }
+
+    /**
+     * Deletes the expiry time of a key.
+     * @param key the key that identifies the value.
+     */
+    public void delete(String key){
+        String fileName = getTargetFile(key);
+        HashMap<String, Long> data = readFile(fileName);
+        if(data.remove(key) != null)
+            writeToFile(data, fileName);
+    }
+
+    /**
+     * Deletes the expiry times of the given keys, which all belong to the same bucket.
+     * @param keys the keys of one bucket.
+     */
+    public void deleteAll(Collection<String> keys){
+        if(keys.isEmpty())
+            return;
+        String fileName = getTargetFile(keys.iterator().next());
+        HashMap<String, Long> data = readFile(fileName);
+        if(data.keySet().removeAll(keys))
+            writeToFile(data, fileName);
+    }
+
+    /**
+     * returns the expiry times of the keys in the given range.
+     *
+     * @param predHash the start hash of the range or "ALL" for every key.
+     * @param predHashEnd the end hash of the range.
+     * @return map of the keys and their expiry times.
+     */
+    public HashMap<String,Long> getTransferedExpiries(String predHash, String predHashEnd){
+        HashMap<String, Long> res = new HashMap<>();
+        for(String fName: Constants.EXPIRY_FILENAMES){
+            HashMap<String, Long> data = readFile(fName);
+            for (Map.Entry<String, Long> entry : data.entrySet()) {
+                if(predHash.equals("ALL") || Metadata.hashInRange(entry.getKey(), predHash, predHashEnd))
+                    res.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * determines the target file for a given key.
+     *
+     * @param key the key that identifies the value.
+     * @return the file name where the expiry time of the key will be stored.
+     */
+    private String getTargetFile(String key){
+        // the same bucket as the value, so the bucket lock of the FileManager covers both
+        return Constants.EXPIRY_FILENAMES[FileManager.getBucket(key)];
+    }
+}
@@ -2,25 +2,65 @@ package de.tum.i13.server.filemanager;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
+import de.tum.i13.server.storage.BloomFilter;
+import de.tum.i13.server.storage.BloomFilterStats;
+import de.tum.i13.server.storage.Compression;
+import de.tum.i13.server.storage.CopySnapshot;
+import de.tum.i13.server.storage.ExpirySweeper;
+import de.tum.i13.server.storage.StorageEngine;
+import de.tum.i13.server.storage.StorageSnapshot;
+import de.tum.i13.server.storage.StoredValueConsumer;
+import de.tum.i13.server.storage.TimerWheel;
 import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.Metadata;
 // http://www.tutorialspoint.com/java/java_serialization.htm
-public class FileManager {
+public class FileManager implements StorageEngine {
     private Path path; 
+    // the legacy layout keeps the owners in their own files next to the values
+    private OwnerManager ownerManager;
+    // and the expiry times of the keys with a time to live as well
+    private ExpiryManager expiryManager;
+    private TimerWheel expiryWheel;
+    // one lock per bucket file, so writers of different buckets proceed in parallel and readers only wait for writers of their bucket
+    private ReentrantReadWriteLock[] locks;
+    // the keys of every bucket file, so a get of an absent key does not read the bucket. Guarded by the lock of the bucket
+    private BloomFilter[] filters;
+    private BloomFilterStats filterStats;
+    private Timer expiryTimer;
     public FileManager(Path path){
         this.path=path;
+        this.locks = new ReentrantReadWriteLock[Constants.FILENAMES.length];
+        for(int i = 0; i < this.locks.length; i++)
+            this.locks[i] = new ReentrantReadWriteLock();
+        this.filters = new BloomFilter[Constants.FILENAMES.length];
+        this.filterStats = new BloomFilterStats();
         createTheFiles(Constants.FILENAMES, path);
+        loadFilters();
+        this.ownerManager = new OwnerManager(path);
+        this.expiryManager = new ExpiryManager(path);
+        this.expiryWheel = new TimerWheel(Constants.EXPIRY_WHEEL_SLOTS, Constants.EXPIRY_SWEEP_INTERVAL);
+        for (Map.Entry<String, Long> expiry : this.expiryManager.getTransferedExpiries("ALL", "").entrySet())
+            this.expiryWheel.schedule(expiry.getKey(), expiry.getValue());
+        this.expiryTimer = new Timer("expiry-sweeper", true);
+        this.expiryTimer.schedule(new ExpirySweeper(this, this.expiryWheel, Constants.EXPIRY_BATCH_SIZE),
+                Constants.EXPIRY_SWEEP_INTERVAL, Constants.EXPIRY_SWEEP_INTERVAL);
     }
     /**
      * creates the fixed storage files if they don't exist.
@@ -30,6 +70,7 @@ public class FileManager {
      */
     private void createTheFiles(String [] fileNames, Path path) {
         for(String fn : fileNames){
+            AtomicFile.recover(Paths.get(path+"/"+fn));
             createAFile(fn, path);
          }
     }
@@ -47,6 +88,71 @@ public class FileManager {
         } 
     }
 
+    /**
+     * loads the Bloom filters of the buckets, a filter that is missing is rebuilt from its bucket.
+     * The filter file is deleted before its bucket is replaced and written after,
+     * so a filter that exists always matches its bucket, also after a crash in between.
+     */
+    private void loadFilters() {
+        for (int bucket = 0; bucket < Constants.FILENAMES.length; bucket++) {
+            Path filterPath = filterPath(Constants.FILENAMES[bucket]);
+            AtomicFile.recover(filterPath);
+            if (Files.exists(filterPath)) {
+                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filterPath.toFile()))) {
+                    this.filters[bucket] = (BloomFilter) ois.readObject();
+                    continue;
+                } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                    e.printStackTrace();
+                }
+            }
+            writeFilter(readFile(Constants.FILENAMES[bucket]), Constants.FILENAMES[bucket]);
+        }
+    }
+
+    private Path filterPath(String fileName) {
+        return Paths.get(this.path.toString() + "/" + fileName + Constants.BLOOM_SUFFIX);
+    }
+
+    /**
+     * rebuilds the Bloom filter of a bucket from its keys and stores it next to the bucket.
+     * An unwritten filter is only missing on the next start and rebuilt then, the one in memory is always replaced.
+     */
+    private void writeFilter(HashMap<String, String> data, String fileName) {
+        BloomFilter filter = BloomFilter.of(data.keySet(), Constants.BLOOM_BITS_PER_KEY);
+        this.filters[bucketOfFile(fileName)] = filter;
+        try {
+            AtomicFile.write(filterPath(fileName), filter);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int bucketOfFile(String fileName) {
+        for (int bucket = 0; bucket < Constants.FILENAMES.length; bucket++) {
+            if (Constants.FILENAMES[bucket].equals(fileName))
+                return bucket;
+        }
+        throw new IllegalArgumentException("Not a bucket file: " + fileName);
+    }
+
+    /**
+     * @return false if the key is certainly not in the bucket, the caller holds the lock of the bucket.
+     */
+    private boolean mightContain(int bucket, String key) {
+        BloomFilter filter = this.filters[bucket];
+        if (filter == null || filter.mightContain(key))
+            return true;
+        this.filterStats.recordNegative();
+        return false;
+    }
+
+    /**
+     * @return the counters of the lookups answered by the Bloom filters of the buckets.
+     */
+    public BloomFilterStats getBloomFilterStats() {
+        return filterStats;
+    }
+
     /**
      * reads the cache HashMap from the storage file.
      * @param fileName the file name where the HashMap will be loaded.
@@ -72,68 +178,222 @@ public class FileManager {
     }
 
     /**
-     * writes the cache HashMap into the storage file.
+     * writes the cache HashMap into the storage file, replacing the old content atomically,
+     * and rebuilds the Bloom filter of the file.
      * @param data  the cache HashMap which will be stored in the file
      * @param fileName the file name where the HashMap will be stored.
      */
     private void writeToFile(HashMap<String, String> data, String fileName){
-        fileName = this.path.toString() + "/" + fileName;
+        String filePath = this.path.toString() + "/" + fileName;
         try {
-            FileOutputStream fos = new FileOutputStream(fileName);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(data);
-            oos.close();
-            fos.close();
+            // made durable by the directory sync of the write of the bucket
+            Files.deleteIfExists(filterPath(fileName));
+            AtomicFile.write(Paths.get(filePath), data);
         } catch (FileNotFoundException e){
             System.out.println("Data files not found!");
         } catch (IOException e) {
             e.printStackTrace();
         }
-
+        writeFilter(data, fileName);
     }
     /**
      * gets the value for a key from the file storage.
      *
      * @param key   the key that identifies the given value.
-     * @return the value, which is indexed by the given key.
+     * @return the value, which is indexed by the given key, null if it does not exist or expired.
      */
     public String get(String key){
-        String fileName = getTargetFile(key);
-        HashMap <String, String> data = readFile(fileName);
-        if(data.size()==0)
-            return null;
-        return data.get(key);   
+        int bucket = getBucket(key);
+        this.locks[bucket].readLock().lock();
+        try {
+            if(!mightContain(bucket, key))
+                return null;
+            HashMap <String, String> data = readFile(Constants.FILENAMES[bucket]);
+            String value = data.get(key);
+            this.filterStats.recordPositive(value != null);
+            // the expiry bucket is only read for keys that exist
+            if(value == null)
+                return null;
+            if(!isExpired(this.expiryManager.get(key)))
+                return value;
+        } finally {
+            this.locks[bucket].readLock().unlock();
+        }
+        // the expired key is deleted right away instead of waiting for the sweeper
+        deleteExpired(Collections.singletonList(key));
+        return null;
+    }
+
+    private static boolean isExpired(long expiresAt){
+        return expiresAt != 0 && expiresAt <= System.currentTimeMillis();
     }
 
     /**
-     * Inserts a key-value pair into the files.
+     * gets the expiry time of a key from the expiry files.
+     *
+     * @param key the key that identifies the value.
+     * @return the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public long getExpiry(String key){
+        int bucket = getBucket(key);
+        this.locks[bucket].readLock().lock();
+        try {
+            if(!mightContain(bucket, key))
+                return 0;
+            long expiresAt = this.expiryManager.get(key);
+            return isExpired(expiresAt) ? 0 : expiresAt;
+        } finally {
+            this.locks[bucket].readLock().unlock();
+        }
+    }
+
+    /**
+     * gets the owner of a key from the owner files.
+     *
+     * @param key the key that identifies the value.
+     * @return the owner of the key, null if it has none.
+     */
+    public String getOwner(String key){
+        int bucket = getBucket(key);
+        this.locks[bucket].readLock().lock();
+        try {
+            if(!mightContain(bucket, key))
+                return null;
+            String owner = this.ownerManager.get(key);
+            if(owner == null)
+                return null;
+            return isExpired(this.expiryManager.get(key)) ? null : owner;
+        } finally {
+            this.locks[bucket].readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts a key-value pair without owner into the files.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key.
+     * @return true if an existing value was updated, false otherwise.
+     */
+    public boolean put(String key, String value){
+        return put(key, value, null);
+    }
+
+    /**
+     * Inserts a key-value pair into the files and its owner into the owner files.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @return true if an existing value was updated, false otherwise.
+     */
+    public boolean put(String key, String value, String owner){
+        return put(key, value, owner, 0);
+    }
+
+    /**
+     * Inserts a key-value pair into the files, its owner into the owner files and its expiry time into the expiry files.
      *
      * @param key   the key that identifies the given value.
      * @param value the value that is indexed by the given key.
-     * @return the value associated with a key, null otherwise.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return true if an existing value was updated, false otherwise.
+     */
+    public boolean put(String key, String value, String owner, long expiresAt){
+        int bucket = getBucket(key);
+        this.locks[bucket].writeLock().lock();
+        try {
+            String fileName = Constants.FILENAMES[bucket];
+            HashMap<String, String> data = readFile(fileName);
+            String prev = data.put(key, value);
+            writeToFile(data, fileName);
+            if(owner != null)
+                this.ownerManager.put(key, owner);
+            else
+                this.ownerManager.delete(key);
+            boolean expired = isExpired(this.expiryManager.get(key));
+            this.expiryManager.put(key, expiresAt);
+            if(expiresAt != 0)
+                this.expiryWheel.schedule(key, expiresAt);
+            return prev != null && !expired;
+        } finally {
+            this.locks[bucket].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts a compressed value, the files keep their values uncompressed.
+     *
+     * @param key   the key that identifies the given value.
+     * @param compressedValue the value compressed by Compression.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return true if an existing value was updated, false otherwise.
      */
-    public synchronized String put(String key, String value){
-        String fileName = getTargetFile(key);
-        HashMap<String, String> data = readFile(fileName);
-        String prev = data.put(key, value);
-        writeToFile(data, fileName);
-        return prev;
+    public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt){
+        return put(key, Compression.decode(compressedValue, true), owner, expiresAt);
     }
 
     /**
      * Deletes the value for a given key from the files.
      * @param key the key that identifies the value.
-     * @return the value deleted for the given key, null otherwise.
-     */
-    public synchronized String delete(String key){
-        String fileName = getTargetFile(key);
-        HashMap <String, String> data = readFile(fileName);
-        if(data.size()==0)
-            return null;
-        String value = data.remove(key);
-        if(value != null)
-            writeToFile(data, fileName);
-        return value;
+     * @return true if a value was deleted for the given key, false otherwise.
+     */
+    public boolean delete(String key){
+        int bucket = getBucket(key);
+        this.locks[bucket].writeLock().lock();
+        try {
+            String fileName = Constants.FILENAMES[bucket];
+            HashMap <String, String> data = readFile(fileName);
+            if(data.size()==0)
+                return false;
+            String value = data.remove(key);
+            if(value != null)
+                writeToFile(data, fileName);
+            this.ownerManager.delete(key);
+            boolean expired = isExpired(this.expiryManager.get(key));
+            this.expiryManager.delete(key);
+            return value != null && !expired;
+        } finally {
+            this.locks[bucket].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the given keys that are expired by now, rewriting every affected bucket only once.
+     * @param keys the keys that may have expired.
+     */
+    public void deleteExpired(Collection<String> keys){
+        List<List<String>> keysByBucket = new ArrayList<>();
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++)
+            keysByBucket.add(new ArrayList<>());
+        for (String key : keys)
+            keysByBucket.get(getBucket(key)).add(key);
+
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++){
+            if(keysByBucket.get(bucket).isEmpty())
+                continue;
+            this.locks[bucket].writeLock().lock();
+            try {
+                // keys that were written again meanwhile have a new expiry time or none
+                List<String> expired = new ArrayList<>();
+                for (String key : keysByBucket.get(bucket)) {
+                    if(isExpired(this.expiryManager.get(key)))
+                        expired.add(key);
+                }
+                if(expired.isEmpty())
+                    continue;
+                String fileName = Constants.FILENAMES[bucket];
+                HashMap<String, String> bucketData = readFile(fileName);
+                if(bucketData.keySet().removeAll(expired))
+                    writeToFile(bucketData, fileName);
+                this.ownerManager.deleteAll(expired);
+                this.expiryManager.deleteAll(expired);
+            } finally {
+                this.locks[bucket].writeLock().unlock();
+            }
+        }
     }
 
     /**
@@ -142,11 +402,46 @@ public class FileManager {
      * @param predHash the hash of the newly-added server.
      * @return string of the key-value pairs concatenated.
      */
-    public synchronized HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd){
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd){
+        return getTransferedKVPairs(predHash, predHashEnd, null);
+    }
+
+    /**
+     * returns the list of the transfered key-value pairs and their owners.
+     *
+     * @param predHash the hash of the newly-added server.
+     * @param owners filled with the owners of the transfered keys.
+     * @return string of the key-value pairs concatenated.
+     */
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String,String> owners){
+        return getTransferedKVPairs(predHash, predHashEnd, owners, null, null);
+    }
+
+    /**
+     * returns the list of the transfered key-value pairs with their owners and expiry times, the files hold no compressed values.
+     * Expired keys are not transfered.
+     *
+     * @param predHash the hash of the newly-added server.
+     * @param owners filled with the owners of the transfered keys.
+     * @param compressed stays empty.
+     * @param expiries filled with the expiry times of the transfered keys that have one.
+     * @return string of the key-value pairs concatenated.
+     */
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String,String> owners,
+                                                       HashMap<String,byte[]> compressed, HashMap<String,Long> expiries){
+        if(owners != null)
+            owners.putAll(this.ownerManager.getTransferedKVPairs(predHash, predHashEnd));
+        HashMap<String, Long> allExpiries = this.expiryManager.getTransferedExpiries(predHash, predHashEnd);
         HashMap<String, String> res = new HashMap<>();
-        for(String fName: Constants.FILENAMES){
-            HashMap<String, String> data = readFile(fName);
-            System.out.println(fName+ "::the data map size: " + data.size());
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++){
+            // the scan only holds the read lock of one bucket at a time, readers are never blocked by it
+            HashMap<String, String> data;
+            this.locks[bucket].readLock().lock();
+            try {
+                data = readFile(Constants.FILENAMES[bucket]);
+            } finally {
+                this.locks[bucket].readLock().unlock();
+            }
             for (Map.Entry<String, String> entry : data.entrySet()) {
                 if(predHash.equals("ALL")){
                     res.putIfAbsent(entry.getKey(), entry.getValue());
@@ -156,48 +451,191 @@ public class FileManager {
                 }
             }
         }
+        for (Map.Entry<String, Long> expiry : allExpiries.entrySet()) {
+            if(isExpired(expiry.getValue())){
+                res.remove(expiry.getKey());
+                if(owners != null)
+                    owners.remove(expiry.getKey());
+            } else if(expiries != null && res.containsKey(expiry.getKey())){
+                expiries.put(expiry.getKey(), expiry.getValue());
+            }
+        }
         return res;
     }
 
+    /**
+     * the buckets are read as a whole anyway, so the scan collects the range first.
+     */
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String,String> consumer){
+        getTransferedKVPairs(predHash, predHashEnd).forEach(consumer);
+    }
+
+    /**
+     * the files hold no compressed values, so the values are passed UTF-8 encoded, after collecting the range like rangeScan.
+     */
+    public void rangeScanStored(String predHash, String predHashEnd, StoredValueConsumer consumer){
+        HashMap<String, Long> expiries = new HashMap<>();
+        for (Map.Entry<String, String> entry : getTransferedKVPairs(predHash, predHashEnd, null, null, expiries).entrySet()) {
+            Long expiresAt = expiries.get(entry.getKey());
+            consumer.accept(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8), false, expiresAt == null ? 0 : expiresAt);
+        }
+    }
+
+    /**
+     * copies all pairs while holding the read locks of all buckets, so writers wait until the copy is complete.
+     */
+    public StorageSnapshot snapshot(){
+        for(ReentrantReadWriteLock lock : this.locks)
+            lock.readLock().lock();
+        try {
+            HashMap<String, String> owners = new HashMap<>();
+            HashMap<String, Long> expiries = new HashMap<>();
+            HashMap<String, String> pairs = getTransferedKVPairs("ALL", "", owners, null, expiries);
+            return new CopySnapshot(pairs, owners, expiries);
+        } finally {
+            for(int bucket = this.locks.length - 1; bucket >= 0; bucket--)
+                this.locks[bucket].readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of keys, including expired keys that were not deleted yet.
+     */
+    public int size(){
+        int size = 0;
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++){
+            this.locks[bucket].readLock().lock();
+            try {
+                size += readFile(Constants.FILENAMES[bucket]).size();
+            } finally {
+                this.locks[bucket].readLock().unlock();
+            }
+        }
+        return size;
+    }
+
     /**
      * returns the map of the all key-value pairs.
      *
      * @return map of the key-value pairs .
      */
-    public synchronized HashMap<String,String> getAllPairs(){
-        HashMap<String, String> res = new HashMap<>();
-        for(String fName: Constants.FILENAMES){
-            HashMap<String, String> data = readFile(fName);
-            res.putAll(data);
+    public HashMap<String,String> getAllPairs(){
+        return getTransferedKVPairs("ALL", "");
+    }
+
+    /**
+     * inserts a batch of key-value pairs, rewriting every affected bucket and its owner file only once
+     * instead of once per key.
+     * @param pairs the key-value pairs.
+     * @param owner the user that is allowed to alter the keys, null if anyone is.
+     */
+    public void bulkLoad(Map<String,String> pairs, String owner){
+        List<List<String>> keysByBucket = new ArrayList<>();
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++)
+            keysByBucket.add(new ArrayList<>());
+        for (String key : pairs.keySet())
+            keysByBucket.get(getBucket(key)).add(key);
+
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++){
+            List<String> keys = keysByBucket.get(bucket);
+            if(keys.isEmpty())
+                continue;
+            this.locks[bucket].writeLock().lock();
+            try {
+                String fileName = Constants.FILENAMES[bucket];
+                HashMap<String, String> bucketData = readFile(fileName);
+                for (String key : keys)
+                    bucketData.put(key, pairs.get(key));
+                writeToFile(bucketData, fileName);
+                this.ownerManager.putAll(keys, owner);
+                this.expiryManager.deleteAll(keys);
+            } finally {
+                this.locks[bucket].writeLock().unlock();
+            }
         }
-        return res;
     }
 
     /**
-     * deletes the transfered key-value pairs.
+     * deletes the transfered key-value pairs, rewriting every affected bucket only once.
      * @param data map of the transfered key-value pairs.
      */
-    public synchronized void deleteTransferedKVPairs(HashMap<String,String> data){
-        for (Map.Entry<String, String> entry : data.entrySet()) 
-            this.delete(entry.getKey());
+    public void deleteTransferedKVPairs(HashMap<String,String> data){
+        List<List<String>> keysByBucket = new ArrayList<>();
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++)
+            keysByBucket.add(new ArrayList<>());
+        for (String key : data.keySet())
+            keysByBucket.get(getBucket(key)).add(key);
+
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++){
+            List<String> keys = keysByBucket.get(bucket);
+            if(keys.isEmpty())
+                continue;
+            this.locks[bucket].writeLock().lock();
+            try {
+                String fileName = Constants.FILENAMES[bucket];
+                HashMap<String, String> bucketData = readFile(fileName);
+                if(bucketData.keySet().removeAll(keys))
+                    writeToFile(bucketData, fileName);
+                this.ownerManager.deleteAll(keys);
+                this.expiryManager.deleteAll(keys);
+            } finally {
+                this.locks[bucket].writeLock().unlock();
+            }
+        }
+    }
+
+
+    /**
+     * deletes the key-value pairs of a hash range, their owners and expiry times, rewriting every bucket at most once
+     * instead of once per key.
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     */
+    public void deleteRange(String predHash, String predHashEnd){
+        for(int bucket = 0; bucket < Constants.FILENAMES.length; bucket++){
+            this.locks[bucket].writeLock().lock();
+            try {
+                String fileName = Constants.FILENAMES[bucket];
+                HashMap<String, String> bucketData = readFile(fileName);
+                List<String> keys = new ArrayList<>();
+                for (String key : bucketData.keySet()) {
+                    if(predHash.equals("ALL") || Metadata.hashInRange(key, predHash, predHashEnd))
+                        keys.add(key);
+                }
+                if(keys.isEmpty())
+                    continue;
+                bucketData.keySet().removeAll(keys);
+                writeToFile(bucketData, fileName);
+                this.ownerManager.deleteAll(keys);
+                this.expiryManager.deleteAll(keys);
+            } finally {
+                this.locks[bucket].writeLock().unlock();
+            }
+        }
     }
 
+    /**
+     * cancels the expiry sweeps, the bucket files are closed after every access.
+     */
+    public void close(){
+        this.expiryTimer.cancel();
+    }
 
     /**
-     * determines the target file for a given key.
+     * determines the bucket for a given key.
      *
      * @param key the key that identifies the value.
-     * @return the file name where the key-value pair will be stored.
+     * @return the index of the file in Constants.FILENAMES where the key-value pair will be stored.
      */
-    private String getTargetFile(String key){
+    static int getBucket(String key){
         if(startsBetween(key, 'a', 'h'))
-            return Constants.FILENAMES[0];
+            return 0;
         else if(startsBetween(key, 'i', 'q'))
-            return Constants.FILENAMES[1];
+            return 1;
         else if(startsBetween(key, 'r', 'z'))
-            return Constants.FILENAMES[2];
+            return 2;
         else
-            return Constants.FILENAMES[3];    
+            return 3;
     }
 
     private static boolean startsBetween(String key, char lowest, char highest) {
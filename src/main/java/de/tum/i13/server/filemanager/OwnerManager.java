@@ -7,9 +7,17 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Keeps the owners of the keys of the legacy FileManager in their own bucket files.
+ * Writers are serialized by the bucket locks of the FileManager, the files are replaced atomically
+ * so readers always see a complete bucket.
+ */
 public class OwnerManager {
     private Path path;
 
@@ -25,6 +33,7 @@ public class OwnerManager {
      */
     private void createTheFiles(String [] fileNames, Path path) {
         for(String fn : fileNames){
+            AtomicFile.recover(Paths.get(path+"/"+fn));
             createAFile(fn, path);
         }
     }
@@ -86,18 +95,14 @@ public class OwnerManager {
     }
 
     /**
-     * writes the cache HashMap into the storage file.
+     * writes the cache HashMap into the storage file, replacing the old content atomically.
      * @param data  the cache HashMap which will be stored in the file
      * @param fileName the file name where the HashMap will be stored.
      */
     private void writeToFile(HashMap<String, String> data, String fileName){
         fileName = this.path.toString() + "/" + fileName;
         try {
-            FileOutputStream fos = new FileOutputStream(fileName);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(data);
-            oos.close();
-            fos.close();
+            AtomicFile.write(Paths.get(fileName), data);
         } catch (FileNotFoundException e){
             System.out.println("Data files not found!");
         } catch (IOException e) {
@@ -126,7 +131,7 @@ public class OwnerManager {
      * @param value the value that is indexed by the given key.
      * @return the value associated with a key, null otherwise.
      */
-    public synchronized String put(String key, String value){
+    public String put(String key, String value){
         String fileName = getTargetFile(key);
         HashMap<String, String> data = readFile(fileName);
         String prev = data.put(key, value);
@@ -139,7 +144,7 @@ public class OwnerManager {
      * @param key the key that identifies the value.
      * @return the value deleted for the given key, null otherwise.
      */
-    public synchronized String delete(String key){
+    public String delete(String key){
         String fileName = getTargetFile(key);
         HashMap <String, String> data = readFile(fileName);
         if(data.size()==0)
@@ -150,17 +155,48 @@ public class OwnerManager {
         return value;
     }
 
+    /**
+     * Sets the owner of the given keys, which all belong to the same bucket.
+     * @param keys the keys of one bucket.
+     * @param owner the user that is allowed to alter the keys, null if anyone is.
+     */
+    public void putAll(Collection<String> keys, String owner){
+        if(owner == null){
+            deleteAll(keys);
+            return;
+        }
+        if(keys.isEmpty())
+            return;
+        String fileName = getTargetFile(keys.iterator().next());
+        HashMap <String, String> data = readFile(fileName);
+        for(String key : keys)
+            data.put(key, owner);
+        writeToFile(data, fileName);
+    }
+
+    /**
+     * Deletes the owners of the given keys, which all belong to the same bucket.
+     * @param keys the keys of one bucket.
+     */
+    public void deleteAll(Collection<String> keys){
+        if(keys.isEmpty())
+            return;
+        String fileName = getTargetFile(keys.iterator().next());
+        HashMap <String, String> data = readFile(fileName);
+        if(data.keySet().removeAll(keys))
+            writeToFile(data, fileName);
+    }
+
     /**
      * returns the list of the transfered key-value pairs.
      *
      * @param predHash the hash of the newly-added server.
      * @return string of the key-value pairs concatenated.
      */
-    public synchronized HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd){
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd){
         HashMap<String, String> res = new HashMap<>();
-        for(String fName: Constants.FILENAMES){
+        for(String fName: Constants.OWNER_FILENAMES){
             HashMap<String, String> data = readFile(fName);
-            System.out.println(fName+ "::the data map size: " + data.size());
             for (Map.Entry<String, String> entry : data.entrySet()) {
                 if(predHash.equals("ALL")){
                     res.putIfAbsent(entry.getKey(), entry.getValue());
@@ -178,9 +214,9 @@ public class OwnerManager {
      *
      * @return map of the key-value pairs .
      */
-    public synchronized HashMap<String,String> getAllPairs(){
+    public HashMap<String,String> getAllPairs(){
         HashMap<String, String> res = new HashMap<>();
-        for(String fName: Constants.FILENAMES){
+        for(String fName: Constants.OWNER_FILENAMES){
             HashMap<String, String> data = readFile(fName);
             res.putAll(data);
         }
@@ -188,12 +224,15 @@ public class OwnerManager {
     }
 
     /**
-     * deletes the transfered key-value pairs.
+     * deletes the transfered key-value pairs, rewriting every affected bucket only once.
      * @param data map of the transfered key-value pairs.
      */
-    public synchronized void deleteTransferedKVPairs(HashMap<String,String> data){
-        for (Map.Entry<String, String> entry : data.entrySet())
-            this.delete(entry.getKey());
+    public void deleteTransferedKVPairs(HashMap<String,String> data){
+        HashMap<String, List<String>> keysByFile = new HashMap<>();
+        for (String key : data.keySet())
+            keysByFile.computeIfAbsent(getTargetFile(key), f -> new ArrayList<>()).add(key);
+        for (List<String> keys : keysByFile.values())
+            this.deleteAll(keys);
     }
 
 
@@ -204,18 +243,7 @@ public class OwnerManager {
      * @return the file name where the key-value pair will be stored.
      */
     private String getTargetFile(String key){
-        if(startsBetween(key, 'a', 'h'))
-            return Constants.FILENAMES[0];
-        else if(startsBetween(key, 'i', 'q'))
-            return Constants.FILENAMES[1];
-        else if(startsBetween(key, 'r', 'z'))
-            return Constants.FILENAMES[2];
-        else
-            return Constants.FILENAMES[3];
-    }
-
-    private static boolean startsBetween(String key, char lowest, char highest) {
-        char c=key.toLowerCase().charAt(0);
-        return c >= lowest && c <= highest;
+        // the same bucket as the value, so the bucket lock of the FileManager covers both
+        return Constants.OWNER_FILENAMES[FileManager.getBucket(key)];
     }
 }
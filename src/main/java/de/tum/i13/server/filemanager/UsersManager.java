@@ -2,11 +2,9 @@ package de.tum.i13.server.filemanager;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -21,6 +19,7 @@ public class UsersManager {
 
     private void createUsersFile() {
         Path p = Paths.get("users/users.txt");
+        AtomicFile.recover(p);
         if(!Files.exists(p)){
             try {
                 Files.createDirectory(Paths.get("users/"));
@@ -55,11 +54,7 @@ public class UsersManager {
     private void writeToFile(HashMap<String, PublicKey> users){
         String fileName = "users/users.txt";
         try {
-            FileOutputStream fos = new FileOutputStream(fileName);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(users);
-            oos.close();
-            fos.close();
+            AtomicFile.write(Paths.get(fileName), users);
         } catch (FileNotFoundException e){
             System.out.println("Users file not found!");
         } catch (IOException e) {
@@ -0,0 +1,134 @@
+package de.tum.i13.server.kv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tum.i13.shared.Metadata;
+
+/**
+ * Journal of the keys written by clients while a hash range is handed off between two servers.
+ * The sender sends the keys that changed after the snapshot of the transfer was taken,
+ * the receiver keeps the keys that clients wrote to it over the older values of the transfer.
+ * Every write is numbered by a sequence number and only the latest number of a key is kept,
+ * so the journal grows with the number of changed keys instead of the number of writes.
+ * A journal may be opened with a lease that the messages of the handoff renew, once it runs out the handoff counts as
+ * abandoned and the journal is closed, so a peer that crashes or stalls does not keep it growing.
+ */
+public class ChangeJournal {
+    private final AtomicLong sequence;
+    private final ConcurrentHashMap<String, Long> changes;
+    private volatile boolean open;
+    private volatile long timeout;
+    private volatile long deadline;
+
+    public ChangeJournal() {
+        this.sequence = new AtomicLong();
+        this.changes = new ConcurrentHashMap<>();
+        this.open = false;
+    }
+
+    /**
+     * starts recording the writes without a lease, the keys recorded before are dropped.
+     */
+    public void open() {
+        open(0);
+    }
+
+    /**
+     * starts recording the writes, the keys recorded before are dropped.
+     * @param timeout the milliseconds without a renewal after which the journal closes itself, 0 for no lease.
+     */
+    public void open(long timeout) {
+        this.changes.clear();
+        this.timeout = timeout;
+        this.deadline = System.currentTimeMillis() + timeout;
+        this.open = true;
+    }
+
+    /**
+     * extends the lease of an open journal by its timeout, a journal that already closed stays closed.
+     */
+    public void renew() {
+        if (isOpen())
+            this.deadline = System.currentTimeMillis() + this.timeout;
+    }
+
+    /**
+     * stops recording the writes and drops the recorded keys.
+     */
+    public void close() {
+        this.open = false;
+        this.changes.clear();
+    }
+
+    /**
+     * @return true if the journal records writes, a journal whose lease ran out is closed by the call.
+     */
+    public boolean isOpen() {
+        if (this.open && this.timeout != 0 && System.currentTimeMillis() >= this.deadline)
+            close();
+        return this.open;
+    }
+
+    /**
+     * records a put or delete of a key, has to be called after the storage was written.
+     * @param key the key that was written.
+     */
+    public void record(String key) {
+        if (isOpen())
+            this.changes.put(key, this.sequence.incrementAndGet());
+    }
+
+    /**
+     * @return true if the key was written since the journal was opened.
+     */
+    public boolean contains(String key) {
+        return isOpen() && this.changes.containsKey(key);
+    }
+
+    /**
+     * @return the number of recorded keys in all ranges.
+     */
+    public int size() {
+        return isOpen() ? this.changes.size() : 0;
+    }
+
+    /**
+     * @param start the start hash of the range or "ALL" for every key.
+     * @param end the end hash of the range.
+     * @return the number of recorded keys in the hash range, which the next drain of the range removes.
+     */
+    public int size(String start, String end) {
+        if (!isOpen() || start.equals("ALL"))
+            return this.changes.size();
+        int count = 0;
+        for (String key : this.changes.keySet()) {
+            if (Metadata.hashInRange(key, start, end))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * removes the recorded keys of a hash range, the caller reads their current value from the storage afterwards.
+     * A key that is written again meanwhile has a new sequence number and stays in the journal for the next drain,
+     * so no write is lost between two drains.
+     * @param start the start hash of the range or "ALL" for every key.
+     * @param end the end hash of the range.
+     * @return the removed keys.
+     */
+    public List<String> drain(String start, String end) {
+        List<String> keys = new ArrayList<>();
+        if (!isOpen())
+            return keys;
+        for (Map.Entry<String, Long> change : this.changes.entrySet()) {
+            String key = change.getKey();
+            if ((start.equals("ALL") || Metadata.hashInRange(key, start, end)) && this.changes.remove(key, change.getValue()))
+                keys.add(key);
+        }
+        return keys;
+    }
+}
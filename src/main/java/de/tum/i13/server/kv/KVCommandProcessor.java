@@ -3,8 +3,14 @@ package de.tum.i13.server.kv;
 import de.tum.i13.shared.CommandProcessor;
 import de.tum.i13.shared.Constants;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.logging.Logger;
 
 public class KVCommandProcessor implements CommandProcessor {
@@ -30,8 +36,12 @@ public class KVCommandProcessor implements CommandProcessor {
                 return handleGetCommand(commandArr);
             case "put":
                 return handlePutCommand(commandArr);
+            case "put_ttl":
+                return handlePutTtlCommand(commandArr);
             case "delete":
                 return handleDeleteCommand(commandArr);
+            case "import":
+                return handleImportCommand(commandArr);
             case "keyrange":
                 return handleKeyRange(commandArr);
             case "keyrange_read":
@@ -92,42 +102,77 @@ public class KVCommandProcessor implements CommandProcessor {
      */
     private String handlePutCommand(String[] commandArr) {
         logger.info("Executing put command...");
-        if(commandArr.length >= 4) {
-            String res;
+        if(commandArr.length >= 4)
+            return put(commandArr, 3, 0);
+        logger.warning(Constants.PUT_ERROR+": invalid number of arguments!");
+        return Constants.PUT_ERROR+" " + commandArr[2] + " invalid number of arguments!";
+    }
+
+    /**
+     * handles put_ttl command from client: put_ttl user key seconds value.
+     *
+     * @param commandArr the command alongside with key, time to live in seconds and value(s).
+     * @return the response returned from the server (success or error).
+     */
+    private String handlePutTtlCommand(String[] commandArr) {
+        logger.info("Executing put_ttl command...");
+        if(commandArr.length >= 5) {
+            long seconds;
             try {
-                String value = commandArr.length==4?commandArr[3]:constructValue(commandArr);
-                String user = commandArr[1];
-                if(commandArr[2].getBytes().length>20 || value.getBytes().length>122880){
-                    String errorMsg = Constants.PUT_ERROR + " key or value are too long!";
-                    logger.warning(errorMsg);
-                    return errorMsg;
-                }
-                res = kvStore.put(commandArr[2], value, user);
-                if(res.equals("insert")) {
-                    logger.fine(Constants.PUT_SUCCESS+" " + commandArr[2]);
-                    boolean replica_1InUse = this.kvStore.getReplica_1().isInUse();
-                    boolean replica_2InUse = this.kvStore.getReplica_2().isInUse();
-                    this.kvStore.getEcsthread().makeDataConsistentAgain(replica_1InUse, replica_2InUse);
-                    return Constants.PUT_SUCCESS+" " + commandArr[2];
-                } else if(res.equals("update")){
-                    logger.fine(Constants.PUT_UPDATE+" " + commandArr[2]);
-                    boolean replica_1InUse = this.kvStore.getReplica_1().isInUse();
-                    boolean replica_2InUse = this.kvStore.getReplica_2().isInUse();
-                    this.kvStore.getEcsthread().makeDataConsistentAgain(replica_1InUse, replica_2InUse);
-                    return Constants.PUT_UPDATE +" "+ commandArr[2];
-                } else {
-                    logger.warning(res);
-                    return res;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                logger.severe(Constants.PUT_ERROR+": exception thrown!");
-                return Constants.PUT_ERROR+" " + commandArr[2] + " exception thrown!";
+                seconds = Long.parseLong(commandArr[3]);
+            } catch (NumberFormatException e) {
+                seconds = -1;
             }
+            if(seconds <= 0){
+                logger.warning(Constants.PUT_ERROR+": invalid time to live!");
+                return Constants.PUT_ERROR+" " + commandArr[2] + " invalid time to live!";
+            }
+            return put(commandArr, 4, System.currentTimeMillis() + seconds * 1000);
+        }
+        logger.warning(Constants.PUT_ERROR+": invalid number of arguments!");
+        return Constants.PUT_ERROR+" " + commandArr[2] + " invalid number of arguments!";
+    }
 
-        } else {
-            logger.warning(Constants.PUT_ERROR+": invalid number of arguments!");
-        	return Constants.PUT_ERROR+" " + commandArr[2] + " invalid number of arguments!";
+    /**
+     * stores the value of a put or put_ttl command and replicates it.
+     *
+     * @param commandArr the command alongside with user, key and value(s).
+     * @param valueIndex the index of the first word of the value.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return the response returned from the server (success or error).
+     */
+    private String put(String[] commandArr, int valueIndex, long expiresAt) {
+        String res;
+        try {
+            String value = constructValue(commandArr, valueIndex);
+            String user = commandArr[1];
+            // counted in UTF-8, the encoding the values are stored in, instead of the platform charset
+            if(commandArr[2].getBytes(StandardCharsets.UTF_8).length>20 || value.getBytes(StandardCharsets.UTF_8).length>122880){
+                String errorMsg = Constants.PUT_ERROR + " key or value are too long!";
+                logger.warning(errorMsg);
+                return errorMsg;
+            }
+            res = kvStore.put(commandArr[2], value, user, expiresAt);
+            if(res.equals("insert")) {
+                logger.fine(Constants.PUT_SUCCESS+" " + commandArr[2]);
+                boolean replica_1InUse = this.kvStore.getReplica_1().isInUse();
+                boolean replica_2InUse = this.kvStore.getReplica_2().isInUse();
+                this.kvStore.getEcsthread().makeDataConsistentAgain(commandArr[2], value, expiresAt, replica_1InUse, replica_2InUse);
+                return Constants.PUT_SUCCESS+" " + commandArr[2];
+            } else if(res.equals("update")){
+                logger.fine(Constants.PUT_UPDATE+" " + commandArr[2]);
+                boolean replica_1InUse = this.kvStore.getReplica_1().isInUse();
+                boolean replica_2InUse = this.kvStore.getReplica_2().isInUse();
+                this.kvStore.getEcsthread().makeDataConsistentAgain(commandArr[2], value, expiresAt, replica_1InUse, replica_2InUse);
+                return Constants.PUT_UPDATE +" "+ commandArr[2];
+            } else {
+                logger.warning(res);
+                return res;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.severe(Constants.PUT_ERROR+": exception thrown!");
+            return Constants.PUT_ERROR+" " + commandArr[2] + " exception thrown!";
         }
     }
 
@@ -135,15 +180,88 @@ public class KVCommandProcessor implements CommandProcessor {
      * handles multiples words values in put command.
      *
      * @param commandArr the command alongside with key and value(s).
+     * @param valueIndex the index of the first word of the value.
      * @return the concatenated value.
      */
-    private String constructValue(String[] commandArr) {
-        String result = commandArr[3];
-        for(int i=4; i<commandArr.length; i++)
+    private String constructValue(String[] commandArr, int valueIndex) {
+        String result = commandArr[valueIndex];
+        for(int i=valueIndex+1; i<commandArr.length; i++)
             result= result + " " + commandArr[i];
         return result;
     }
 
+    /**
+     * handles import command from client: import user file.
+     * The file is read from the file system of the server and holds a key-value pair per line, the key is separated
+     * from the value by the first space. The pairs are stored in batches and the keys of other servers are skipped,
+     * so every server of the cluster can import the same file. The replicas receive the data once at the end.
+     *
+     * @param commandArr the command alongside with user and file.
+     * @return the number of imported and skipped pairs or an error.
+     */
+    private String handleImportCommand(String[] commandArr) {
+        logger.info("Executing import command...");
+        if(commandArr.length != 3) {
+            logger.warning(Constants.IMPORT_ERROR+": invalid number of arguments!");
+            return Constants.IMPORT_ERROR+" invalid number of arguments!";
+        }
+        String user = commandArr[1];
+        // only files of the import folder are read, so a client cannot read other files of the server
+        Path importDirectory = this.kvStore.getImportDirectory();
+        Path file = importDirectory.resolve(commandArr[2]).normalize();
+        if(!file.startsWith(importDirectory)) {
+            logger.warning(Constants.IMPORT_ERROR+": " + commandArr[2] + " is outside of " + importDirectory);
+            return Constants.IMPORT_ERROR+" " + commandArr[2] + " is not in the import folder";
+        }
+        long start = System.currentTimeMillis();
+        int imported = 0;
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            HashMap<String, String> batch = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if(space <= 0 || line.substring(0, space).getBytes(StandardCharsets.UTF_8).length > 20
+                        || line.substring(space + 1).getBytes(StandardCharsets.UTF_8).length > 122880) {
+                    skipped++;
+                    continue;
+                }
+                batch.put(line.substring(0, space), line.substring(space + 1));
+                if(batch.size() < Constants.IMPORT_BATCH_SIZE)
+                    continue;
+                int stored = this.kvStore.bulkLoad(batch, user);
+                if(stored < 0)
+                    return stopImport(imported, this.kvStore.getState());
+                imported += stored;
+                skipped += batch.size() - stored;
+                batch.clear();
+            }
+            int stored = this.kvStore.bulkLoad(batch, user);
+            if(stored < 0)
+                return stopImport(imported, this.kvStore.getState());
+            imported += stored;
+            skipped += batch.size() - stored;
+        } catch (IOException e) {
+            logger.warning(Constants.IMPORT_ERROR+": could not read " + file);
+            return stopImport(imported, Constants.IMPORT_ERROR+" could not read " + commandArr[2] + ", imported");
+        }
+        this.kvStore.getEcsthread().bootstrapReplicas();
+        logger.info("Imported " + imported + " pairs and skipped " + skipped + " in " + (System.currentTimeMillis() - start) + " ms");
+        return Constants.IMPORT_SUCCESS+" " + imported + " " + skipped;
+    }
+
+    /**
+     * ends an import that could not read the whole file, the pairs imported before are still replicated.
+     * @param imported the number of pairs imported before.
+     * @param response the response of the failure, the number of imported pairs is appended.
+     */
+    private String stopImport(int imported, String response) {
+        if(imported > 0)
+            this.kvStore.getEcsthread().bootstrapReplicas();
+        logger.warning("Import stopped after " + imported + " pairs: " + response);
+        return response + " " + imported;
+    }
+
     /**
      * handles delete command from client.
      *
@@ -161,7 +279,7 @@ public class KVCommandProcessor implements CommandProcessor {
                     logger.fine(Constants.DELETE_SUCCESS+" " + commandArr[2]);
                     boolean replica_1InUse = this.kvStore.getReplica_1().isInUse();
                     boolean replica_2InUse = this.kvStore.getReplica_2().isInUse();
-                    this.kvStore.getEcsthread().makeDataConsistentAgain(replica_1InUse, replica_2InUse);
+                    this.kvStore.getEcsthread().makeDataConsistentAgain(commandArr[2], null, 0, replica_1InUse, replica_2InUse);
                     return Constants.DELETE_SUCCESS+" " + commandArr[2];
                 } else if (value.equals(Constants.NOT_FOUND)) {
                     logger.warning(Constants.DELETE_ERROR+" " + commandArr[2]);
@@ -14,6 +14,19 @@ public interface KVStore {
      */
     public String put(String key, String value, String user) throws Exception;
 
+    /**
+     * Inserts a key-value pair that expires at the given time into the KVServer.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key.
+     * @param user the user that entered that key and is allowed to alter it.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return a message that confirms the insertion of the tuple, update of a the tuple or an error.
+     * @throws Exception if put command cannot be executed (e.g. not connected to any
+     *                   KV server).
+     */
+    public String put(String key, String value, String user, long expiresAt) throws Exception;
+
     /**
      * Retrieves the value for a given key from the KVServer.
      *
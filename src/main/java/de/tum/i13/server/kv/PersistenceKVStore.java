@@ -3,10 +3,16 @@ package de.tum.i13.server.kv;
 import de.tum.i13.security.RSA;
 import de.tum.i13.server.ECSConnection.ECSThread;
 import de.tum.i13.server.filemanager.FileManager;
-import de.tum.i13.server.filemanager.OwnerManager;
-
 import de.tum.i13.server.filemanager.UsersManager;
 import de.tum.i13.server.kvcache.KVCache;
+import de.tum.i13.server.memory.HeapValueStore;
+import de.tum.i13.server.memory.SlabAllocator;
+import de.tum.i13.server.memory.ValueStore;
+import de.tum.i13.server.storage.Compression;
+import de.tum.i13.server.storage.FsyncPolicy;
+import de.tum.i13.server.storage.LogStorageEngine;
+import de.tum.i13.server.storage.MemoryStorageEngine;
+import de.tum.i13.server.storage.StorageEngine;
 import de.tum.i13.shared.Config;
 import de.tum.i13.shared.Constants;
 import de.tum.i13.shared.Metadata;
@@ -14,6 +20,8 @@ import de.tum.i13.shared.ServerEntry;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -21,16 +29,19 @@ import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
 
 public class PersistenceKVStore implements KVStore {
 
     private String cacheStrategy;
     private KVCache cache;
-    private FileManager fileManager;
+    private StorageEngine storageEngine;
+    private ValueStore valueStore;
     private UsersManager usersManager;
-    private OwnerManager ownerManager;
     private int cacheCapacity;
     private Path path;
     private Metadata metadata;
@@ -40,6 +51,13 @@ public class PersistenceKVStore implements KVStore {
     private ECSThread ecsthread;
     private Config config;
     private String generatedWord;
+    // the keys written while this server hands a range off to its successor
+    private ChangeJournal senderJournal;
+    // the keys written while this server receives a range, which win over the transfered values
+    private ChangeJournal receiverJournal;
+    // held for reading by every put and delete, for writing while the server is write locked,
+    // so no write is still running once the lock is set
+    private ReentrantReadWriteLock writeGate;
     public static Logger logger = Logger.getLogger(PersistenceKVStore.class.getName());
 
     public PersistenceKVStore(Config config) throws IllegalArgumentException, NullPointerException{
@@ -48,25 +66,91 @@ public class PersistenceKVStore implements KVStore {
         this.cacheCapacity = config.cacheSize;
         this.config = config;
         this.path = config.dataDir;
-        this.fileManager = new FileManager(this.path);
-        this.ownerManager = new OwnerManager(this.path);
-        this.cache= new KVCache(this.cacheCapacity, this.cacheStrategy);
+        // the data log is replayed here, before the ECS thread joins the ring
+        this.storageEngine = createStorageEngine(config, config.dataDir);
+        // replicas kept from before a restart are reopened as well
+        this.replica_1 = createReplica(config, 1);
+        this.replica_2 = createReplica(config, 2);
+        this.valueStore = createValueStore(config);
+        this.cache= new KVCache(this.cacheCapacity, config.cacheMemory, this.cacheStrategy, this.valueStore);
         this.state = Constants.SERVER_AVAILABLE;
+        this.senderJournal = new ChangeJournal();
+        this.receiverJournal = new ChangeJournal();
+        this.writeGate = new ReentrantReadWriteLock();
         this.ecsthread =new ECSThread(this, config.listenaddr, config.port, config.bootstrap);
         ecsthread.start();
         this.metadata = ecsthread.getMetadata();
-        this.replica_1 = new ReplicaStorage();
-        this.replica_2= new ReplicaStorage();
         this.usersManager = new UsersManager();
         this.generatedWord="";
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
-                logger.info("Closing the kv server");
+                logger.info("Closing the kv server, cache: " + cache.getStats() + ", reserved value memory: " + cache.getReservedBytes() + " bytes");
+                replica_1.close();
+                replica_2.close();
+                storageEngine.close();
             }
         });
     }
-        /**
+
+    /**
+     * Creates the storage engine selected in the config, also used by the benchmarks to compare the engines.
+     *
+     * @param config the server config containing the storage engine name and its options.
+     * @param dir the folder of the storage engine.
+     * @return the storage engine.
+     */
+    public static StorageEngine createStorageEngine(Config config, Path dir) {
+        switch (config.storageEngine) {
+            case Constants.STORAGE_LOG:
+                if (!config.readMode.equals(Constants.READ_MODE_PREAD) && !config.readMode.equals(Constants.READ_MODE_MMAP)) {
+                    logger.severe("Incorrect read mode: " + config.readMode);
+                    throw new IllegalArgumentException();
+                }
+                return new LogStorageEngine(dir, Constants.MAX_SEGMENT_SIZE, FsyncPolicy.parse(config.fsyncPolicy),
+                        config.readMode.equals(Constants.READ_MODE_MMAP),
+                        new Compression(config.compressionLevel, config.compressionThreshold));
+            case Constants.STORAGE_LEGACY: return new FileManager(dir);
+            case Constants.STORAGE_MEMORY: return new MemoryStorageEngine();
+            default: logger.severe("Incorrect storage engine: " + config.storageEngine);
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Creates the replica of a replica slot in its own folder of the data directory, with the same storage engine as the primary data.
+     *
+     * @param config the server config.
+     * @param slot the replica slot, 1 or 2.
+     * @return the replica.
+     */
+    private static ReplicaStorage createReplica(Config config, int slot) {
+        Path dir = config.dataDir.resolve(Constants.REPLICA_PREFIX + slot);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            logger.severe("Could not create the replica folder " + dir);
+            throw new UncheckedIOException(e);
+        }
+        return new ReplicaStorage(createStorageEngine(config, dir), dir);
+    }
+
+    /**
+     * Creates the memory the cached values are kept in.
+     *
+     * @param config the server config containing the value memory.
+     * @return the value store.
+     */
+    private static ValueStore createValueStore(Config config) {
+        switch (config.valueMemory) {
+            case Constants.VALUE_MEMORY_OFFHEAP: return new SlabAllocator();
+            case Constants.VALUE_MEMORY_HEAP: return new HeapValueStore();
+            default: logger.severe("Incorrect value memory: " + config.valueMemory);
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
      * Inserts a key-value pair into the KVServer.
      *
      * @param key   the key that identifies the given value.
@@ -79,15 +163,45 @@ public class PersistenceKVStore implements KVStore {
 
     @Override
     public String put(String key, String value, String user) throws Exception {
+        return put(key, value, user, 0);
+    }
+
+    /**
+     * Inserts a key-value pair that expires at the given time into the KVServer.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key
+     * @param user the user that entered that key and is allowed to alter it.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return a message that confirms the insertion of the tuple or update of the tuple or the server state.
+     * @throws Exception if put command cannot be executed (e.g. not connected to any
+     *                   KV server).
+     */
+    @Override
+    public String put(String key, String value, String user, long expiresAt) throws Exception {
+        this.writeGate.readLock().lock();
+        try {
+            return doPut(key, value, user, expiresAt);
+        } finally {
+            this.writeGate.readLock().unlock();
+        }
+    }
+
+    private String doPut(String key, String value, String user, long expiresAt) {
         if(this.state.equals(Constants.SERVER_AVAILABLE)){
             if(checkResponsibility(key)){
-                if(this.ownerManager.isOwner(key, user)) {
-                    String type = this.fileManager.put(key, value);
-                    this.ownerManager.put(key, user);
-                    // update cache even if it's an update command
-                    this.cache.put(key, value);
+                if(isOwner(key, user)) {
+                    // value, owner and expiry are written together
+                    boolean updated = this.storageEngine.put(key, value, user, expiresAt);
+                    // update cache even if it's an update command, keys that expire are only served by the storage,
+                    // which checks their expiry
+                    if(expiresAt == 0)
+                        this.cache.put(key, value);
+                    else
+                        this.cache.delete(key);
+                    recordChange(key);
 
-                    return type==null?"insert":"update";
+                    return updated?"update":"insert";
                 } else {
                     return "put_error current user is not the owner of this key, no write requests allowed";
                 }
@@ -111,29 +225,29 @@ public class PersistenceKVStore implements KVStore {
     public String get(String key) throws Exception {
         if(this.state.equals(Constants.SERVER_AVAILABLE) || this.state.equals(Constants.SERVER_WRITELOCK)){
             if(checkResponsibility(key)){
-                boolean isValueInCache = this.cache.isKeyInCache(key);
                 // if value is in cache, return it
-                if(isValueInCache){
-                    String value = this.cache.get(key);
+                String cached = this.cache.get(key);
+                if(cached != null){
                     logger.info("Got value for the key: "+ key +" from cache");
-                    return value;
+                    return cached;
                 } else {
                     // else we check if it is in the file manager, if yes we add it to cache else we return null 
-                    String value = this.fileManager.get(key);
+                    String value = this.storageEngine.get(key);
                     if(value!= null){
                         logger.info("Got value for the key: "+ key +" from file storage");
-                        this.cache.put(key, value);
+                        if(this.storageEngine.getExpiry(key) == 0)
+                            this.cache.put(key, value);
                     }
                     return value;
                 }
                 // Check if replica_1 is responsible
             } else if (replica_1.isInUse() && Metadata.hashInRange(key, replica_1.getStartHash(), replica_1.getEndHash())){
                 logger.info("Got value for the key: "+ key +" from replica_1");
-                return replica_1.getStorage().get(key);
+                return replica_1.get(key);
                 // Check if replica_2 is responsible
             } else if (replica_2.isInUse() && Metadata.hashInRange(key, replica_2.getStartHash(), replica_2.getEndHash())){
                 logger.info("Got value for the key: "+ key +" from replica_2");
-                return replica_2.getStorage().get(key);
+                return replica_2.get(key);
             } else
                 return Constants.SERVER_NOTRESPONSIBLE;
         }
@@ -151,17 +265,26 @@ public class PersistenceKVStore implements KVStore {
      */
     @Override
     public String delete(String key, String user) throws Exception {
+        this.writeGate.readLock().lock();
+        try {
+            return doDelete(key, user);
+        } finally {
+            this.writeGate.readLock().unlock();
+        }
+    }
+
+    private String doDelete(String key, String user) {
         if(this.state.equals(Constants.SERVER_AVAILABLE)){
             if(checkResponsibility(key)){
-                if (this.ownerManager.isOwner(key, user)) {
-                    String value = this.fileManager.delete(key);
-                    this.ownerManager.delete(key);
-                    if(value==null){
+                if (isOwner(key, user)) {
+                    boolean deleted = this.storageEngine.delete(key);
+                    if(!deleted){
                         // key is not in the storage so we do nothing
                         return Constants.NOT_FOUND;
                     } else {
                         // we check if the key is in cache to delete it from there too.
                         this.cache.delete(key);
+                        recordChange(key);
                         return Constants.FOUND_DELETED;
                     }
                 } else {
@@ -174,6 +297,49 @@ public class PersistenceKVStore implements KVStore {
 
     }
 
+    /**
+     * Imports a batch of key-value pairs, e.g. the initial dataset of the cluster, with a single write per partition or bucket
+     * instead of a write per key. Keys the server is not responsible for and keys owned by another user are skipped.
+     * The replicas are not updated per key, the caller bootstraps them once the import is done.
+     *
+     * @param pairs the key-value pairs.
+     * @param user the user that imports the pairs and is allowed to alter them.
+     * @return the number of imported pairs, -1 if the server does not accept writes.
+     */
+    public int bulkLoad(Map<String, String> pairs, String user) {
+        this.writeGate.readLock().lock();
+        try {
+            if(!this.state.equals(Constants.SERVER_AVAILABLE))
+                return -1;
+            HashMap<String, String> accepted = new HashMap<>();
+            for (Map.Entry<String, String> pair : pairs.entrySet()) {
+                if(checkResponsibility(pair.getKey()) && isOwner(pair.getKey(), user))
+                    accepted.put(pair.getKey(), pair.getValue());
+            }
+            this.storageEngine.bulkLoad(accepted, user);
+            // the cache is filled by the reads that follow instead of by the import
+            for (String key : accepted.keySet()) {
+                this.cache.delete(key);
+                recordChange(key);
+            }
+            return accepted.size();
+        } finally {
+            this.writeGate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a user is allowed to alter a key.
+     *
+     * @param key the key that identifies the value.
+     * @param user the user that wants to alter the key.
+     * @return true if the key has no owner or the user owns it, false otherwise.
+     */
+    private boolean isOwner(String key, String user) {
+        String owner = this.storageEngine.getOwner(key);
+        return owner == null || owner.equals(user);
+    }
+
     public String register(String username, String publickey){
         if(this.state.equals(Constants.SERVER_AVAILABLE)){
             if(this.usersManager.getUserKey(username)!=null){
@@ -259,15 +425,49 @@ public class PersistenceKVStore implements KVStore {
     public String getState() {
         return state;
     }
+    /**
+     * @return the folder of the data directory that import files are read from, absolute and normalized.
+     */
+    public Path getImportDirectory() {
+        return this.path.resolve(Constants.IMPORT_DIRECTORY).toAbsolutePath().normalize();
+    }
     public void setState(String state) {
         this.state = state;
     }
-    public FileManager getFileManager() {
-        return fileManager;
+
+    /**
+     * locks the server for writes and waits until the puts and deletes that are still running are done.
+     */
+    public void lockWrites() {
+        this.writeGate.writeLock().lock();
+        try {
+            this.state = Constants.SERVER_WRITELOCK;
+        } finally {
+            this.writeGate.writeLock().unlock();
+        }
+    }
+    /**
+     * records a written key in the journals of both handoff roles, which only keep it while they are open.
+     */
+    private void recordChange(String key) {
+        this.senderJournal.record(key);
+        this.receiverJournal.record(key);
+    }
+    public ChangeJournal getSenderJournal() {
+        return senderJournal;
+    }
+    public ChangeJournal getReceiverJournal() {
+        return receiverJournal;
+    }
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
     }
     public KVCache getCache() {
         return cache;
     }
+    public ValueStore getValueStore() {
+        return valueStore;
+    }
 
     public void setMetadata(Metadata metadata) {
         this.metadata = metadata;
@@ -279,15 +479,9 @@ public class PersistenceKVStore implements KVStore {
     public ReplicaStorage getReplica_1() {
         return replica_1;
     }
-    public void setReplica_1(ReplicaStorage replica_1) {
-        this.replica_1 = replica_1;
-    }
     public ReplicaStorage getReplica_2() {
         return replica_2;
     }
-    public void setReplica_2(ReplicaStorage replica_2) {
-        this.replica_2 = replica_2;
-    }
     public ECSThread getEcsthread() {
         return ecsthread;
     }
@@ -300,9 +494,5 @@ public class PersistenceKVStore implements KVStore {
     public void setUsersManager(UsersManager usersManager) {
         this.usersManager = usersManager;
     }
-
-    public OwnerManager getOwnerManager() {
-        return this.ownerManager;
-    }
     
 }
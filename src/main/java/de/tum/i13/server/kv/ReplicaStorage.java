@@ -1,45 +1,192 @@
 package de.tum.i13.server.kv;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.logging.Logger;
 
+import de.tum.i13.server.filemanager.AtomicFile;
+import de.tum.i13.server.storage.StorageEngine;
+import de.tum.i13.shared.Constants;
+
+/**
+ * The replica of the range of another server, kept in a storage engine of its own next to the primary data,
+ * so the replica lives on disk instead of on the heap and survives a restart together with its range.
+ * After the initial copy the primary only sends the keys that change.
+ */
 public class ReplicaStorage {
-    private HashMap<String, String> storage;
+    public static Logger logger = Logger.getLogger(ReplicaStorage.class.getName());
+
+    private StorageEngine storage;
+    private Path rangeFile;
     private String startHash;
     private String endHash;
     private boolean inUse;
-    public ReplicaStorage(HashMap<String, String> storage, String startHash, String endHash){
+
+    /**
+     * @param storage the storage engine of the replica, separate from the one of the primary data.
+     * @param directory the folder of the replica, where its range is stored.
+     */
+    public ReplicaStorage(StorageEngine storage, Path directory){
         this.storage = storage;
+        this.rangeFile = directory.resolve(Constants.REPLICA_RANGE_FILENAME);
+        this.inUse = false;
+        AtomicFile.recover(this.rangeFile);
+        loadRange();
+    }
+
+    /**
+     * restores the range the replica covered before a restart.
+     */
+    private void loadRange() {
+        if (!Files.exists(this.rangeFile))
+            return;
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(this.rangeFile.toFile()))) {
+            String[] range = (String[]) ois.readObject();
+            this.startHash = range[0];
+            this.endHash = range[1];
+            this.inUse = true;
+            logger.info("Restored the replica of the range " + this.startHash + " - " + this.endHash);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warning("Could not read the range of the replica in " + this.rangeFile);
+        }
+    }
+
+    private void storeRange() {
+        try {
+            if (this.inUse)
+                AtomicFile.write(this.rangeFile, new String[]{this.startHash, this.endHash});
+            else
+                Files.deleteIfExists(this.rangeFile);
+        } catch (IOException e) {
+            logger.severe("Could not write the range of the replica to " + this.rangeFile);
+        }
+    }
+
+    /**
+     * replaces the content of the replica with the full data of the primary.
+     * Keys the primary no longer has are deleted, only the keys whose value or expiry differs are written,
+     * so a repeated full copy costs reads instead of rewriting the whole replica.
+     * The replica is scanned one pair at a time and the stored bytes are compared with the sent ones,
+     * compressed values with compressed values, so neither side is inflated nor the replica collected on the heap.
+     * @param data the pairs of the primary.
+     * @param compressed the pairs of the primary whose values are compressed, may be null.
+     * @param expiries the expiry times of the pairs that have a time to live, may be null.
+     * @param startHash the start of the replicated range.
+     * @param endHash the end of the replicated range.
+     */
+    public synchronized void replaceAll(HashMap<String, String> data, HashMap<String, byte[]> compressed, HashMap<String, Long> expiries,
+                                        String startHash, String endHash) {
+        HashSet<String> stale = new HashSet<>();
+        HashSet<String> unchanged = new HashSet<>();
+        // only the keys are collected, the replica is changed after the scan
+        this.storage.rangeScanStored("ALL", "", (key, storedValue, storedCompressed, expiresAt) -> {
+            byte[] sentCompressed = compressed == null ? null : compressed.get(key);
+            String sent = data.get(key);
+            if (sentCompressed == null && sent == null)
+                stale.add(key);
+            else if (expiresAt == expiry(expiries, key) && sameValue(sent, sentCompressed, storedValue, storedCompressed))
+                unchanged.add(key);
+        });
+        for (String key : stale)
+            this.storage.delete(key);
+        int written = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            if (unchanged.contains(entry.getKey()))
+                continue;
+            this.storage.put(entry.getKey(), entry.getValue(), null, expiry(expiries, entry.getKey()));
+            written++;
+        }
+        if (compressed != null) {
+            for (Map.Entry<String, byte[]> entry : compressed.entrySet()) {
+                if (unchanged.contains(entry.getKey()))
+                    continue;
+                this.storage.putCompressed(entry.getKey(), entry.getValue(), null, expiry(expiries, entry.getKey()));
+                written++;
+            }
+        }
+        logger.info("Replaced the replica: " + written + " keys written, " + stale.size() + " deleted");
+        setRange(startHash, endHash);
+    }
+
+    /**
+     * applies a put or delete the primary replicated.
+     * @param value the new value, null if the key was deleted.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public synchronized void update(String key, String value, long expiresAt, String startHash, String endHash) {
+        if (value == null)
+            this.storage.delete(key);
+        else
+            this.storage.put(key, value, null, expiresAt);
+        setRange(startHash, endHash);
+    }
+
+    /**
+     * compares a sent value with a stored one in the form both are in, a value stored in the other form counts as changed.
+     * @param sent the sent value, null if it was sent compressed.
+     * @param sentCompressed the sent compressed value, null if it was sent as is.
+     */
+    private static boolean sameValue(String sent, byte[] sentCompressed, byte[] storedValue, boolean storedCompressed) {
+        if (sentCompressed != null)
+            return storedCompressed && Arrays.equals(sentCompressed, storedValue);
+        return !storedCompressed && Arrays.equals(sent.getBytes(StandardCharsets.UTF_8), storedValue);
+    }
+
+    private static long expiry(HashMap<String, Long> expiries, String key) {
+        Long expiresAt = expiries == null ? null : expiries.get(key);
+        return expiresAt == null ? 0 : expiresAt;
+    }
+
+    private void setRange(String startHash, String endHash) {
+        boolean changed = !this.inUse || !startHash.equals(this.startHash) || !endHash.equals(this.endHash);
         this.startHash = startHash;
         this.endHash = endHash;
         this.inUse = true;
+        if (changed)
+            storeRange();
     }
-    public ReplicaStorage(){
-        this.storage = new HashMap<>();
+
+    /**
+     * drops the replica, e.g. when there are too few servers for replication.
+     */
+    public synchronized void clear() {
+        if (!this.inUse)
+            return;
+        this.storage.deleteRange("ALL", "");
         this.inUse = false;
+        storeRange();
     }
-    public HashMap<String, String> getStorage() {
-        return storage;
+
+    /**
+     * closes the storage engine of the replica.
+     */
+    public synchronized void close() {
+        this.storage.close();
     }
-    public void setStorage(HashMap<String, String> storage) {
-        this.storage = storage;
+
+    /**
+     * @param key the key that identifies the value.
+     * @return the replicated value, null if not available.
+     */
+    public String get(String key) {
+        return storage.get(key);
     }
     public String getStartHash() {
         return startHash;
     }
-    public void setStartHash(String startHash) {
-        this.startHash = startHash;
-    }
     public String getEndHash() {
         return endHash;
     }
-    public void setEndHash(String endHash) {
-        this.endHash = endHash;
-    }
     public boolean isInUse() {
         return inUse;
     }
-    public void setInUse(boolean inUse) {
-        this.inUse = inUse;
-    }
-    
+
 }
@@ -0,0 +1,59 @@
+package de.tum.i13.server.kvcache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a KVCache, used to size the cache and the heap.
+ */
+public class CacheStats {
+    // bytes of the cached values
+    private final AtomicLong weight = new AtomicLong();
+    // keys displaced because the cache held its number of keys
+    private final AtomicLong evictionsByCount = new AtomicLong();
+    // keys displaced because the values exceeded the memory of the cache
+    private final AtomicLong evictionsBySize = new AtomicLong();
+    // values not cached because they alone exceed the memory of the cache
+    private final AtomicLong rejections = new AtomicLong();
+
+    void addWeight(long bytes) {
+        this.weight.addAndGet(bytes);
+    }
+
+    void recordEvictionByCount() {
+        this.evictionsByCount.incrementAndGet();
+    }
+
+    void recordEvictionBySize() {
+        this.evictionsBySize.incrementAndGet();
+    }
+
+    void recordRejection() {
+        this.rejections.incrementAndGet();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long getEvictionsByCount() {
+        return evictionsByCount.get();
+    }
+
+    public long getEvictionsBySize() {
+        return evictionsBySize.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "weight=" + weight +
+                ", evictionsByCount=" + evictionsByCount +
+                ", evictionsBySize=" + evictionsBySize +
+                ", rejections=" + rejections +
+                '}';
+    }
+}
@@ -1,5 +1,9 @@
 package de.tum.i13.server.kvcache;
 
+/**
+ * Chooses the keys a shard of the KVCache displaces. A strategy is not thread safe,
+ * the shard holds its lock around every call.
+ */
 public abstract class CacheStrategy {
     int capacity;
 
@@ -8,4 +12,10 @@ public abstract class CacheStrategy {
     abstract boolean deleteFromCache(String key);
 
     abstract void rearrangeCache(String key);
+
+    /**
+     * removes the key the strategy would displace next, used when the cache has to shrink without an insert.
+     * @return the removed key, null if no key is left.
+     */
+    abstract String evict();
 }
@@ -1,12 +1,17 @@
 package de.tum.i13.server.kvcache;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 
+/**
+ * First in first out eviction. The keys are kept in insertion order in a linked hash set,
+ * so inserting, deleting and evicting a key are O(1).
+ */
 public class FIFO extends CacheStrategy{
-    private ConcurrentLinkedDeque<String> keys;
+    private LinkedHashSet<String> keys;
     
     public FIFO (int capacity){
         this.capacity=capacity;
-        keys = new ConcurrentLinkedDeque<String>();
+        keys = new LinkedHashSet<String>();
     }
 
     /**
@@ -21,7 +26,7 @@ public class FIFO extends CacheStrategy{
             return null;
         } else {
             keys.add(key);
-            return keys.poll();
+            return evict();
         }
     }
 
@@ -37,5 +42,19 @@ public class FIFO extends CacheStrategy{
     @Override
     void rearrangeCache(String key) {        
     }
+
+    /**
+     * removes the oldest key of the queue.
+     * @return the removed key, null if the queue is empty.
+     */
+    @Override
+    String evict() {
+        Iterator<String> oldest = keys.iterator();
+        if(!oldest.hasNext())
+            return null;
+        String key = oldest.next();
+        oldest.remove();
+        return key;
+    }
     
 }
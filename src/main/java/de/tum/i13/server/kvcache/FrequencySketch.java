@@ -0,0 +1,94 @@
+package de.tum.i13.server.kvcache;
+
+/**
+ * Count-min sketch of how often keys were accessed, the admission filter of TinyLFU.
+ * Every key is counted in four 4 bit counters picked by four hashes and its frequency is the smallest of them,
+ * so a collision can only make a key look more frequent, never less.
+ * After a sample of accesses all counters are halved, so the sketch follows changes of the hot keys.
+ * The counters are packed sixteen per long, which takes 8 bytes per cached key.
+ */
+public class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param capacity the number of keys of the cache.
+     * @param sampleFactor the accesses per cached key after which the counters are halved.
+     */
+    public FrequencySketch(int capacity, int sampleFactor) {
+        int length = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+        this.table = new long[length];
+        this.counterMask = length * 16 - 1;
+        this.sampleSize = Math.max(1, sampleFactor * capacity);
+        this.additions = 0;
+    }
+
+    /**
+     * @return the estimated number of accesses of the key in the current sample, at most 15.
+     */
+    public int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int step = rehash(hash);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++)
+            frequency = Math.min(frequency, count(hash + i * step));
+        return frequency;
+    }
+
+    /**
+     * counts an access of the key.
+     */
+    public void increment(String key) {
+        int hash = spread(key.hashCode());
+        int step = rehash(hash);
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++)
+            added |= incrementAt(hash + i * step);
+        if (added && ++this.additions >= this.sampleSize)
+            reset();
+    }
+
+    private int count(int index) {
+        int counter = index & this.counterMask;
+        return (int) ((this.table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xf);
+    }
+
+    private boolean incrementAt(int index) {
+        int counter = index & this.counterMask;
+        int shift = (counter & 15) << 2;
+        long word = this.table[counter >>> 4];
+        if (((word >>> shift) & 0xf) == MAX_COUNT)
+            return false;
+        this.table[counter >>> 4] = word + (1L << shift);
+        return true;
+    }
+
+    /**
+     * halves every counter, so old accesses weigh less than recent ones.
+     */
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++)
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        this.additions /= 2;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the distance between the counters of a key, odd so the four counters differ.
+     */
+    private static int rehash(int hash) {
+        hash *= 0x31848bab;
+        hash ^= hash >>> 14;
+        return hash | 1;
+    }
+}
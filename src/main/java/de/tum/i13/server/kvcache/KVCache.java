@@ -1,50 +1,117 @@
 package de.tum.i13.server.kvcache;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+import de.tum.i13.server.memory.HeapValueStore;
+import de.tum.i13.server.memory.ValueHandle;
+import de.tum.i13.server.memory.ValueStore;
 import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Metadata;
 
+/**
+ * Cache of the values of the storage, split into shards by the hash of the key.
+ * Every shard has its own map and displacement strategy behind its own lock, so a get or put is atomic
+ * and threads that access keys of different shards do not wait for each other.
+ * The displacement strategy applies per shard, a small cache has a single shard and so an exact strategy.
+ */
 public class KVCache {
     private int maxSize;
-    private ConcurrentHashMap<String, String> cache;
+    // bytes the cached values may take, 0 if only the number of keys is bounded
+    private long maxWeight;
+    private CacheStats stats;
     private String strategy;
-    private CacheStrategy cacheStrategy;
+    private ValueStore valueStore;
+    private Shard[] shards;
     public KVCache(int maxSize, String strategy) {
+        this(maxSize, strategy, new HeapValueStore());
+    }
+
+    /**
+     * @param maxSize the number of keys the cache holds.
+     * @param strategy the displacement strategy.
+     * @param valueStore the memory the cached values are kept in.
+     */
+    public KVCache(int maxSize, String strategy, ValueStore valueStore) {
+        this(maxSize, 0, strategy, valueStore);
+    }
+
+    /**
+     * @param maxSize the number of keys the cache holds, 0 to derive it from maxWeight.
+     * @param maxWeight the bytes the cached values may take, 0 to bound the cache by maxSize only.
+     * @param strategy the displacement strategy, also chooses the keys displaced for size.
+     * @param valueStore the memory the cached values are kept in.
+     */
+    public KVCache(int maxSize, long maxWeight, String strategy, ValueStore valueStore) {
+        if(maxSize<=0 && maxWeight>0)
+            // the strategies are sized for a number of keys, e.g. the frequency sketch of TinyLFU
+            maxSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWeight / Constants.CACHE_MIN_VALUE_SIZE));
         this.maxSize=maxSize;
+        this.maxWeight=maxWeight;
         this.strategy=strategy;
-        this.cache = new ConcurrentHashMap<>();
+        this.valueStore = valueStore;
+        this.stats = new CacheStats();
+        if(maxSize<=0 || maxWeight<0)
+            throw new IllegalArgumentException();
+        int numberOfShards = numberOfShards(maxSize, maxWeight);
+        this.shards = new Shard[numberOfShards];
+        for(int i = 0; i < numberOfShards; i++){
+            // the remainder goes to the first shards
+            int shardSize = maxSize / numberOfShards + (i < maxSize % numberOfShards ? 1 : 0);
+            long shardWeight = maxWeight / numberOfShards + (i < maxWeight % numberOfShards ? 1 : 0);
+            this.shards[i] = new Shard(createStrategy(strategy, shardSize), shardWeight);
+        }
+    }
+
+    /**
+     * @return a power of two up to CACHE_SHARDS, so that every shard holds enough keys and bytes
+     * for its strategy to choose sensible victims.
+     */
+    private static int numberOfShards(int maxSize, long maxWeight) {
+        long shards = Math.min(Constants.CACHE_SHARDS, maxSize / Constants.CACHE_MIN_SHARD_SIZE);
+        if(maxWeight>0)
+            shards = Math.min(shards, maxWeight / Constants.CACHE_MIN_SHARD_WEIGHT);
+        return Integer.highestOneBit((int) Math.max(1, shards));
+    }
+
+    private static CacheStrategy createStrategy(String strategy, int capacity) {
         switch(strategy){
-            case Constants.FIFO: cacheStrategy = new FIFO(maxSize); break;
-            case Constants.LRU: cacheStrategy = new LRU(maxSize); break;
-            case Constants.LFU: cacheStrategy = new LFU(maxSize); break;
+            case Constants.FIFO: return new FIFO(capacity);
+            case Constants.LRU: return new LRU(capacity);
+            case Constants.LFU: return new LFU(capacity, Constants.LFU_AGING_PERIOD);
+            case Constants.TINYLFU: return new TinyLFU(capacity);
             default: System.out.println("Incorrect cache strategy!"); 
             throw new IllegalArgumentException();
         }
-        if(maxSize<=0)
-            throw new IllegalArgumentException();
+    }
+
+    private Shard shardFor(String key) {
+        if (this.shards.length == 1)
+            return this.shards[0];
+        // the top bits of the mixed hash, the HashMap of the shard indexes by the low bits,
+        // which would otherwise be the same for all keys of a shard
+        int hash = key.hashCode() * 0x9e3779b9;
+        return this.shards[hash >>> (32 - Integer.numberOfTrailingZeros(this.shards.length))];
     }
 
     /**
      * Gets the value for a given key from the cache.
      * @param key the key that identifies the value.
-     * @return the value which is indexed by the given key and rearranges the cache, null otherwise.
+     * @return the value which is indexed by the given key and rearranges the cache,
+     * null if it is not cached.
      */
     public String get(String key) {
         if(key==null)
             throw new NullPointerException();
-        String value = null;
-        if (cache.containsKey(key)){
-            value = cache.get(key);
-            cacheStrategy.rearrangeCache(key);
-        }
-        return value;
+        return shardFor(key).get(key);
     }
 
     /**
      * Inserts a key-value pair into the cache.
      * Checks if the cache doesn't contain the key and it's full then it applies the eviction strategy
      * Inserts/update the key-value pair otherwise
+     * Afterwards the strategy displaces keys until the values fit into the memory of the cache.
      * @param key   the key that identifies the given value.
      * @param value the value that is indexed by the given key.
      * @return the key of the toBeDeleted pair, null if not needed.
@@ -52,20 +119,9 @@ public class KVCache {
     public String put(String key, String value) {
         if(key==null || value==null)
             throw new NullPointerException();
-        if(!cache.containsKey(key)){
-            if(cache.size() < maxSize){
-                cache.put(key, value);
-                cacheStrategy.addToCache(key);
-            }
-            else {
-                cache.put(key, value);
-                String keyToDelete = cacheStrategy.addToCache(key);
-                if(keyToDelete!=null)
-                    cache.remove(keyToDelete);
-            }
-        } else {
-            cache.put(key, value);
-        }
+        // copied outside of the lock of the shard
+        ValueHandle handle = valueStore.store(value);
+        shardFor(key).put(key, handle);
         return key;
     }
     /**
@@ -76,13 +132,25 @@ public class KVCache {
     public void delete(String key) {
         if(key==null)
             throw new NullPointerException();
-        if (cache.containsKey(key)){
-            cache.remove(key);
-            cacheStrategy.deleteFromCache(key);
-        }
+        shardFor(key).delete(key);
     }
+
     public boolean isKeyInCache(String key){
-        return this.cache.containsKey(key);
+        return shardFor(key).contains(key);
+    }
+
+    /**
+     * @return the current weight and the evictions of the cache.
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the bytes the value store holds, e.g. whole arenas of the slab allocator, which can exceed the weight of the cache.
+     */
+    public long getReservedBytes() {
+        return valueStore.getReservedBytes();
     }
 
 
@@ -92,4 +160,105 @@ public class KVCache {
 
     }
 
+    /**
+     * Deletes the cached keys whose hash lies in the given range.
+     * @param predHash the start hash of the range or "ALL" for every key.
+     * @param predHashEnd the end hash of the range.
+     */
+    public void deleteRange(String predHash, String predHashEnd){
+        for (Shard shard : this.shards)
+            shard.deleteRange(predHash, predHashEnd);
+    }
+
+    /**
+     * A part of the cache with its own map and strategy, every method holds the lock of the shard.
+     */
+    private class Shard {
+        private final HashMap<String, ValueHandle> entries;
+        private final CacheStrategy cacheStrategy;
+        private final long maxWeight;
+        private long weight;
+
+        Shard(CacheStrategy cacheStrategy, long maxWeight) {
+            this.entries = new HashMap<>();
+            this.cacheStrategy = cacheStrategy;
+            this.maxWeight = maxWeight;
+            this.weight = 0;
+        }
+
+        synchronized String get(String key) {
+            ValueHandle handle = this.entries.get(key);
+            if (handle == null)
+                return null;
+            this.cacheStrategy.rearrangeCache(key);
+            return handle.get();
+        }
+
+        synchronized void put(String key, ValueHandle handle) {
+            if(this.maxWeight>0 && handle.size()>this.maxWeight){
+                // would displace every other key and itself
+                handle.release();
+                delete(key);
+                stats.recordRejection();
+                return;
+            }
+            addWeight(handle.size());
+            ValueHandle previous = this.entries.put(key, handle);
+            if(previous != null){
+                release(previous);
+            } else {
+                String keyToDelete = this.cacheStrategy.addToCache(key);
+                if(keyToDelete!=null){
+                    release(this.entries.remove(keyToDelete));
+                    stats.recordEvictionByCount();
+                }
+            }
+            // displaces keys in the order of the strategy until the cached values fit
+            while(this.maxWeight>0 && this.weight>this.maxWeight){
+                String keyToDelete = this.cacheStrategy.evict();
+                if(keyToDelete==null)
+                    return;
+                release(this.entries.remove(keyToDelete));
+                stats.recordEvictionBySize();
+            }
+        }
+
+        synchronized void delete(String key) {
+            ValueHandle handle = this.entries.remove(key);
+            if (handle != null){
+                release(handle);
+                this.cacheStrategy.deleteFromCache(key);
+            }
+        }
+
+        synchronized boolean contains(String key) {
+            return this.entries.containsKey(key);
+        }
+
+        synchronized void deleteRange(String predHash, String predHashEnd) {
+            List<String> keys = new ArrayList<>();
+            for (String key : this.entries.keySet()) {
+                if (predHash.equals("ALL") || Metadata.hashInRange(key, predHash, predHashEnd))
+                    keys.add(key);
+            }
+            for (String key : keys)
+                delete(key);
+        }
+
+        private void addWeight(long bytes) {
+            this.weight += bytes;
+            stats.addWeight(bytes);
+        }
+
+        /**
+         * gives the memory of a value that left the cache back to the value store.
+         */
+        private void release(ValueHandle handle) {
+            if (handle != null) {
+                addWeight(-handle.size());
+                handle.release();
+            }
+        }
+    }
+
 }
@@ -1,56 +1,199 @@
 package de.tum.i13.server.kvcache;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+
+/**
+ * Least frequently used eviction in O(1): the keys are kept in frequency buckets, a list of buckets
+ * ordered by ascending frequency where every bucket holds the keys used that often in order of their last use.
+ * A hit moves the key into the bucket of the next frequency, an insert adds it to the bucket of frequency 1
+ * and an eviction takes the least recently used key of the first bucket, so no operation depends on the capacity.
+ * With aging, the frequencies are halved after a number of hits, so keys that were hot long ago do not stay forever.
+ */
 public class LFU extends CacheStrategy {
+    private HashMap<String, Node> nodes;
+    // sentinel of the bucket list, buckets.next has the lowest frequency
+    private Bucket buckets;
+    private long agingHits;
+    private long hits;
 
-    private ConcurrentHashMap<String, Integer> frequencies;
     public LFU (int capacity){
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity the number of keys of the cache.
+     * @param agingPeriod the hits per cached key after which all frequencies are halved, 0 disables aging.
+     */
+    public LFU (int capacity, int agingPeriod){
         this.capacity=capacity;
-        frequencies = new ConcurrentHashMap<String, Integer>();
+        this.nodes = new HashMap<>();
+        this.buckets = new Bucket(0);
+        this.buckets.prev = this.buckets;
+        this.buckets.next = this.buckets;
+        this.agingHits = (long) agingPeriod * capacity;
+        this.hits = 0;
     }
 
     /**
-     * adds the key to the cacheStrategy map.
-     * removes the element with the least frquency of usage.
+     * adds the key with a frequency of 1.
+     * removes the least recently used key of the lowest frequency if the cache is full.
      * @param key the key that identifies the value.
-     * @return the key of the evicted pair if the map is full, null otherwise.
+     * @return the key of the evicted pair if the cache is full, null otherwise.
      */
     @Override
     String addToCache(String key) {
-        if(frequencies.size()<capacity){
-            frequencies.put(key,1);
+        if (this.nodes.containsKey(key)) {
+            rearrangeCache(key);
             return null;
-        } else {
-            // this returns the key associated with the least frequency 
-            String keyToBeRemoved = frequencies.reduceKeys(5, (k1, k2) -> frequencies.get(k1).compareTo(frequencies.get(k2)) < 0 ? k1 : k2);
-            frequencies.remove(keyToBeRemoved);
-            frequencies.put(key,1);
-            return keyToBeRemoved;
         }
-
+        String keyToBeRemoved = null;
+        if (this.nodes.size() >= capacity)
+            keyToBeRemoved = evict();
+        Bucket first = this.buckets.next;
+        if (first.frequency != 1)
+            first = insertBucketAfter(this.buckets, 1);
+        Node node = new Node(key);
+        first.addFirst(node);
+        this.nodes.put(key, node);
+        return keyToBeRemoved;
     }
 
     /**
-     * deletes the key from the cacheStrategy queue.
+     * deletes the key from its frequency bucket.
      * @param key the key that identifies the value.
-     * @return true if the key is present in the map, false otherwise.
+     * @return true if the key is present in the cache, false otherwise.
      */
     @Override
     boolean deleteFromCache(String key) {
-        // map.remove returns the value when removing the key, null if key not found
-        return frequencies.remove(key)!=null;
+        Node node = this.nodes.remove(key);
+        if (node == null)
+            return false;
+        remove(node);
+        return true;
     }
 
     /**
-     * rearrange the cache map to update the frquency of somne used key.
-     * the frequency of the given key is incremented by 1 if it's found in the frequency Map
+     * moves the key that was just used into the bucket of the next frequency.
      * @param key the key that identifies the value.
      */
     @Override
     void rearrangeCache(String key) {
-        Integer oldFrequency = frequencies.remove(key);
-        if(oldFrequency!= null)
-            frequencies.put(key, oldFrequency+1);
+        Node node = this.nodes.get(key);
+        if (node == null)
+            return;
+        Bucket bucket = node.bucket;
+        Bucket next = bucket.next;
+        if (next.frequency != bucket.frequency + 1)
+            next = insertBucketAfter(bucket, bucket.frequency + 1);
+        remove(node);
+        next.addFirst(node);
+        if (this.agingHits > 0 && ++this.hits >= this.agingHits)
+            age();
+    }
+
+    /**
+     * removes the least recently used key of the lowest frequency.
+     * @return the removed key, null if the cache is empty.
+     */
+    @Override
+    String evict() {
+        if (this.buckets.next == this.buckets)
+            return null;
+        Node victim = this.buckets.next.head.prev;
+        remove(victim);
+        this.nodes.remove(victim.key);
+        return victim.key;
+    }
+
+    /**
+     * halves the frequencies of all keys. Halving keeps the order of the buckets,
+     * so buckets that end up with the same frequency are merged with their predecessor.
+     * Costs O(n) once per aging period, that is O(1) per hit.
+     */
+    private void age() {
+        this.hits = 0;
+        Bucket previous = this.buckets;
+        Bucket bucket = this.buckets.next;
+        while (bucket != this.buckets) {
+            Bucket next = bucket.next;
+            bucket.frequency = Math.max(1, bucket.frequency / 2);
+            if (previous != this.buckets && previous.frequency == bucket.frequency) {
+                // the keys of the higher frequency count as the more recently used ones
+                while (bucket.head.prev != bucket.head) {
+                    Node node = bucket.head.prev;
+                    bucket.unlink(node);
+                    previous.addFirst(node);
+                }
+                unlinkBucket(bucket);
+            } else {
+                previous = bucket;
+            }
+            bucket = next;
+        }
+    }
+
+    private void remove(Node node) {
+        Bucket bucket = node.bucket;
+        bucket.unlink(node);
+        if (bucket.head.next == bucket.head)
+            unlinkBucket(bucket);
+    }
+
+    private static Bucket insertBucketAfter(Bucket previous, int frequency) {
+        Bucket bucket = new Bucket(frequency);
+        bucket.prev = previous;
+        bucket.next = previous.next;
+        previous.next.prev = bucket;
+        previous.next = bucket;
+        return bucket;
+    }
+
+    private static void unlinkBucket(Bucket bucket) {
+        bucket.prev.next = bucket.next;
+        bucket.next.prev = bucket.prev;
+    }
+
+    /**
+     * the keys of one frequency, a ring with a sentinel node: head.next is the most recently used key, head.prev the least.
+     */
+    private static class Bucket {
+        private int frequency;
+        private final Node head;
+        private Bucket prev;
+        private Bucket next;
+
+        Bucket(int frequency) {
+            this.frequency = frequency;
+            this.head = new Node(null);
+            this.head.prev = this.head;
+            this.head.next = this.head;
+        }
+
+        void addFirst(Node node) {
+            node.bucket = this;
+            node.prev = this.head;
+            node.next = this.head.next;
+            this.head.next.prev = node;
+            this.head.next = node;
+        }
+
+        void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.bucket = null;
+        }
+    }
+
+    private static class Node {
+        private final String key;
+        private Node prev;
+        private Node next;
+        private Bucket bucket;
+
+        Node(String key) {
+            this.key = key;
+        }
     }
-    
 }
@@ -1,51 +1,115 @@
 package de.tum.i13.server.kvcache;
 
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.HashMap;
 
+/**
+ * Least recently used eviction: a hash map from each key to its node in a doubly linked list,
+ * ordered from the most to the least recently used key.
+ * A hit unlinks the node and links it at the front, an insert links a new node at the front
+ * and an eviction unlinks the last node, so every operation is O(1) regardless of the capacity.
+ * The list has a sentinel node, so no case is needed for an empty list or for the first and last node.
+ */
 public class LRU extends CacheStrategy {
-    private ConcurrentLinkedDeque<String> keys;
-    
+    private HashMap<String, Node> nodes;
+    // head.next is the most recently used key, head.prev the least recently used one
+    private Node head;
+
     public LRU (int capacity){
         this.capacity=capacity;
-        keys = new ConcurrentLinkedDeque<String>();
+        this.nodes = new HashMap<>();
+        this.head = new Node(null);
+        this.head.prev = this.head;
+        this.head.next = this.head;
     }
 
     /**
-     * adds the key to the cacheStrategy queue.
-     * removes the last element of the queue if it is full.
+     * adds the key to the front of the list.
+     * removes the last key of the list if it is full.
      * @param key the key that identifies the value.
-     * @return the key of the evicted pair if the queue is full, null otherwise.
+     * @return the key of the evicted pair if the list is full, null otherwise.
      */
     @Override
     String addToCache(String key) {
-        if(keys.size()<capacity){
-            keys.addFirst(key);
+        Node node = this.nodes.get(key);
+        if (node != null) {
+            moveToFront(node);
             return null;
-        } else {
-            keys.addFirst(key);
-            return keys.removeLast();
         }
+        node = new Node(key);
+        this.nodes.put(key, node);
+        linkFirst(node);
+        if (this.nodes.size() <= capacity)
+            return null;
+        return evict();
     }
 
     /**
-     * deletes the key from the cacheStrategy queue.
+     * deletes the key from the list.
      * @param key the key that identifies the value.
-     * @return true if the key is present in the queue, false otherwise.
+     * @return true if the key is present in the list, false otherwise.
      */
     @Override
     boolean deleteFromCache(String key) {
-        return keys.remove(key);
+        Node node = this.nodes.remove(key);
+        if (node == null)
+            return false;
+        unlink(node);
+        return true;
     }
 
     /**
-     * rearrange the queue incase some value was recently used.
-     * the value is added to the the front of the queue
+     * moves the key that was just used to the front of the list.
      * @param key the key that identifies the value.
      */
     @Override
     void rearrangeCache(String key){
-        keys.remove(key);
-        keys.addFirst(key);
+        Node node = this.nodes.get(key);
+        if (node != null)
+            moveToFront(node);
+    }
+
+    /**
+     * removes the least recently used key.
+     * @return the removed key, null if the list is empty.
+     */
+    @Override
+    String evict() {
+        Node eldest = this.head.prev;
+        if (eldest == this.head)
+            return null;
+        unlink(eldest);
+        this.nodes.remove(eldest.key);
+        return eldest.key;
+    }
+
+    private void moveToFront(Node node) {
+        if (this.head.next == node)
+            return;
+        unlink(node);
+        linkFirst(node);
+    }
+
+    private void linkFirst(Node node) {
+        node.prev = this.head;
+        node.next = this.head.next;
+        this.head.next.prev = node;
+        this.head.next = node;
+    }
+
+    private static void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static class Node {
+        private final String key;
+        private Node prev;
+        private Node next;
+
+        Node(String key) {
+            this.key = key;
+        }
     }
-    
 }
@@ -0,0 +1,181 @@
+package de.tum.i13.server.kvcache;
+
+import java.util.HashMap;
+
+import de.tum.i13.shared.Constants;
+
+/**
+ * Window TinyLFU eviction: new keys enter a small LRU window, keys that leave the window
+ * only get into the main region if the frequency sketch rates them higher than the key the main region would evict.
+ * A scan therefore only passes through the window and does not displace the hot keys.
+ * The main region is a segmented LRU: keys are admitted on probation and protected on their next hit,
+ * a protected key that falls out of its segment goes back to probation.
+ * Every operation costs O(1).
+ */
+public class TinyLFU extends CacheStrategy {
+    private HashMap<String, Node> nodes;
+    private FrequencySketch sketch;
+    private Region window;
+    private Region probation;
+    private Region protectedRegion;
+
+    public TinyLFU (int capacity){
+        this.capacity=capacity;
+        this.nodes = new HashMap<>();
+        this.sketch = new FrequencySketch(capacity, Constants.TINYLFU_SAMPLE_FACTOR);
+        int windowCapacity = Math.max(1, (int) (capacity * Constants.TINYLFU_WINDOW_SHARE));
+        int mainCapacity = capacity - windowCapacity;
+        this.window = new Region(windowCapacity);
+        this.protectedRegion = new Region((int) (mainCapacity * Constants.TINYLFU_PROTECTED_SHARE));
+        this.probation = new Region(mainCapacity - this.protectedRegion.capacity);
+    }
+
+    /**
+     * adds the key to the window. If the window is full its least recently used key is a candidate for the main region,
+     * which is admitted if it is used more often than the victim of the main region.
+     * @param key the key that identifies the value.
+     * @return the key of the evicted pair if the cache is full, null otherwise.
+     */
+    @Override
+    String addToCache(String key) {
+        this.sketch.increment(key);
+        if (this.nodes.containsKey(key)) {
+            onHit(this.nodes.get(key));
+            return null;
+        }
+        Node node = new Node(key);
+        this.nodes.put(key, node);
+        this.window.addFirst(node);
+        if (this.window.size <= this.window.capacity)
+            return null;
+
+        Node candidate = this.window.removeLast();
+        if (this.nodes.size() <= capacity) {
+            this.probation.addFirst(candidate);
+            return null;
+        }
+        Node victim = this.probation.size > 0 ? this.probation.last() : this.protectedRegion.last();
+        if (victim != null && this.sketch.frequency(candidate.key) > this.sketch.frequency(victim.key)) {
+            victim.region.unlink(victim);
+            this.probation.addFirst(candidate);
+            this.nodes.remove(victim.key);
+            return victim.key;
+        }
+        this.nodes.remove(candidate.key);
+        return candidate.key;
+    }
+
+    /**
+     * deletes the key from its region.
+     * @param key the key that identifies the value.
+     * @return true if the key is present in the cache, false otherwise.
+     */
+    @Override
+    boolean deleteFromCache(String key) {
+        Node node = this.nodes.remove(key);
+        if (node == null)
+            return false;
+        node.region.unlink(node);
+        return true;
+    }
+
+    /**
+     * counts the hit and moves the key to the front of its region, a key on probation is protected.
+     * @param key the key that identifies the value.
+     */
+    @Override
+    void rearrangeCache(String key) {
+        Node node = this.nodes.get(key);
+        if (node == null)
+            return;
+        this.sketch.increment(key);
+        onHit(node);
+    }
+
+    /**
+     * removes the key the main region would evict, the window is only emptied once the main region is.
+     * @return the removed key, null if the cache is empty.
+     */
+    @Override
+    String evict() {
+        Node victim = this.probation.last();
+        if (victim == null)
+            victim = this.protectedRegion.last();
+        if (victim == null)
+            victim = this.window.last();
+        if (victim == null)
+            return null;
+        victim.region.unlink(victim);
+        this.nodes.remove(victim.key);
+        return victim.key;
+    }
+
+    private void onHit(Node node) {
+        Region region = node.region;
+        region.unlink(node);
+        if (region != this.probation) {
+            region.addFirst(node);
+            return;
+        }
+        this.protectedRegion.addFirst(node);
+        if (this.protectedRegion.size > this.protectedRegion.capacity)
+            this.probation.addFirst(this.protectedRegion.removeLast());
+    }
+
+    /**
+     * an LRU list of keys, a ring with a sentinel node: head.next is the most recently used key, head.prev the least.
+     */
+    private static class Region {
+        private final int capacity;
+        private final Node head;
+        private int size;
+
+        Region(int capacity) {
+            this.capacity = capacity;
+            this.head = new Node(null);
+            this.head.prev = this.head;
+            this.head.next = this.head;
+            this.size = 0;
+        }
+
+        void addFirst(Node node) {
+            node.region = this;
+            node.prev = this.head;
+            node.next = this.head.next;
+            this.head.next.prev = node;
+            this.head.next = node;
+            this.size++;
+        }
+
+        Node last() {
+            return this.size == 0 ? null : this.head.prev;
+        }
+
+        Node removeLast() {
+            Node node = last();
+            if (node != null)
+                unlink(node);
+            return node;
+        }
+
+        void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.region = null;
+            this.size--;
+        }
+    }
+
+    private static class Node {
+        private final String key;
+        private Node prev;
+        private Node next;
+        private Region region;
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+}
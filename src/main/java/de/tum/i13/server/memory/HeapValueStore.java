@@ -0,0 +1,52 @@
+package de.tum.i13.server.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the values as plain Strings on the heap.
+ */
+public class HeapValueStore implements ValueStore {
+    private AtomicLong reservedBytes = new AtomicLong();
+
+    @Override
+    public ValueHandle store(String value) {
+        HeapValue handle = new HeapValue(value);
+        this.reservedBytes.addAndGet(handle.size());
+        return handle;
+    }
+
+    /**
+     * the heap reserves nothing in advance, so these are the bytes of the values that were not released.
+     */
+    @Override
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    private class HeapValue implements ValueHandle {
+        private final String value;
+
+        HeapValue(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String get() {
+            return value;
+        }
+
+        /**
+         * two bytes per char, the size of the String if it is not compacted.
+         */
+        @Override
+        public int size() {
+            return 2 * value.length();
+        }
+
+        @Override
+        public void release() {
+            // collected by the garbage collector
+            reservedBytes.addAndGet(-size());
+        }
+    }
+}
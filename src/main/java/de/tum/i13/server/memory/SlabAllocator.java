@@ -0,0 +1,190 @@
+package de.tum.i13.server.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import de.tum.i13.shared.Constants;
+
+/**
+ * Off-heap value store: values are copied into slots of direct ByteBuffer arenas, so the heap only holds
+ * small handles and the garbage collector never has to copy or scan the value bytes.
+ * Slots come in power of two size classes, each class carves its arenas into equally sized slots
+ * and reuses released slots, so the arenas do not fragment.
+ * Values larger than the largest size class get a direct buffer of their own.
+ */
+public class SlabAllocator implements ValueStore {
+    public static Logger logger = Logger.getLogger(SlabAllocator.class.getName());
+
+    private static final int MIN_SLOT_SHIFT = 6; // 64 bytes
+    private static final int MAX_SLOT_SHIFT = 17; // 128 KB, above the largest value a client may put
+
+    private SizeClass[] sizeClasses;
+    private int arenaSize;
+    private AtomicLong usedBytes;
+    private AtomicLong reservedBytes;
+
+    public SlabAllocator() {
+        this(Constants.SLAB_ARENA_SIZE);
+    }
+
+    /**
+     * @param arenaSize the size of the direct buffers the slots are carved from.
+     */
+    public SlabAllocator(int arenaSize) {
+        if (arenaSize < (1 << MAX_SLOT_SHIFT))
+            throw new IllegalArgumentException("An arena has to hold at least one slot of the largest size class");
+        this.arenaSize = arenaSize;
+        this.usedBytes = new AtomicLong();
+        this.reservedBytes = new AtomicLong();
+        this.sizeClasses = new SizeClass[MAX_SLOT_SHIFT - MIN_SLOT_SHIFT + 1];
+        for (int i = 0; i < this.sizeClasses.length; i++)
+            this.sizeClasses[i] = new SizeClass(1 << (MIN_SLOT_SHIFT + i));
+    }
+
+    @Override
+    public ValueHandle store(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        SizeClass sizeClass = sizeClassFor(bytes.length);
+        Slot slot;
+        if (sizeClass == null) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            this.reservedBytes.addAndGet(bytes.length);
+            slot = new Slot(null, buffer, 0, -1, bytes.length);
+        } else {
+            slot = sizeClass.allocate(bytes.length);
+        }
+        ByteBuffer view = slot.arena.duplicate();
+        view.position(slot.offset);
+        view.put(bytes);
+        this.usedBytes.addAndGet(bytes.length);
+        return slot;
+    }
+
+    private SizeClass sizeClassFor(int length) {
+        for (SizeClass sizeClass : this.sizeClasses) {
+            if (length <= sizeClass.slotSize)
+                return sizeClass;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of value bytes currently stored.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return the number of off-heap bytes reserved by the arenas and oversized values.
+     */
+    @Override
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * The slots of one size. Free slots are kept on a stack of slot numbers,
+     * where a slot number is the arena index times the slots per arena plus the slot index in the arena.
+     */
+    private class SizeClass {
+        private final int slotSize;
+        private final int slotsPerArena;
+        private final List<ByteBuffer> arenas;
+        private int[] free;
+        private int freeCount;
+
+        SizeClass(int slotSize) {
+            this.slotSize = slotSize;
+            this.slotsPerArena = arenaSize / slotSize;
+            this.arenas = new ArrayList<>();
+            this.free = new int[0];
+            this.freeCount = 0;
+        }
+
+        synchronized Slot allocate(int length) {
+            if (this.freeCount == 0)
+                grow();
+            int slotNumber = this.free[--this.freeCount];
+            ByteBuffer arena = this.arenas.get(slotNumber / this.slotsPerArena);
+            return new Slot(this, arena, (slotNumber % this.slotsPerArena) * this.slotSize, slotNumber, length);
+        }
+
+        synchronized void free(int slotNumber) {
+            this.free[this.freeCount++] = slotNumber;
+        }
+
+        private void grow() {
+            int arenaIndex = this.arenas.size();
+            this.arenas.add(ByteBuffer.allocateDirect(this.slotsPerArena * this.slotSize));
+            reservedBytes.addAndGet((long) this.slotsPerArena * this.slotSize);
+            int[] grown = new int[this.free.length + this.slotsPerArena];
+            System.arraycopy(this.free, 0, grown, 0, this.freeCount);
+            // hand out the slots of the new arena from its start
+            for (int i = this.slotsPerArena - 1; i >= 0; i--)
+                grown[this.freeCount++] = arenaIndex * this.slotsPerArena + i;
+            this.free = grown;
+            logger.fine("Added arena " + arenaIndex + " for slots of " + this.slotSize + " bytes, "
+                    + reservedBytes.get() + " bytes reserved off-heap");
+        }
+    }
+
+    /**
+     * Handle of a value in a slot. A released slot may be handed out again right away,
+     * so a read checks after copying the bytes that the slot was not released in the meantime.
+     */
+    private class Slot implements ValueHandle {
+        private final SizeClass sizeClass;
+        private final ByteBuffer arena;
+        private final int offset;
+        private final int slotNumber;
+        private final int length;
+        private volatile boolean released;
+
+        Slot(SizeClass sizeClass, ByteBuffer arena, int offset, int slotNumber, int length) {
+            this.sizeClass = sizeClass;
+            this.arena = arena;
+            this.offset = offset;
+            this.slotNumber = slotNumber;
+            this.length = length;
+        }
+
+        @Override
+        public String get() {
+            if (this.released)
+                return null;
+            byte[] bytes = new byte[this.length];
+            ByteBuffer view = this.arena.duplicate();
+            view.position(this.offset);
+            view.get(bytes);
+            if (this.released)
+                return null;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * the whole slot, as the rest of it cannot hold another value, or the buffer of an oversized value.
+         */
+        @Override
+        public int size() {
+            return this.sizeClass != null ? this.sizeClass.slotSize : this.arena.capacity();
+        }
+
+        @Override
+        public synchronized void release() {
+            if (this.released)
+                return;
+            // marked before the slot is freed, so readers that copied reused bytes notice it
+            this.released = true;
+            usedBytes.addAndGet(-this.length);
+            if (this.sizeClass != null)
+                this.sizeClass.free(this.slotNumber);
+            else
+                reservedBytes.addAndGet(-this.length);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package de.tum.i13.server.memory;
+
+/**
+ * Reference to a value held by a ValueStore.
+ */
+public interface ValueHandle {
+
+    /**
+     * @return the value, null if the handle was released in the meantime.
+     */
+    public String get();
+
+    /**
+     * @return the bytes the value takes in its store, used to bound the memory of the cache.
+     */
+    public int size();
+
+    /**
+     * gives the memory of the value back to its store. The handle must not be used afterwards.
+     */
+    public void release();
+}
@@ -0,0 +1,19 @@
+package de.tum.i13.server.memory;
+
+/**
+ * Memory that holds the values of the cache.
+ */
+public interface ValueStore {
+
+    /**
+     * copies a value into the store.
+     * @param value the value.
+     * @return the handle to read and release the value.
+     */
+    public ValueHandle store(String value);
+
+    /**
+     * @return the bytes the store holds for values, including memory it reserved but does not use yet.
+     */
+    public long getReservedBytes();
+}
@@ -22,8 +22,7 @@ public class StartSimpleNioServer {
         logger.info("Config: " + cfg.toString());
 
         logger.info("starting server");
-        if(cfg.cacheSize <= 0) 
-        	cfg.cacheSize = 10;
+        applyCacheDefaults(cfg);
         
         Level logLevel;
         try {
@@ -45,4 +44,14 @@ public class StartSimpleNioServer {
         System.out.println("Server started on address:" + cfg.listenaddr+ " and port:" + cfg.port);
         sn.start();
     }
+
+    /**
+     * bounds the cache by 10 keys if neither the number of keys nor the memory of the cache is given.
+     * With only a memory bound the cache derives its number of keys from the memory.
+     * @param cfg the parsed config, changed in place.
+     */
+    public static void applyCacheDefaults(Config cfg) {
+        if(cfg.cacheSize <= 0 && cfg.cacheMemory == 0)
+            cfg.cacheSize = 10;
+    }
 }
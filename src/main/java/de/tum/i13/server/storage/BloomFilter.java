@@ -0,0 +1,88 @@
+package de.tum.i13.server.storage;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Bloom filter over the keys of a storage file: a key that was not added is reported as absent
+ * with a small false positive rate, a key that was added is never reported as absent.
+ * The k positions of a key are derived from two hashes of its bytes (Kirsch-Mitzenmacher),
+ * so adding and testing a key costs one pass over the key.
+ * Keys cannot be removed, the filter is rebuilt from the keys instead.
+ */
+public class BloomFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_BITS = 1024;
+
+    private final long[] bits;
+    private final int numberOfBits;
+    private final int numberOfHashes;
+
+    /**
+     * @param expectedKeys the number of keys the filter is sized for.
+     * @param bitsPerKey the bits spent per key, 10 bits give a false positive rate of about 1%.
+     */
+    public BloomFilter(int expectedKeys, int bitsPerKey) {
+        this.numberOfBits = Math.max(MIN_BITS, expectedKeys * bitsPerKey);
+        this.bits = new long[(this.numberOfBits + 63) / 64];
+        // k = ln(2) * m / n minimises the false positive rate
+        this.numberOfHashes = Math.max(1, (int) Math.round(Math.log(2) * bitsPerKey));
+    }
+
+    /**
+     * @param keys the keys to be added.
+     * @param bitsPerKey the bits spent per key.
+     * @return a filter sized for and containing the given keys.
+     */
+    public static BloomFilter of(Collection<String> keys, int bitsPerKey) {
+        BloomFilter filter = new BloomFilter(keys.size(), bitsPerKey);
+        for (String key : keys)
+            filter.add(key);
+        return filter;
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.numberOfHashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.numberOfBits;
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if the key was certainly not added, true if it may have been.
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.numberOfHashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.numberOfBits;
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a of the UTF-8 bytes of the key, the same on every JVM unlike String.hashCode mixing,
+     * so a persisted filter stays valid.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        // finalizer of MurmurHash3, FNV alone spreads short keys poorly over the high bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
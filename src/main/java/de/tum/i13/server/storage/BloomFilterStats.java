@@ -0,0 +1,62 @@
+package de.tum.i13.server.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the lookups answered by the Bloom filters of a storage engine,
+ * used to check that the filters are sized well for the stored keys.
+ */
+public class BloomFilterStats {
+    // the filter reported the key as absent, the storage file was not read
+    private final AtomicLong negatives = new AtomicLong();
+    // the filter reported the key as present and it was
+    private final AtomicLong truePositives = new AtomicLong();
+    // the filter reported the key as present but it was not, the storage file was read for nothing
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public void recordNegative() {
+        this.negatives.incrementAndGet();
+    }
+
+    /**
+     * records a lookup the filter let through to the storage file.
+     * @param found true if the key was in the file.
+     */
+    public void recordPositive(boolean found) {
+        if (found)
+            this.truePositives.incrementAndGet();
+        else
+            this.falsePositives.incrementAndGet();
+    }
+
+    public long getNegatives() {
+        return negatives.get();
+    }
+
+    public long getTruePositives() {
+        return truePositives.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * @return the share of the lookups of absent keys that the filters did not answer, 0 if there were none.
+     */
+    public double falsePositiveRate() {
+        long falsePositives = this.falsePositives.get();
+        long absent = falsePositives + this.negatives.get();
+        return absent == 0 ? 0.0 : (double) falsePositives / absent;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilterStats{" +
+                "negatives=" + negatives +
+                ", truePositives=" + truePositives +
+                ", falsePositives=" + falsePositives +
+                ", falsePositiveRate=" + falsePositiveRate() +
+                '}';
+    }
+}
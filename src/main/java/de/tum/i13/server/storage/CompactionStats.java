@@ -0,0 +1,66 @@
+package de.tum.i13.server.storage;
+
+/**
+ * Counters of the compactions of a log storage engine, used to tune the compaction under load.
+ */
+public class CompactionStats {
+    private long runs;
+    private long bytesRead;
+    private long bytesWritten;
+    private long bytesReclaimed;
+    private long lastDurationMillis;
+    private long totalDurationMillis;
+
+    /**
+     * records a finished compaction run.
+     * @param read bytes of the merged segments.
+     * @param written bytes of the resulting segment.
+     * @param durationMillis how long the run took.
+     */
+    public synchronized void record(long read, long written, long durationMillis) {
+        this.runs++;
+        this.bytesRead += read;
+        this.bytesWritten += written;
+        this.bytesReclaimed += read - written;
+        this.lastDurationMillis = durationMillis;
+        this.totalDurationMillis += durationMillis;
+    }
+
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized long getBytesReclaimed() {
+        return bytesReclaimed;
+    }
+
+    public synchronized long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    /**
+     * @param userBytes bytes appended to the log by clients.
+     * @return the bytes written to disk per byte written by clients.
+     */
+    public synchronized double writeAmplification(long userBytes) {
+        if (userBytes == 0)
+            return 1.0;
+        return (double) (userBytes + this.bytesWritten) / userBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CompactionStats{" +
+                "runs=" + runs +
+                ", bytesRead=" + bytesRead +
+                ", bytesWritten=" + bytesWritten +
+                ", bytesReclaimed=" + bytesReclaimed +
+                ", lastDurationMillis=" + lastDurationMillis +
+                ", totalDurationMillis=" + totalDurationMillis +
+                '}';
+    }
+}
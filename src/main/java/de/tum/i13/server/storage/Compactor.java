@@ -0,0 +1,35 @@
+package de.tum.i13.server.storage;
+
+import java.io.UncheckedIOException;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+/**
+ * TimerTask that periodically merges the sealed segments of each partition of a log storage engine
+ * once enough of their bytes belong to superseded values or tombstones,
+ * and writes the hint files of sealed segments that do not have one yet.
+ */
+public class Compactor extends TimerTask {
+    public static Logger logger = Logger.getLogger(Compactor.class.getName());
+
+    private LogStorageEngine engine;
+    private double garbageRatio;
+
+    public Compactor(LogStorageEngine engine, double garbageRatio) {
+        this.engine = engine;
+        this.garbageRatio = garbageRatio;
+    }
+
+    @Override
+    public void run() {
+        for (LogPartition partition : this.engine.getPartitions()) {
+            try {
+                if (partition.garbageRatio() >= this.garbageRatio)
+                    partition.compact();
+                partition.writeMissingHints();
+            } catch (UncheckedIOException e) {
+                logger.severe("Compaction of " + partition.getPath() + " failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package de.tum.i13.server.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Value compression of the data log, configured by the -cl (deflate level) and -ct (size threshold) options.
+ * Values of at least the threshold are deflated, unless that does not make them smaller.
+ * A compressed value is stored as its uncompressed length (int) followed by the deflate stream,
+ * so it is inflated into an array of the right size at once.
+ */
+public class Compression {
+    private static final int LENGTH_SIZE = 4;
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private int level;
+    private int threshold;
+    private ThreadLocal<Deflater> deflater;
+
+    /**
+     * @param level the deflate level from 1 (fastest) to 9 (smallest), 0 disables compression.
+     * @param threshold the size in bytes from which values are compressed.
+     * @throws IllegalArgumentException if the level or the threshold is out of range.
+     */
+    public Compression(int level, int threshold) {
+        if (level < 0 || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        if (threshold < 0)
+            throw new IllegalArgumentException("Invalid compression threshold: " + threshold);
+        this.level = level;
+        this.threshold = threshold;
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    /**
+     * @return a configuration that stores every value as it is.
+     */
+    public static Compression none() {
+        return new Compression(0, 0);
+    }
+
+    public boolean isEnabled() {
+        return level > 0;
+    }
+
+    /**
+     * @param value the UTF-8 bytes of a value.
+     * @return the compressed value, null if the value is below the threshold or does not get smaller.
+     */
+    public byte[] compress(byte[] value) {
+        if (!isEnabled() || value.length < threshold || value.length <= LENGTH_SIZE)
+            return null;
+        Deflater deflater = this.deflater.get();
+        deflater.reset();
+        deflater.setInput(value);
+        deflater.finish();
+        // only worth it if the result is smaller than the value
+        byte[] buffer = new byte[value.length];
+        ByteBuffer.wrap(buffer).putInt(value.length);
+        int length = LENGTH_SIZE;
+        while (!deflater.finished() && length < buffer.length)
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        if (!deflater.finished())
+            return null;
+        byte[] compressed = new byte[length];
+        System.arraycopy(buffer, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    /**
+     * @param compressed a value returned by compress.
+     * @return the UTF-8 bytes of the value.
+     * @throws IllegalArgumentException if the bytes are not a compressed value.
+     */
+    public static byte[] decompress(byte[] compressed) {
+        if (compressed.length < LENGTH_SIZE)
+            throw new IllegalArgumentException("Compressed value too short");
+        int length = ByteBuffer.wrap(compressed).getInt();
+        if (length < 0)
+            throw new IllegalArgumentException("Invalid length of a compressed value: " + length);
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed, LENGTH_SIZE, compressed.length - LENGTH_SIZE);
+        byte[] value = new byte[length];
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(value, inflated, length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                inflated += n;
+            }
+            if (inflated != length)
+                throw new IllegalArgumentException("Truncated compressed value");
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted compressed value", e);
+        }
+        return value;
+    }
+
+    /**
+     * @param stored the value bytes as stored in the log.
+     * @param compressed true if the value is stored compressed.
+     * @return the value.
+     */
+    public static String decode(byte[] stored, boolean compressed) {
+        return new String(compressed ? decompress(stored) : stored, StandardCharsets.UTF_8);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return isEnabled() ? "deflate:" + level + ">=" + threshold : "none";
+    }
+}
@@ -0,0 +1,59 @@
+package de.tum.i13.server.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import de.tum.i13.shared.Metadata;
+
+/**
+ * Snapshot of a storage engine that copied its pairs, used by the engines that keep no versions of their values.
+ */
+public class CopySnapshot implements StorageSnapshot {
+    private HashMap<String, String> pairs;
+    private HashMap<String, String> owners;
+    private HashMap<String, Long> expiries;
+
+    /**
+     * @param pairs the copied key-value pairs.
+     * @param owners the owners of the copied keys that have one.
+     * @param expiries the expiries of the copied keys that have one.
+     */
+    public CopySnapshot(HashMap<String, String> pairs, HashMap<String, String> owners, HashMap<String, Long> expiries) {
+        this.pairs = pairs;
+        this.owners = owners;
+        this.expiries = expiries;
+    }
+
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners,
+                                                        HashMap<String, byte[]> compressed, HashMap<String, Long> expiries) {
+        HashMap<String, String> res = new HashMap<>();
+        rangeScan(predHash, predHashEnd, (key, value) -> {
+            res.put(key, value);
+            if (owners != null && this.owners.containsKey(key))
+                owners.put(key, this.owners.get(key));
+            if (expiries != null && this.expiries.containsKey(key))
+                expiries.put(key, this.expiries.get(key));
+        });
+        return res;
+    }
+
+    @Override
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String, String> consumer) {
+        for (Map.Entry<String, String> pair : this.pairs.entrySet()) {
+            if (predHash.equals("ALL") || Metadata.hashInRange(pair.getKey(), predHash, predHashEnd))
+                consumer.accept(pair.getKey(), pair.getValue());
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.pairs.size();
+    }
+
+    @Override
+    public void close() {
+        // the copy is left to the garbage collector
+    }
+}
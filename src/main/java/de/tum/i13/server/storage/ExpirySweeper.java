@@ -0,0 +1,43 @@
+package de.tum.i13.server.storage;
+
+import java.util.List;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+/**
+ * Background task that deletes the keys whose time to live ran out, so they do not pile up in the storage
+ * when they are never read again. Every run advances the timer wheel of the storage engine
+ * and deletes the due keys in batches.
+ */
+public class ExpirySweeper extends TimerTask {
+    public static Logger logger = Logger.getLogger(ExpirySweeper.class.getName());
+
+    private StorageEngine engine;
+    private TimerWheel wheel;
+    private int batchSize;
+
+    /**
+     * @param engine the storage engine whose keys expire.
+     * @param wheel the timer wheel the engine schedules its expiring keys in.
+     * @param batchSize the number of keys deleted at once.
+     */
+    public ExpirySweeper(StorageEngine engine, TimerWheel wheel, int batchSize) {
+        this.engine = engine;
+        this.wheel = wheel;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<String> due = this.wheel.advance(System.currentTimeMillis());
+            for (int from = 0; from < due.size(); from += this.batchSize)
+                this.engine.deleteExpired(due.subList(from, Math.min(from + this.batchSize, due.size())));
+            if (!due.isEmpty())
+                logger.fine("Swept " + due.size() + " expired keys");
+        } catch (RuntimeException e) {
+            // a failed sweep must not cancel the timer, the next run tries again
+            logger.severe("Could not delete expired keys: " + e.getMessage());
+        }
+    }
+}
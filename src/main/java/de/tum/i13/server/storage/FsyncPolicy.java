@@ -0,0 +1,58 @@
+package de.tum.i13.server.storage;
+
+import de.tum.i13.shared.Constants;
+
+/**
+ * Durability policy of the data log, parsed from the -fsync option:
+ * "always" forces every write before returning (concurrent writes share one force),
+ * "batch:<ms>" forces the writes collected during a window of the given milliseconds before returning and
+ * "never" leaves flushing to the operating system.
+ */
+public class FsyncPolicy {
+    private String mode;
+    private long interval;
+
+    private FsyncPolicy(String mode, long interval) {
+        this.mode = mode;
+        this.interval = interval;
+    }
+
+    /**
+     * parses the policy from its textual representation.
+     * @param policy always, batch:<ms> or never.
+     * @return the parsed policy.
+     * @throws IllegalArgumentException if the policy is malformed.
+     */
+    public static FsyncPolicy parse(String policy) {
+        if (policy.equals(Constants.FSYNC_ALWAYS))
+            return new FsyncPolicy(Constants.FSYNC_ALWAYS, 0);
+        if (policy.equals(Constants.FSYNC_NEVER))
+            return new FsyncPolicy(Constants.FSYNC_NEVER, 0);
+        if (policy.startsWith(Constants.FSYNC_BATCH + ":")) {
+            try {
+                long interval = Long.parseLong(policy.substring(Constants.FSYNC_BATCH.length() + 1));
+                if (interval > 0)
+                    return new FsyncPolicy(Constants.FSYNC_BATCH, interval);
+            } catch (NumberFormatException e) {
+                // handled below
+            }
+        }
+        throw new IllegalArgumentException("Invalid fsync policy: " + policy);
+    }
+
+    public boolean isNever() {
+        return mode.equals(Constants.FSYNC_NEVER);
+    }
+
+    /**
+     * @return the batching window in milliseconds, 0 if writes are forced immediately.
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public String toString() {
+        return mode.equals(Constants.FSYNC_BATCH) ? mode + ":" + interval : mode;
+    }
+}
@@ -0,0 +1,124 @@
+package de.tum.i13.server.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that makes appended records durable according to the fsync policy.
+ * Writers register their append and wait for their ticket; all records appended while a force is
+ * pending or running are covered by the next FileChannel.force of each dirty segment (group commit).
+ * The committer is shared by all partitions of the log, so it collects every segment appended to since the last force.
+ */
+public class GroupCommitter extends Thread {
+    public static Logger logger = Logger.getLogger(GroupCommitter.class.getName());
+
+    private FsyncPolicy policy;
+    private Set<Segment> dirty;
+    private long appended;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+
+    public GroupCommitter(FsyncPolicy policy) {
+        this.policy = policy;
+        this.dirty = new HashSet<>();
+        this.appended = 0;
+        this.durable = 0;
+        setName("group-committer");
+        setDaemon(true);
+    }
+
+    /**
+     * registers a record that was appended to the given segment.
+     * Must be called after the record was appended, so the next force covers it.
+     * @param segment the segment the record was written to.
+     * @return the ticket to wait for.
+     */
+    public synchronized long register(Segment segment) {
+        this.appended++;
+        if (this.policy.isNever())
+            this.durable = this.appended;
+        else
+            this.dirty.add(segment);
+        notifyAll();
+        return this.appended;
+    }
+
+    /**
+     * blocks until the record with the given ticket is durable.
+     * @param ticket the ticket returned by register.
+     * @throws UncheckedIOException if forcing the data log failed.
+     */
+    public synchronized void awaitDurable(long ticket) throws InterruptedException {
+        while (this.durable < ticket) {
+            if (this.failure != null)
+                throw new UncheckedIOException(this.failure);
+            wait();
+        }
+    }
+
+    /**
+     * stops the committer once the records registered so far are durable.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        logger.info("Starting group commit with fsync policy " + this.policy);
+        try {
+            while (!isInterrupted()) {
+                boolean closing;
+                synchronized (this) {
+                    while (this.durable == this.appended && !this.closed)
+                        wait();
+                    if (this.durable == this.appended)
+                        return;
+                    closing = this.closed;
+                }
+                // collect the writes of the batching window into a single force, unless the log is being closed
+                if (this.policy.getInterval() > 0 && !closing)
+                    Thread.sleep(this.policy.getInterval());
+
+                long target;
+                List<Segment> toForce;
+                synchronized (this) {
+                    target = this.appended;
+                    toForce = new ArrayList<>(this.dirty);
+                    this.dirty.clear();
+                }
+                try {
+                    for (Segment segment : toForce)
+                        segment.force();
+                } catch (IOException e) {
+                    logger.severe("Could not force the data log to disk");
+                    synchronized (this) {
+                        this.failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    this.durable = target;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("Group commit stopped");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package de.tum.i13.server.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import de.tum.i13.shared.Constants;
+
+/**
+ * Index of a sealed segment that holds the key, owner and value location of each record but not the values,
+ * so the key directory is rebuilt without reading the values of the segment.
+ * On disk: segment size (long), number of entries (int), the entries and the CRC32 of all preceding bytes (long).
+ * The key length of an entry carries the same flags as the key length of its record,
+ * an entry with the EXPIRES flag ends with the expiry time (long).
+ * A hint whose checksum or segment size does not match is ignored and the segment is scanned instead.
+ */
+public class HintFile {
+
+    private HintFile() {
+    }
+
+    public static Path path(Path dir, int segmentId) {
+        return dir.resolve(Segment.fileName(segmentId) + Constants.HINT_SUFFIX);
+    }
+
+    /**
+     * writes the hint of a segment, replacing an older hint atomically.
+     * @param hintPath the path of the hint file.
+     * @param segmentSize the size of the segment the hint describes.
+     * @param entries the records of the segment in the order they were appended.
+     */
+    public static void write(Path hintPath, long segmentSize, List<Entry> entries) throws IOException {
+        Path tmp = hintPath.resolveSibling(hintPath.getFileName() + Constants.COMPACTION_TMP_SUFFIX);
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc))) {
+            out.writeLong(segmentSize);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+                byte[] owner = entry.owner == null ? new byte[0] : entry.owner.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length | (entry.compressed ? LogRecord.COMPRESSED : 0) | (entry.expiresAt != 0 ? LogRecord.EXPIRES : 0)
+                        | (entry.rangeTombstone ? LogRecord.RANGE : 0));
+                out.writeInt(owner.length);
+                out.writeInt(entry.valueLength);
+                out.writeInt(entry.recordSize);
+                out.writeLong(entry.valueOffset);
+                out.write(key);
+                out.write(owner);
+                if (entry.expiresAt != 0)
+                    out.writeLong(entry.expiresAt);
+            }
+            out.flush();
+            // the checksum itself is not part of the checksum
+            new DataOutputStream(file).writeLong(crc.getValue());
+            file.getFD().sync();
+        }
+        Files.move(tmp, hintPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * reads the hint of a segment.
+     * @param hintPath the path of the hint file.
+     * @param segmentSize the current size of the segment.
+     * @return the entries, null if there is no valid hint for a segment of that size.
+     */
+    public static List<Entry> read(Path hintPath, long segmentSize) {
+        if (!Files.exists(hintPath))
+            return null;
+        CRC32 crc = new CRC32();
+        try (FileInputStream file = new FileInputStream(hintPath.toFile());
+             DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(file), crc))) {
+            if (in.readLong() != segmentSize)
+                return null;
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, 1 << 20)));
+            for (int i = 0; i < count; i++) {
+                int keyField = in.readInt();
+                int keyLength = keyField & ~LogRecord.FLAGS;
+                int ownerLength = in.readInt();
+                int valueLength = in.readInt();
+                int recordSize = in.readInt();
+                long valueOffset = in.readLong();
+                if (keyLength < 0 || ownerLength < 0 || recordSize < 0 || valueOffset < 0 || valueOffset > segmentSize)
+                    return null;
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                byte[] owner = new byte[ownerLength];
+                in.readFully(owner);
+                long expiresAt = (keyField & LogRecord.EXPIRES) != 0 ? in.readLong() : 0;
+                entries.add(new Entry(new String(key, StandardCharsets.UTF_8),
+                        ownerLength == 0 ? null : new String(owner, StandardCharsets.UTF_8),
+                        valueOffset, valueLength, recordSize, (keyField & LogRecord.COMPRESSED) != 0, expiresAt,
+                        (keyField & LogRecord.RANGE) != 0));
+            }
+            // the checksum covers everything read so far, not the trailer itself
+            long expected = crc.getValue();
+            return in.readLong() == expected ? entries : null;
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            LogPartition.logger.warning("Could not read the hint file " + hintPath);
+            return null;
+        }
+    }
+
+    /**
+     * A record of a segment without its value.
+     */
+    public static class Entry {
+        private final String key;
+        private final String owner;
+        private final long valueOffset;
+        private final int valueLength;
+        private final int recordSize;
+        private final boolean compressed;
+        private final long expiresAt;
+        private final boolean rangeTombstone;
+
+        /**
+         * @param valueOffset the offset of the value bytes in the segment.
+         * @param valueLength the number of value bytes, -1 for a tombstone.
+         * @param recordSize the number of bytes the record occupies in the segment.
+         * @param compressed true if the value is stored compressed.
+         * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+         * @param rangeTombstone true if the record deletes the range of keys its key describes.
+         */
+        public Entry(String key, String owner, long valueOffset, int valueLength, int recordSize, boolean compressed, long expiresAt,
+                     boolean rangeTombstone) {
+            this.key = key;
+            this.owner = owner;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordSize = recordSize;
+            this.compressed = compressed;
+            this.expiresAt = expiresAt;
+            this.rangeTombstone = rangeTombstone;
+        }
+
+        /**
+         * @param record the record.
+         * @param offset the offset of the record in its segment.
+         */
+        public static Entry of(LogRecord record, long offset) {
+            return new Entry(record.getKey(), record.getOwner(), offset + record.valueOffset(),
+                    record.isTombstone() ? -1 : record.valueLength(), record.size(), record.isCompressed(), record.getExpiresAt(),
+                    record.isRangeTombstone());
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public long getValueOffset() {
+            return valueOffset;
+        }
+
+        public int getValueLength() {
+            return valueLength;
+        }
+
+        public int getRecordSize() {
+            return recordSize;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public boolean isTombstone() {
+            return valueLength < 0;
+        }
+
+        public boolean isRangeTombstone() {
+            return rangeTombstone;
+        }
+    }
+}
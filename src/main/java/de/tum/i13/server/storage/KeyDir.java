@@ -0,0 +1,189 @@
+package de.tum.i13.server.storage;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import de.tum.i13.shared.Metadata;
+
+/**
+ * In-memory key directory of the log storage engine.
+ * Maps every live key to the segment, offset and length of its latest value,
+ * so a lookup costs a single positioned read.
+ * A second index orders the keys by their MD5 hash, so the keys of a hash range are found
+ * in time proportional to the size of the range instead of hashing every key.
+ * Writers of a key directory have to be serialized by the caller.
+ */
+public class KeyDir {
+    private static final int HASH_LENGTH = 32;
+
+    private ConcurrentHashMap<String, Entry> entries;
+    // hash of the key followed by the key, the fixed length hash prefix keeps the map ordered by hash
+    private ConcurrentSkipListMap<String, String> byHash;
+
+    public KeyDir() {
+        this.entries = new ConcurrentHashMap<>();
+        this.byHash = new ConcurrentSkipListMap<>();
+    }
+
+    public Entry get(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * @return the previous entry of the key, null if there was none.
+     */
+    public Entry put(String key, Entry entry) {
+        Entry previous = this.entries.put(key, entry);
+        if (previous == null)
+            this.byHash.put(Metadata.generateHash(key) + key, key);
+        return previous;
+    }
+
+    public Entry remove(String key) {
+        Entry previous = this.entries.remove(key);
+        if (previous != null)
+            this.byHash.remove(Metadata.generateHash(key) + key);
+        return previous;
+    }
+
+    public boolean containsKey(String key) {
+        return this.entries.containsKey(key);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return a copy of the key directory that later writes do not change, the entries are immutable and shared.
+     */
+    public KeyDir copy() {
+        KeyDir copy = new KeyDir();
+        copy.entries = new ConcurrentHashMap<>(this.entries);
+        copy.byHash = this.byHash.clone();
+        return copy;
+    }
+
+    public Set<Map.Entry<String, Entry>> entrySet() {
+        return this.entries.entrySet();
+    }
+
+    /**
+     * finds the keys whose hash lies in [start, end) with the same wrap around semantics as Metadata.hashInRange.
+     * @param start the hex hash where the range starts.
+     * @param end the hex hash where the range ends.
+     * @return the keys of the range.
+     */
+    public List<String> keysInRange(String start, String end) {
+        String from = normalizeHash(start);
+        String to = normalizeHash(end);
+        List<String> keys = new ArrayList<>();
+        int order = from.compareTo(to);
+        if (order == 0) {
+            keys.addAll(this.byHash.values());
+        } else if (order < 0) {
+            keys.addAll(this.byHash.subMap(from, to).values());
+        } else {
+            keys.addAll(this.byHash.tailMap(from).values());
+            keys.addAll(this.byHash.headMap(to).values());
+        }
+        return keys;
+    }
+
+    /**
+     * @return the keys ordered by their hash.
+     */
+    public Collection<String> keysByHash() {
+        return this.byHash.values();
+    }
+
+    /**
+     * brings a hex hash into the form of Metadata.generateHash: lower case and padded to 32 digits,
+     * as the ring hands out hashes that went through a BigInteger and lost their leading zeros.
+     */
+    static String normalizeHash(String hash) {
+        String normalized = new BigInteger(hash, 16).toString(16);
+        StringBuilder padded = new StringBuilder(HASH_LENGTH);
+        for (int i = normalized.length(); i < HASH_LENGTH; i++)
+            padded.append('0');
+        return padded.append(normalized).toString();
+    }
+
+    /**
+     * Location of a value in the data log together with the owner of the key,
+     * so ownership checks do not need to read the log.
+     */
+    public static class Entry {
+        private final int segmentId;
+        private final long valueOffset;
+        private final int valueLength;
+        private final String owner;
+        private final boolean compressed;
+        private final long expiresAt;
+
+        public Entry(int segmentId, long valueOffset, int valueLength, String owner) {
+            this(segmentId, valueOffset, valueLength, owner, false);
+        }
+
+        /**
+         * @param valueLength the number of value bytes as stored in the log.
+         * @param compressed true if the value is stored compressed.
+         */
+        public Entry(int segmentId, long valueOffset, int valueLength, String owner, boolean compressed) {
+            this(segmentId, valueOffset, valueLength, owner, compressed, 0);
+        }
+
+        /**
+         * @param valueLength the number of value bytes as stored in the log.
+         * @param compressed true if the value is stored compressed.
+         * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+         */
+        public Entry(int segmentId, long valueOffset, int valueLength, String owner, boolean compressed, long expiresAt) {
+            this.segmentId = segmentId;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.compressed = compressed;
+            this.expiresAt = expiresAt;
+            // there are far fewer users than keys, so the entries share the owner strings
+            this.owner = owner == null ? null : owner.intern();
+        }
+
+        public int getSegmentId() {
+            return segmentId;
+        }
+
+        public long getValueOffset() {
+            return valueOffset;
+        }
+
+        public int getValueLength() {
+            return valueLength;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        /**
+         * @param now the current time in milliseconds since the epoch.
+         * @return true if the key has a time to live that ran out.
+         */
+        public boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,823 @@
+package de.tum.i13.server.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import de.tum.i13.shared.Constants;
+
+/**
+ * One MD5-range shard of the log storage engine with its own segments and key directory.
+ * The partition covers the key hashes in [start, end).
+ */
+public class LogPartition {
+    public static Logger logger = Logger.getLogger(LogPartition.class.getName());
+
+    private int id;
+    private Path path;
+    private BigInteger start;
+    private BigInteger end;
+    private LogStorageEngine engine;
+    private ConcurrentHashMap<Integer, Segment> segments;
+    private Segment activeSegment;
+    private KeyDir keyDir;
+    // held for reading while a key directory entry is resolved, for writing while compaction swaps segments
+    private ReentrantReadWriteLock segmentLock;
+    // keeps the compaction and the background writing of hint files apart
+    private final Object compactionLock = new Object();
+    private long loadedBytes;
+    private int hintedSegments;
+
+    public LogPartition(int id, Path path, BigInteger start, BigInteger end, LogStorageEngine engine) {
+        this.id = id;
+        this.path = path;
+        this.start = start;
+        this.end = end;
+        this.engine = engine;
+        this.segments = new ConcurrentHashMap<>();
+        this.keyDir = new KeyDir();
+        this.segmentLock = new ReentrantReadWriteLock();
+    }
+
+    public static String directoryName(int id) {
+        return String.format("%s%02d", Constants.PARTITION_PREFIX, id);
+    }
+
+    /**
+     * opens all segments of the partition and rebuilds the key directory.
+     * The segments are indexed in parallel as fork-join tasks, sealed segments from their hint file if it is valid,
+     * then the indexes are applied in segment order. The newest segment becomes the active segment.
+     * An incomplete record at the end of a segment (e.g. after a crash) or a record whose checksum
+     * does not match is cut off together with everything behind it.
+     */
+    public void load() throws IOException {
+        Files.createDirectories(this.path);
+        finishInterruptedCompaction();
+        List<Integer> ids = new ArrayList<>();
+        File[] files = this.path.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int segmentId = Segment.parseId(file.getName());
+                if (segmentId >= 0)
+                    ids.add(segmentId);
+            }
+        }
+        Collections.sort(ids);
+        List<Segment> opened = new ArrayList<>();
+        for (int segmentId : ids) {
+            Segment segment = Segment.open(this.path, segmentId);
+            this.segments.put(segmentId, segment);
+            opened.add(segment);
+        }
+
+        List<ForkJoinTask<SegmentIndex>> indexes = new ArrayList<>();
+        for (int i = 0; i < opened.size(); i++) {
+            Segment segment = opened.get(i);
+            boolean sealed = i < opened.size() - 1;
+            indexes.add(ForkJoinTask.adapt(() -> index(segment, sealed)));
+        }
+        ForkJoinTask.invokeAll(indexes);
+
+        for (int i = 0; i < opened.size(); i++) {
+            Segment segment = opened.get(i);
+            SegmentIndex index = indexes.get(i).join();
+            for (HintFile.Entry entry : index.entries)
+                apply(entry, segment.getId());
+            if (index.end < segment.size()) {
+                logger.warning("Truncating " + (segment.size() - index.end) + " bytes of incomplete or corrupted records at the end of "
+                        + segment.getPath() + " at offset " + index.end);
+                segment.truncate(index.end);
+            }
+            if (this.activeSegment != null)
+                seal(this.activeSegment);
+            this.activeSegment = segment;
+            this.loadedBytes += index.fromHint ? segment.size() : index.end;
+            if (index.fromHint)
+                this.hintedSegments++;
+        }
+        if (this.activeSegment == null)
+            rollSegment();
+    }
+
+    /**
+     * reads the records of a segment without their values.
+     * @param sealed true if the segment is not the newest one and thus may have a hint file.
+     */
+    private SegmentIndex index(Segment segment, boolean sealed) {
+        if (sealed) {
+            List<HintFile.Entry> hint = HintFile.read(HintFile.path(this.path, segment.getId()), segment.size());
+            if (hint != null)
+                return new SegmentIndex(hint, segment.size(), true);
+        }
+        List<HintFile.Entry> entries = new ArrayList<>();
+        try {
+            long end = segment.scan((record, offset) -> entries.add(HintFile.Entry.of(record, offset)));
+            return new SegmentIndex(entries, end, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * completes a compaction that was interrupted by a crash.
+     * A merged segment that was fully written replaces all segments it was merged from,
+     * a partially written one is discarded.
+     */
+    private void finishInterruptedCompaction() throws IOException {
+        File[] files = this.path.toFile().listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(Constants.COMPACTION_TMP_SUFFIX) && Segment.parseId(stripSuffix(name, Constants.COMPACTION_TMP_SUFFIX)) >= 0) {
+                logger.warning("Discarding incomplete compaction output " + name);
+                Files.delete(file.toPath());
+            } else if (name.endsWith(Constants.HINT_SUFFIX + Constants.COMPACTION_TMP_SUFFIX)) {
+                Files.delete(file.toPath());
+            }
+        }
+        for (File file : files) {
+            String name = file.getName();
+            int mergedId = name.endsWith(Constants.COMPACTION_MERGE_SUFFIX) ? Segment.parseId(stripSuffix(name, Constants.COMPACTION_MERGE_SUFFIX)) : -1;
+            if (mergedId < 0)
+                continue;
+            logger.warning("Finishing interrupted compaction into segment " + mergedId + " of " + this.path);
+            for (File other : files) {
+                int segmentId = Segment.parseId(other.getName());
+                if (segmentId >= 0 && segmentId < mergedId) {
+                    Files.deleteIfExists(other.toPath());
+                    Files.deleteIfExists(HintFile.path(this.path, segmentId));
+                }
+            }
+            Files.deleteIfExists(HintFile.path(this.path, mergedId));
+            Files.move(file.toPath(), this.path.resolve(Segment.fileName(mergedId)),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String stripSuffix(String name, String suffix) {
+        return name.substring(0, name.length() - suffix.length());
+    }
+
+    private static long recordSize(String key, KeyDir.Entry entry) {
+        int ownerLength = entry.getOwner() == null ? 0 : entry.getOwner().getBytes(StandardCharsets.UTF_8).length;
+        int expiryLength = entry.getExpiresAt() == 0 ? 0 : Long.BYTES;
+        return LogRecord.HEADER_SIZE + key.getBytes(StandardCharsets.UTF_8).length + ownerLength + expiryLength + entry.getValueLength();
+    }
+
+    private KeyDir.Entry apply(HintFile.Entry record, int segmentId) {
+        if (record.isRangeTombstone()) {
+            applyRangeTombstone(record, segmentId);
+            return null;
+        }
+        KeyDir.Entry previous;
+        if (record.isTombstone()) {
+            previous = this.keyDir.remove(record.getKey());
+            // a tombstone is garbage as soon as it is written, it only has to outlive older segments
+            this.segments.get(segmentId).addDeadBytes(record.getRecordSize());
+        } else {
+            previous = this.keyDir.put(record.getKey(), new KeyDir.Entry(segmentId, record.getValueOffset(), record.getValueLength(),
+                    record.getOwner(), record.isCompressed(), record.getExpiresAt()));
+            // keys that expired while the server was down are scheduled too and go with the first sweep
+            if (record.getExpiresAt() != 0)
+                this.engine.getExpiryWheel().schedule(record.getKey(), record.getExpiresAt());
+        }
+        if (previous != null) {
+            Segment previousSegment = this.segments.get(previous.getSegmentId());
+            if (previousSegment != null)
+                previousSegment.addDeadBytes(recordSize(record.getKey(), previous));
+        }
+        return previous;
+    }
+
+    /**
+     * removes every key of the range of a range tombstone from the key directory.
+     */
+    private void applyRangeTombstone(HintFile.Entry record, int segmentId) {
+        this.segments.get(segmentId).addDeadBytes(record.getRecordSize());
+        String[] range = record.getKey().isEmpty() ? null : record.getKey().split(" ");
+        List<String> keys = range == null ? new ArrayList<>(this.keyDir.keysByHash()) : this.keyDir.keysInRange(range[0], range[1]);
+        for (String key : keys) {
+            KeyDir.Entry previous = this.keyDir.remove(key);
+            Segment previousSegment = previous == null ? null : this.segments.get(previous.getSegmentId());
+            if (previousSegment != null)
+                previousSegment.addDeadBytes(recordSize(key, previous));
+        }
+    }
+
+    /**
+     * seals the active segment and starts a new one.
+     * The sealed segment is forced first, so the group committer only needs to force active segments.
+     */
+    private void rollSegment() throws IOException {
+        if (this.activeSegment != null) {
+            this.activeSegment.force();
+            seal(this.activeSegment);
+        }
+        int segmentId = this.activeSegment == null ? 1 : this.activeSegment.getId() + 1;
+        Segment segment = Segment.open(this.path, segmentId);
+        this.segments.put(segmentId, segment);
+        this.activeSegment = segment;
+    }
+
+    /**
+     * prepares a segment that will not be appended to anymore for reading.
+     */
+    private void seal(Segment segment) throws IOException {
+        if (this.engine.isMmapReads())
+            segment.map();
+    }
+
+    /**
+     * appends a record to the active segment and updates the key directory.
+     * @param record the record to be written.
+     * @return the ticket to wait for until the record is durable.
+     */
+    private long append(LogRecord record) {
+        byte[] bytes = record.encode();
+        try {
+            if (this.activeSegment.size() > 0 && this.activeSegment.size() + bytes.length > this.engine.getMaxSegmentSize())
+                rollSegment();
+            long offset = this.activeSegment.append(bytes);
+            this.engine.addUserBytesWritten(bytes.length);
+            apply(HintFile.Entry.of(record, offset), this.activeSegment.getId());
+            return this.engine.getGroupCommitter().register(this.activeSegment);
+        } catch (IOException e) {
+            logger.severe("Could not append to the data log");
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * appends the records of a batch of puts with as few writes as possible: the records are encoded into a buffer
+     * that is written whenever the active segment would roll and at the end of the batch.
+     * @param pairs the key-value pairs.
+     * @param owner the user that is allowed to alter the keys, null if anyone is.
+     * @return the ticket to wait for until the batch is durable.
+     */
+    public long bulkLoad(Collection<Map.Entry<String, String>> pairs, String owner) {
+        synchronized (this) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            List<LogRecord> records = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            try {
+                for (Map.Entry<String, String> pair : pairs) {
+                    LogRecord record = LogRecord.put(pair.getKey(), pair.getValue(), owner, this.engine.getCompression(), 0);
+                    byte[] bytes = record.encode();
+                    long pending = this.activeSegment.size() + buffer.size();
+                    if (pending > 0 && pending + bytes.length > this.engine.getMaxSegmentSize()) {
+                        appendBatch(buffer, records, offsets);
+                        rollSegment();
+                    }
+                    offsets.add(buffer.size());
+                    records.add(record);
+                    buffer.write(bytes);
+                }
+                appendBatch(buffer, records, offsets);
+                return this.engine.getGroupCommitter().register(this.activeSegment);
+            } catch (IOException e) {
+                logger.severe("Could not append to the data log");
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * writes the buffered records to the active segment with a single write and updates the key directory.
+     * @param offsets the offsets of the records in the buffer.
+     */
+    private void appendBatch(ByteArrayOutputStream buffer, List<LogRecord> records, List<Integer> offsets) throws IOException {
+        if (records.isEmpty())
+            return;
+        long offset = this.activeSegment.append(buffer.toByteArray());
+        this.engine.addUserBytesWritten(buffer.size());
+        for (int i = 0; i < records.size(); i++)
+            apply(HintFile.Entry.of(records.get(i), offset + offsets.get(i)), this.activeSegment.getId());
+        buffer.reset();
+        records.clear();
+        offsets.clear();
+    }
+
+    /**
+     * reads the value an entry of the key directory points to.
+     */
+    private String read(KeyDir.Entry entry) {
+        return Compression.decode(readStored(entry), entry.isCompressed());
+    }
+
+    /**
+     * reads the value bytes an entry of the key directory points to as they are stored.
+     */
+    private byte[] readStored(KeyDir.Entry entry) {
+        try {
+            return this.segments.get(entry.getSegmentId()).read(entry.getValueOffset(), entry.getValueLength());
+        } catch (IOException e) {
+            logger.severe("Could not read from the data log");
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * waits outside of the partition lock until a record is durable, so concurrent writers share a force.
+     */
+    private void awaitDurable(long ticket) {
+        try {
+            this.engine.getGroupCommitter().awaitDurable(ticket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the value of the key, null if the key does not exist or expired.
+     * An expired key is deleted right away instead of waiting for the sweeper.
+     */
+    public String get(String key) {
+        KeyDir.Entry entry;
+        this.segmentLock.readLock().lock();
+        try {
+            entry = this.keyDir.get(key);
+            if (entry == null)
+                return null;
+            if (!entry.isExpired(System.currentTimeMillis()))
+                return read(entry);
+        } finally {
+            this.segmentLock.readLock().unlock();
+        }
+        deleteExpired(Collections.singletonList(key));
+        return null;
+    }
+
+    /**
+     * @return the live entry of the key, null if the key does not exist or expired.
+     */
+    private KeyDir.Entry liveEntry(String key) {
+        KeyDir.Entry entry = this.keyDir.get(key);
+        return entry == null || entry.isExpired(System.currentTimeMillis()) ? null : entry;
+    }
+
+    /**
+     * @return the owner of the key, null if the key has none or does not exist.
+     */
+    public String getOwner(String key) {
+        KeyDir.Entry entry = liveEntry(key);
+        return entry == null ? null : entry.getOwner();
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch at which the key expires, 0 if it never does or does not exist.
+     */
+    public long getExpiry(String key) {
+        KeyDir.Entry entry = liveEntry(key);
+        return entry == null ? 0 : entry.getExpiresAt();
+    }
+
+    /**
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return true if an existing value was updated.
+     */
+    public boolean put(String key, String value, String owner, long expiresAt) {
+        boolean updated;
+        long ticket;
+        synchronized (this) {
+            updated = liveEntry(key) != null;
+            ticket = append(LogRecord.put(key, value, owner, this.engine.getCompression(), expiresAt));
+        }
+        awaitDurable(ticket);
+        return updated;
+    }
+
+    /**
+     * stores a value that is already compressed as it is.
+     * @param compressedValue the value compressed by Compression.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return true if an existing value was updated.
+     */
+    public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt) {
+        boolean updated;
+        long ticket;
+        synchronized (this) {
+            updated = liveEntry(key) != null;
+            ticket = append(LogRecord.putCompressed(key, compressedValue, owner, expiresAt));
+        }
+        awaitDurable(ticket);
+        return updated;
+    }
+
+    /**
+     * @return true if a value was deleted, false if the key did not exist or expired.
+     */
+    public boolean delete(String key) {
+        long ticket;
+        boolean live;
+        synchronized (this) {
+            if (!this.keyDir.containsKey(key))
+                return false;
+            live = liveEntry(key) != null;
+            ticket = append(LogRecord.tombstone(key));
+        }
+        awaitDurable(ticket);
+        return live;
+    }
+
+    /**
+     * deletes all keys of a hash range with a single range tombstone instead of a tombstone per key.
+     * @param rangeStart the hash where the range starts, null to delete every key of the partition.
+     * @param rangeEnd the hash where the range ends.
+     * @return the ticket to wait for until the deletion is durable, 0 if there was nothing to delete.
+     */
+    public long deleteRange(String rangeStart, String rangeEnd) {
+        synchronized (this) {
+            boolean empty = rangeStart == null ? this.keyDir.size() == 0 : this.keyDir.keysInRange(rangeStart, rangeEnd).isEmpty();
+            if (empty)
+                return 0;
+            return append(LogRecord.rangeTombstone(rangeStart, rangeEnd));
+        }
+    }
+
+    /**
+     * deletes the given keys that are expired by now.
+     * The tombstones are not waited for, a tombstone lost in a crash is written again as the expiry is stored with the value.
+     */
+    public void deleteExpired(Collection<String> keys) {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                KeyDir.Entry entry = this.keyDir.get(key);
+                if (entry != null && entry.isExpired(now))
+                    append(LogRecord.tombstone(key));
+            }
+        }
+    }
+
+    /**
+     * deletes the given keys, waiting only once for all tombstones to become durable.
+     */
+    public void deleteAll(Collection<String> keys) {
+        long ticket = 0;
+        synchronized (this) {
+            for (String key : keys) {
+                if (this.keyDir.containsKey(key))
+                    ticket = append(LogRecord.tombstone(key));
+            }
+        }
+        awaitDurable(ticket);
+    }
+
+    /**
+     * collects the live key-value pairs of the partition, expired keys are skipped.
+     * @param owners filled with the owners of the collected keys that have one, may be null.
+     * @param compressed filled with the values that are stored compressed, as they are stored instead of decompressed
+     *                   into res, may be null.
+     * @param expiries filled with the expiries of the collected keys that have one, may be null.
+     * @param rangeStart the hash where the range starts, null to collect all pairs.
+     * @param rangeEnd the hash where the range ends.
+     */
+    public void collect(HashMap<String, String> res, HashMap<String, String> owners, HashMap<String, byte[]> compressed,
+                        HashMap<String, Long> expiries, String rangeStart, String rangeEnd) {
+        collect(this.keyDir, res, owners, compressed, expiries, rangeStart, rangeEnd);
+    }
+
+    /**
+     * collects the live key-value pairs of a key directory of the partition, e.g. of a snapshot.
+     * @see #collect(HashMap, HashMap, HashMap, HashMap, String, String)
+     */
+    void collect(KeyDir dir, HashMap<String, String> res, HashMap<String, String> owners, HashMap<String, byte[]> compressed,
+                 HashMap<String, Long> expiries, String rangeStart, String rangeEnd) {
+        forEach(dir, rangeStart, rangeEnd, (key, entry) -> {
+            if (compressed != null && entry.isCompressed())
+                compressed.put(key, readStored(entry));
+            else
+                res.put(key, read(entry));
+            if (owners != null && entry.getOwner() != null)
+                owners.put(key, entry.getOwner());
+            if (expiries != null && entry.getExpiresAt() != 0)
+                expiries.put(key, entry.getExpiresAt());
+        });
+    }
+
+    /**
+     * passes the live key-value pairs of the partition to the consumer in hash order.
+     * @see #scan(KeyDir, String, String, BiConsumer)
+     */
+    public void scan(String rangeStart, String rangeEnd, BiConsumer<String, String> consumer) {
+        scan(this.keyDir, rangeStart, rangeEnd, consumer);
+    }
+
+    /**
+     * passes the live key-value pairs of a key directory of the partition to the consumer in hash order,
+     * reading one value at a time instead of collecting the range.
+     * @param dir the key directory of the partition or of a snapshot of it.
+     * @param rangeStart the hash where the range starts, null to scan all pairs.
+     * @param rangeEnd the hash where the range ends.
+     */
+    void scan(KeyDir dir, String rangeStart, String rangeEnd, BiConsumer<String, String> consumer) {
+        forEach(dir, rangeStart, rangeEnd, (key, entry) -> consumer.accept(key, read(entry)));
+    }
+
+    /**
+     * passes the live pairs of the partition in hash order with their values as stored, compressed values are not inflated.
+     * @param rangeStart the hash where the range starts, null to scan all pairs.
+     * @param rangeEnd the hash where the range ends.
+     */
+    public void scanStored(String rangeStart, String rangeEnd, StoredValueConsumer consumer) {
+        forEach(this.keyDir, rangeStart, rangeEnd, (key, entry) ->
+                consumer.accept(key, readStored(entry), entry.isCompressed(), entry.getExpiresAt()));
+    }
+
+    /**
+     * passes the live entries of a key directory in a hash range to the consumer, expired keys are skipped.
+     * The segment lock is held per key, so the compaction only waits for a single read.
+     */
+    private void forEach(KeyDir dir, String rangeStart, String rangeEnd, BiConsumer<String, KeyDir.Entry> consumer) {
+        Collection<String> keys = rangeStart == null ? dir.keysByHash() : dir.keysInRange(rangeStart, rangeEnd);
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            this.segmentLock.readLock().lock();
+            try {
+                KeyDir.Entry entry = dir.get(key);
+                if (entry != null && !entry.isExpired(now))
+                    consumer.accept(key, entry);
+            } finally {
+                this.segmentLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * copies the key directory for a snapshot. The values stay in the segments, which the compaction keeps
+     * as long as a snapshot of the engine is open.
+     */
+    synchronized KeyDir snapshotKeyDir() {
+        return this.keyDir.copy();
+    }
+
+    public int size() {
+        return this.keyDir.size();
+    }
+
+    /**
+     * @return the share of bytes in the sealed segments that belong to superseded values or tombstones.
+     */
+    public double garbageRatio() {
+        long size = sealedBytes();
+        return size == 0 ? 0 : (double) deadBytes() / size;
+    }
+
+    public long sealedBytes() {
+        long size = 0;
+        for (Segment segment : sealedSegments())
+            size += segment.size();
+        return size;
+    }
+
+    public long deadBytes() {
+        long dead = 0;
+        for (Segment segment : sealedSegments())
+            dead += segment.getDeadBytes();
+        return dead;
+    }
+
+    private synchronized List<Segment> sealedSegments() {
+        List<Segment> sealed = new ArrayList<>();
+        for (Segment segment : this.segments.values()) {
+            if (segment.getId() < this.activeSegment.getId())
+                sealed.add(segment);
+        }
+        sealed.sort(Comparator.comparingInt(Segment::getId));
+        return sealed;
+    }
+
+    /**
+     * merges all sealed segments into a single segment that only holds the live values.
+     * The merge runs without blocking clients and is throttled to the compaction I/O budget,
+     * only the final swap of the segments briefly excludes readers and writers of this partition.
+     * The merged segment takes the id of the newest sealed segment, so the replay order stays intact.
+     */
+    public void compact() {
+        synchronized (this.compactionLock) {
+            merge();
+        }
+    }
+
+    private void merge() {
+        List<Segment> sealed = sealedSegments();
+        // open snapshots still point into the sealed segments
+        if (sealed.isEmpty() || this.engine.hasOpenSnapshots())
+            return;
+        long startMillis = System.currentTimeMillis();
+        int mergedId = sealed.get(sealed.size() - 1).getId();
+        Path tmpPath = this.path.resolve(Segment.fileName(mergedId) + Constants.COMPACTION_TMP_SUFFIX);
+        Path mergePath = this.path.resolve(Segment.fileName(mergedId) + Constants.COMPACTION_MERGE_SUFFIX);
+        HashMap<String, KeyDir.Entry> oldEntries = new HashMap<>();
+        HashMap<String, KeyDir.Entry> newEntries = new HashMap<>();
+        List<HintFile.Entry> hint = new ArrayList<>();
+        long[] processed = {0};
+        long read = 0;
+        long written;
+        try {
+            Files.deleteIfExists(tmpPath);
+            Segment merged = new Segment(mergedId, tmpPath);
+            for (Segment segment : sealed) {
+                read += segment.size();
+                segment.scan((record, offset) -> {
+                    processed[0] += record.size();
+                    if (!record.isTombstone()) {
+                        KeyDir.Entry entry = this.keyDir.get(record.getKey());
+                        if (entry != null && entry.getSegmentId() == segment.getId() && entry.getValueOffset() == offset + record.valueOffset()) {
+                            long newOffset = merged.append(record.encode());
+                            processed[0] += record.size();
+                            oldEntries.put(record.getKey(), entry);
+                            newEntries.put(record.getKey(), new KeyDir.Entry(mergedId, newOffset + record.valueOffset(), record.valueLength(),
+                                    record.getOwner(), record.isCompressed(), record.getExpiresAt()));
+                            hint.add(HintFile.Entry.of(record, newOffset));
+                        }
+                    }
+                    throttle(processed[0], startMillis);
+                });
+            }
+            merged.force();
+            merged.close();
+            written = merged.size();
+            // the hint of the newest sealed segment does not describe the merged segment that takes its id
+            Files.deleteIfExists(HintFile.path(this.path, mergedId));
+            // from here on the merged segment survives a crash and replaces the sealed ones on restart
+            Files.move(tmpPath, mergePath, StandardCopyOption.ATOMIC_MOVE);
+            if (!swapSegments(sealed, mergedId, mergePath, oldEntries, newEntries)) {
+                logger.info("Discarded the compaction of " + this.path + " as a snapshot was opened meanwhile");
+                return;
+            }
+            HintFile.write(HintFile.path(this.path, mergedId), written, hint);
+        } catch (IOException e) {
+            logger.severe("Could not compact " + this.path);
+            throw new UncheckedIOException(e);
+        }
+        CompactionStats stats = this.engine.getCompactionStats();
+        stats.record(read, written, System.currentTimeMillis() - startMillis);
+        logger.info("Compacted " + sealed.size() + " segments of " + this.path + " into segment " + mergedId + ": " + stats
+                + ", writeAmplification=" + stats.writeAmplification(this.engine.getUserBytesWritten()));
+    }
+
+    /**
+     * writes the hint files of the sealed segments that have none, e.g. segments that were sealed by a roll.
+     * The segments are read within the compaction I/O budget.
+     */
+    public void writeMissingHints() {
+        synchronized (this.compactionLock) {
+            for (Segment segment : sealedSegments()) {
+                Path hintPath = HintFile.path(this.path, segment.getId());
+                if (Files.exists(hintPath))
+                    continue;
+                long startMillis = System.currentTimeMillis();
+                List<HintFile.Entry> entries = new ArrayList<>();
+                try {
+                    segment.scan((record, offset) -> {
+                        entries.add(HintFile.Entry.of(record, offset));
+                        throttle(offset + record.size(), startMillis);
+                    });
+                    HintFile.write(hintPath, segment.size(), entries);
+                } catch (IOException e) {
+                    logger.severe("Could not write the hint file of " + segment.getPath());
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * sleeps as long as the compaction is ahead of its I/O budget.
+     */
+    private void throttle(long processedBytes, long startMillis) throws IOException {
+        long expectedMillis = processedBytes * 1000 / this.engine.getCompactionIoBudget();
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+        if (expectedMillis > elapsedMillis) {
+            try {
+                Thread.sleep(expectedMillis - elapsedMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Compaction interrupted");
+            }
+        }
+    }
+
+    /**
+     * replaces the sealed segments with the merged one and points the moved keys to it,
+     * unless they were overwritten or deleted while the merge was running.
+     * If a snapshot was opened during the merge the sealed segments are kept and the merged one is deleted.
+     * @return true if the segments were swapped.
+     */
+    private boolean swapSegments(List<Segment> sealed, int mergedId, Path mergePath,
+                              HashMap<String, KeyDir.Entry> oldEntries, HashMap<String, KeyDir.Entry> newEntries) throws IOException {
+        this.segmentLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                // snapshots copy the key directory under the partition lock, so none can start during the swap
+                if (this.engine.hasOpenSnapshots()) {
+                    Files.delete(mergePath);
+                    return false;
+                }
+                for (Segment segment : sealed) {
+                    segment.close();
+                    this.segments.remove(segment.getId());
+                    if (segment.getId() != mergedId) {
+                        Files.delete(segment.getPath());
+                        Files.deleteIfExists(HintFile.path(this.path, segment.getId()));
+                    }
+                }
+                Files.move(mergePath, this.path.resolve(Segment.fileName(mergedId)),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Segment merged = Segment.open(this.path, mergedId);
+                seal(merged);
+                this.segments.put(mergedId, merged);
+                for (Map.Entry<String, KeyDir.Entry> moved : newEntries.entrySet()) {
+                    String key = moved.getKey();
+                    if (this.keyDir.get(key) == oldEntries.get(key))
+                        this.keyDir.put(key, moved.getValue());
+                    else
+                        merged.addDeadBytes(recordSize(key, moved.getValue()));
+                }
+            }
+        } finally {
+            this.segmentLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * closes all segments of the partition, after a running compaction finished.
+     */
+    public void close() throws IOException {
+        synchronized (this.compactionLock) {
+            synchronized (this) {
+                for (Segment segment : this.segments.values())
+                    segment.close();
+            }
+        }
+    }
+
+    /**
+     * @return the bytes of the segments that were indexed by the last load.
+     */
+    public long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    /**
+     * @return the number of segments that the last load indexed from their hint file.
+     */
+    public int getHintedSegments() {
+        return hintedSegments;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public BigInteger getStart() {
+        return start;
+    }
+
+    public BigInteger getEnd() {
+        return end;
+    }
+
+    /**
+     * The records of a segment without their values.
+     */
+    private static class SegmentIndex {
+        private final List<HintFile.Entry> entries;
+        // the offset behind the last valid record
+        private final long end;
+        private final boolean fromHint;
+
+        SegmentIndex(List<HintFile.Entry> entries, long end, boolean fromHint) {
+            this.entries = entries;
+            this.end = end;
+            this.fromHint = fromHint;
+        }
+    }
+}
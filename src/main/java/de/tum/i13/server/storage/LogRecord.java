@@ -0,0 +1,244 @@
+package de.tum.i13.server.storage;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * A single entry of the append-only data log.
+ * On disk a record is stored as: checksum (int), key length (int), value length (int), owner length (int),
+ * key bytes, owner bytes, value bytes. The checksum is the CRC32 of everything after it,
+ * so a torn or corrupted record is detected when the log is replayed.
+ * A value length of -1 marks a tombstone, i.e. the deletion of the key, an owner length of 0 a key without owner.
+ * Storing the owner next to the value lets a single append and a single lookup cover both.
+ * The upper bits of the key length field hold flags, the COMPRESSED flag marks a value stored by Compression,
+ * the EXPIRES flag a key with a time to live, whose expiry time (long) follows the owner bytes.
+ * A tombstone with the RANGE flag deletes every key of a hash range that was written before it,
+ * its key holds the start and end hash of the range separated by a space, or nothing for the whole partition.
+ */
+public class LogRecord {
+    static final int HEADER_SIZE = 16;
+    static final int COMPRESSED = 1 << 30;
+    static final int EXPIRES = 1 << 29;
+    static final int RANGE = 1 << 28;
+    static final int FLAGS = COMPRESSED | EXPIRES | RANGE;
+    private static final int EXPIRY_SIZE = 8;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_KEY_LENGTH = 1024;
+    private static final int MAX_OWNER_LENGTH = 1024;
+
+    private String key;
+    // the value bytes as stored in the log, null for a tombstone
+    private byte[] storedValue;
+    private boolean compressed;
+    private String owner;
+    // milliseconds since the epoch, 0 if the key does not expire
+    private long expiresAt;
+    private boolean range;
+    private int keyLength;
+    private int ownerLength;
+
+    private LogRecord(String key, byte[] storedValue, boolean compressed, String owner, long expiresAt) {
+        this.key = key;
+        this.expiresAt = expiresAt;
+        this.storedValue = storedValue;
+        this.compressed = compressed;
+        this.owner = owner == null || owner.isEmpty() ? null : owner;
+        this.keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+        this.ownerLength = this.owner == null ? 0 : this.owner.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    public static LogRecord put(String key, String value) {
+        return put(key, value, null);
+    }
+
+    /**
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     */
+    public static LogRecord put(String key, String value, String owner) {
+        return new LogRecord(key, value.getBytes(StandardCharsets.UTF_8), false, owner, 0);
+    }
+
+    /**
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param compression decides whether the value is stored compressed.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public static LogRecord put(String key, String value, String owner, Compression compression, long expiresAt) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compression.compress(bytes);
+        return compressed == null ? new LogRecord(key, bytes, false, owner, expiresAt) : new LogRecord(key, compressed, true, owner, expiresAt);
+    }
+
+    /**
+     * @param compressedValue a value compressed by Compression, e.g. as it was read from the log of another server.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public static LogRecord putCompressed(String key, byte[] compressedValue, String owner, long expiresAt) {
+        return new LogRecord(key, compressedValue, true, owner, expiresAt);
+    }
+
+    public static LogRecord tombstone(String key) {
+        return new LogRecord(key, null, false, null, 0);
+    }
+
+    /**
+     * @param start the hash where the deleted range starts, null to delete every key of the partition.
+     * @param end the hash where the deleted range ends.
+     */
+    public static LogRecord rangeTombstone(String start, String end) {
+        LogRecord record = new LogRecord(start == null ? "" : start + " " + end, null, false, null, 0);
+        record.range = true;
+        return record;
+    }
+
+    /**
+     * serializes the record into its on-disk representation.
+     * @return the bytes to be appended to the log.
+     */
+    public byte[] encode() {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = storedValue == null ? new byte[0] : storedValue;
+        byte[] ownerBytes = owner == null ? new byte[0] : owner.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(valueOffset() + valueBytes.length);
+        buffer.position(CHECKSUM_SIZE);
+        buffer.putInt(keyBytes.length | (compressed ? COMPRESSED : 0) | (expiresAt != 0 ? EXPIRES : 0) | (range ? RANGE : 0));
+        buffer.putInt(storedValue == null ? TOMBSTONE : valueBytes.length);
+        buffer.putInt(ownerBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(ownerBytes);
+        if (expiresAt != 0)
+            buffer.putLong(expiresAt);
+        buffer.put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), CHECKSUM_SIZE, buffer.capacity() - CHECKSUM_SIZE);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * reads the next record from the log.
+     * A record whose lengths reach past the end of the log is incomplete, so a corrupted length never allocates
+     * more than the rest of the log, while a complete record of any size is verified by its checksum.
+     * @param in the input positioned at the start of a record.
+     * @param remaining the bytes of the log from the start of the record on.
+     * @return the record, null if the end of the log, an incomplete or a corrupted record was reached.
+     * @throws IOException if the log cannot be read.
+     */
+    public static LogRecord read(DataInput in, long remaining) throws IOException {
+        try {
+            int checksum = in.readInt();
+            int keyField = in.readInt();
+            int valueLength = in.readInt();
+            int ownerLength = in.readInt();
+            int keyLength = keyField & ~FLAGS;
+            boolean compressed = (keyField & COMPRESSED) != 0;
+            if (keyLength < 0 || keyLength > MAX_KEY_LENGTH || valueLength < TOMBSTONE
+                    || ownerLength < 0 || ownerLength > MAX_OWNER_LENGTH)
+                return null;
+            long recordSize = (long) HEADER_SIZE + keyLength + ownerLength + ((keyField & EXPIRES) != 0 ? EXPIRY_SIZE : 0)
+                    + Math.max(valueLength, 0);
+            if (recordSize > remaining)
+                return null;
+            byte[] keyBytes = new byte[keyLength];
+            in.readFully(keyBytes);
+            byte[] ownerBytes = new byte[ownerLength];
+            in.readFully(ownerBytes);
+            long expiresAt = (keyField & EXPIRES) != 0 ? in.readLong() : 0;
+            byte[] valueBytes = new byte[Math.max(valueLength, 0)];
+            in.readFully(valueBytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(HEADER_SIZE - CHECKSUM_SIZE).putInt(keyField).putInt(valueLength).putInt(ownerLength).array());
+            crc.update(keyBytes);
+            crc.update(ownerBytes);
+            if ((keyField & EXPIRES) != 0)
+                crc.update(ByteBuffer.allocate(EXPIRY_SIZE).putLong(expiresAt).array());
+            crc.update(valueBytes);
+            if ((int) crc.getValue() != checksum)
+                return null;
+
+            String owner = ownerLength > 0 ? new String(ownerBytes, StandardCharsets.UTF_8) : null;
+            // values are only decoded when asked for, replaying the log only needs their location
+            LogRecord record = new LogRecord(new String(keyBytes, StandardCharsets.UTF_8), valueLength != TOMBSTONE ? valueBytes : null,
+                    compressed, owner, expiresAt);
+            record.range = (keyField & RANGE) != 0;
+            return record;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the value, decompressed if it is stored compressed, null for a tombstone.
+     */
+    public String getValue() {
+        return storedValue == null ? null : Compression.decode(storedValue, compressed);
+    }
+
+    /**
+     * @return the value bytes as they are stored in the log, null for a tombstone.
+     */
+    public byte[] getStoredValue() {
+        return storedValue;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return the user that is allowed to alter the key, null if anyone is.
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    public boolean isTombstone() {
+        return storedValue == null;
+    }
+
+    /**
+     * @return true if the record deletes a range of keys instead of a single key.
+     */
+    public boolean isRangeTombstone() {
+        return range;
+    }
+
+    /**
+     * @return the number of bytes the record occupies in the log.
+     */
+    public int size() {
+        return valueOffset() + valueLength();
+    }
+
+    /**
+     * @return the position of the value bytes relative to the start of the record.
+     */
+    public int valueOffset() {
+        return HEADER_SIZE + keyLength + ownerLength + (expiresAt != 0 ? EXPIRY_SIZE : 0);
+    }
+
+    /**
+     * @return the number of value bytes as stored in the log, 0 for a tombstone.
+     */
+    public int valueLength() {
+        return storedValue == null ? 0 : storedValue.length;
+    }
+}
@@ -0,0 +1,65 @@
+package de.tum.i13.server.storage;
+
+import java.util.HashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Snapshot of the log storage engine: a copy of the key directory of every partition.
+ * The values are read from the segments when they are needed, the compaction keeps the segments until the snapshot is closed.
+ */
+class LogSnapshot implements StorageSnapshot {
+    private LogStorageEngine engine;
+    private KeyDir[] dirs;
+    private boolean closed;
+
+    /**
+     * @param engine the engine the snapshot was taken of, which counts the snapshot as open already.
+     * @param dirs the copied key directories, indexed like the partitions.
+     */
+    LogSnapshot(LogStorageEngine engine, KeyDir[] dirs) {
+        this.engine = engine;
+        this.dirs = dirs;
+    }
+
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners,
+                                                        HashMap<String, byte[]> compressed, HashMap<String, Long> expiries) {
+        checkOpen();
+        HashMap<String, String> res = new HashMap<>();
+        LogPartition[] partitions = this.engine.getPartitions();
+        this.engine.forEachPartition(predHash, predHashEnd, (i, rangeStart, rangeEnd) ->
+                partitions[i].collect(this.dirs[i], res, owners, compressed, expiries, rangeStart, rangeEnd));
+        return res;
+    }
+
+    @Override
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String, String> consumer) {
+        checkOpen();
+        LogPartition[] partitions = this.engine.getPartitions();
+        this.engine.forEachPartition(predHash, predHashEnd, (i, rangeStart, rangeEnd) ->
+                partitions[i].scan(this.dirs[i], rangeStart, rangeEnd, consumer));
+    }
+
+    @Override
+    public int size() {
+        checkOpen();
+        int size = 0;
+        for (KeyDir dir : this.dirs)
+            size += dir.size();
+        return size;
+    }
+
+    private void checkOpen() {
+        if (this.closed)
+            throw new IllegalStateException("The snapshot is closed");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.dirs = null;
+        this.engine.closeSnapshot();
+    }
+}
@@ -0,0 +1,539 @@
+package de.tum.i13.server.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Metadata;
+
+/**
+ * Bitcask-style storage engine: every put and delete is appended to the active segment of the data log
+ * and an in-memory key directory maps each live key to the location of its latest value.
+ * Writes therefore cost O(value size) and reads a single positioned read, regardless of how many keys are stored.
+ * Sealed segments are merged in the background by the Compactor to drop superseded values and tombstones.
+ *
+ * The log is split into partitions by the MD5 hash of the keys, the same hash that places keys on the ring.
+ * Every partition covers an equally sized hash range and lives in its own folder, so a range handoff takes
+ * all partitions inside the range as a whole and reads the partitions at its boundaries in hash order.
+ *
+ * Keys with a time to live are stored with their expiry and scheduled in a timer wheel, expired keys are
+ * deleted on their next read or by the ExpirySweeper, whichever comes first.
+ */
+public class LogStorageEngine implements StorageEngine {
+    public static Logger logger = Logger.getLogger(LogStorageEngine.class.getName());
+
+    private static final BigInteger RING_SIZE = BigInteger.ONE.shiftLeft(128);
+
+    private Path path;
+    private long maxSegmentSize;
+    private LogPartition[] partitions;
+    private GroupCommitter groupCommitter;
+    private CompactionStats compactionStats;
+    private AtomicLong userBytesWritten;
+    private long compactionIoBudget;
+    private boolean mmapReads;
+    private Compression compression;
+    private TimerWheel expiryWheel;
+    private AtomicInteger openSnapshots;
+    private Timer timer;
+
+    public LogStorageEngine(Path path) {
+        this(path, Constants.MAX_SEGMENT_SIZE, FsyncPolicy.parse(Constants.DEFAULT_FSYNC_POLICY));
+    }
+
+    public LogStorageEngine(Path path, long maxSegmentSize) {
+        this(path, maxSegmentSize, FsyncPolicy.parse(Constants.DEFAULT_FSYNC_POLICY));
+    }
+
+    public LogStorageEngine(Path path, long maxSegmentSize, FsyncPolicy fsyncPolicy) {
+        this(path, maxSegmentSize, fsyncPolicy, false);
+    }
+
+    /**
+     * @param path the folder where the partition folders reside.
+     * @param maxSegmentSize the size at which the active segment of a partition is sealed.
+     * @param fsyncPolicy the durability policy of the appends.
+     * @param mmapReads true to serve reads of sealed segments from memory mappings instead of positioned reads.
+     */
+    public LogStorageEngine(Path path, long maxSegmentSize, FsyncPolicy fsyncPolicy, boolean mmapReads) {
+        this(path, maxSegmentSize, fsyncPolicy, mmapReads, Compression.none());
+    }
+
+    /**
+     * @param path the folder where the partition folders reside.
+     * @param maxSegmentSize the size at which the active segment of a partition is sealed.
+     * @param fsyncPolicy the durability policy of the appends.
+     * @param mmapReads true to serve reads of sealed segments from memory mappings instead of positioned reads.
+     * @param compression the compression of the values that are put, values of any compression are read.
+     */
+    public LogStorageEngine(Path path, long maxSegmentSize, FsyncPolicy fsyncPolicy, boolean mmapReads, Compression compression) {
+        this.path = path;
+        this.maxSegmentSize = maxSegmentSize;
+        this.mmapReads = mmapReads;
+        this.compression = compression;
+        this.compactionStats = new CompactionStats();
+        this.userBytesWritten = new AtomicLong();
+        this.compactionIoBudget = Constants.COMPACTION_IO_BUDGET;
+        this.groupCommitter = new GroupCommitter(fsyncPolicy);
+        this.expiryWheel = new TimerWheel(Constants.EXPIRY_WHEEL_SLOTS, Constants.EXPIRY_SWEEP_INTERVAL);
+        this.openSnapshots = new AtomicInteger();
+        this.partitions = new LogPartition[Constants.NUMBER_OF_PARTITIONS];
+        BigInteger partitionSize = RING_SIZE.divide(BigInteger.valueOf(Constants.NUMBER_OF_PARTITIONS));
+        for (int i = 0; i < this.partitions.length; i++) {
+            BigInteger start = partitionSize.multiply(BigInteger.valueOf(i));
+            this.partitions[i] = new LogPartition(i, this.path.resolve(LogPartition.directoryName(i)),
+                    start, start.add(partitionSize), this);
+        }
+        recover();
+        if (!fsyncPolicy.isNever())
+            this.groupCommitter.start();
+        migrateUnpartitionedSegments();
+        this.timer = new Timer("compactor", true);
+        this.timer.schedule(new Compactor(this, Constants.COMPACTION_GARBAGE_RATIO),
+                Constants.COMPACTION_INTERVAL, Constants.COMPACTION_INTERVAL);
+        this.timer.schedule(new ExpirySweeper(this, this.expiryWheel, Constants.EXPIRY_BATCH_SIZE),
+                Constants.EXPIRY_SWEEP_INTERVAL, Constants.EXPIRY_SWEEP_INTERVAL);
+    }
+
+    /**
+     * loads all partitions in parallel on a fork-join pool with a worker per core. Every partition indexes its
+     * segments as further fork-join tasks, verifies the record checksums and cuts off a torn or corrupted tail,
+     * independently of the other partitions. Sealed segments with a hint file are indexed without reading their values.
+     */
+    private void recover() {
+        long start = System.currentTimeMillis();
+        ForkJoinPool recovery = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<?>> loads = new ArrayList<>();
+            for (LogPartition partition : this.partitions)
+                loads.add(recovery.submit(() -> {
+                    partition.load();
+                    return null;
+                }));
+            for (Future<?> load : loads)
+                load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while opening the data log in " + this.path);
+        } catch (ExecutionException e) {
+            logger.severe("Could not open the data log in " + this.path);
+            if (e.getCause() instanceof IOException)
+                throw new UncheckedIOException((IOException) e.getCause());
+            if (e.getCause() instanceof UncheckedIOException)
+                throw (UncheckedIOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            recovery.shutdown();
+        }
+        long millis = Math.max(System.currentTimeMillis() - start, 1);
+        int keys = 0;
+        long bytes = 0;
+        int hinted = 0;
+        for (LogPartition partition : this.partitions) {
+            keys += partition.size();
+            bytes += partition.getLoadedBytes();
+            hinted += partition.getHintedSegments();
+        }
+        logger.info(String.format("Rebuilt the key directory of %d keys from %d partitions (%d segments from hint files) in %d ms: %.1f MB/s, %.0f keys/s",
+                keys, this.partitions.length, hinted, millis, bytes / 1048576.0 / (millis / 1000.0), keys / (millis / 1000.0)));
+    }
+
+    /**
+     * moves the keys of segments written before the log was partitioned into their partitions.
+     * The old segments are only deleted once all keys were written again, so an interrupted migration is repeated.
+     */
+    private void migrateUnpartitionedSegments() {
+        File[] files = this.path.toFile().listFiles();
+        if (files == null)
+            return;
+        List<File> oldSegments = new ArrayList<>();
+        for (File file : files) {
+            if (Segment.parseId(file.getName()) >= 0)
+                oldSegments.add(file);
+        }
+        if (oldSegments.isEmpty())
+            return;
+        logger.info("Migrating " + oldSegments.size() + " unpartitioned segments");
+        try {
+            LogPartition unpartitioned = new LogPartition(-1, this.path, BigInteger.ZERO, RING_SIZE, this);
+            unpartitioned.load();
+            HashMap<String, String> pairs = new HashMap<>();
+            HashMap<String, String> owners = new HashMap<>();
+            unpartitioned.collect(pairs, owners, null, null, null, null);
+            // segments written before the log was partitioned hold no expiries
+            for (Map.Entry<String, String> pair : pairs.entrySet())
+                put(pair.getKey(), pair.getValue(), owners.get(pair.getKey()));
+            unpartitioned.close();
+            for (File file : this.path.toFile().listFiles()) {
+                if (Segment.parseId(file.getName()) >= 0)
+                    Files.delete(file.toPath());
+            }
+        } catch (IOException e) {
+            logger.severe("Could not migrate the unpartitioned data log in " + this.path);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param key the key.
+     * @return the index of the partition whose hash range contains the key.
+     */
+    public static int partitionIndex(String key) {
+        int firstByte = Integer.parseInt(Metadata.generateHash(key).substring(0, 2), 16);
+        return firstByte * Constants.NUMBER_OF_PARTITIONS / 256;
+    }
+
+    private LogPartition partition(String key) {
+        return this.partitions[partitionIndex(key)];
+    }
+
+    @Override
+    public String get(String key) {
+        return partition(key).get(key);
+    }
+
+    @Override
+    public String getOwner(String key) {
+        return partition(key).getOwner(key);
+    }
+
+    @Override
+    public boolean put(String key, String value) {
+        return put(key, value, null);
+    }
+
+    @Override
+    public boolean put(String key, String value, String owner) {
+        return put(key, value, owner, 0);
+    }
+
+    @Override
+    public boolean put(String key, String value, String owner, long expiresAt) {
+        return partition(key).put(key, value, owner, expiresAt);
+    }
+
+    @Override
+    public long getExpiry(String key) {
+        return partition(key).getExpiry(key);
+    }
+
+    @Override
+    public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt) {
+        return partition(key).putCompressed(key, compressedValue, owner, expiresAt);
+    }
+
+    /**
+     * writes the pairs of every partition with a single append per segment, the partitions are written in parallel.
+     */
+    @Override
+    public void bulkLoad(Map<String, String> pairs, String owner) {
+        long start = System.currentTimeMillis();
+        HashMap<Integer, List<Map.Entry<String, String>>> pairsByPartition = new HashMap<>();
+        for (Map.Entry<String, String> pair : pairs.entrySet())
+            pairsByPartition.computeIfAbsent(partitionIndex(pair.getKey()), i -> new ArrayList<>()).add(pair);
+        long ticket = pairsByPartition.entrySet().parallelStream()
+                .mapToLong(partitionPairs -> this.partitions[partitionPairs.getKey()].bulkLoad(partitionPairs.getValue(), owner))
+                .max().orElse(0);
+        try {
+            this.groupCommitter.awaitDurable(ticket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.fine("Loaded " + pairs.size() + " pairs into " + pairsByPartition.size() + " partitions in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return partition(key).delete(key);
+    }
+
+    @Override
+    public void deleteExpired(Collection<String> keys) {
+        HashMap<Integer, List<String>> keysByPartition = new HashMap<>();
+        for (String key : keys)
+            keysByPartition.computeIfAbsent(partitionIndex(key), i -> new ArrayList<>()).add(key);
+        for (Map.Entry<Integer, List<String>> partitionKeys : keysByPartition.entrySet())
+            this.partitions[partitionKeys.getKey()].deleteExpired(partitionKeys.getValue());
+    }
+
+    /**
+     * collects the pairs of a hash range. Partitions that lie completely inside the range are copied as a whole,
+     * the partitions at the boundaries of the range look up the keys of the range in their hash ordered index.
+     * Either way no key is hashed, so the extraction costs time proportional to the size of the range.
+     */
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd) {
+        return getTransferedKVPairs(predHash, predHashEnd, null);
+    }
+
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners) {
+        return getTransferedKVPairs(predHash, predHashEnd, owners, null, null);
+    }
+
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners,
+                                                        HashMap<String, byte[]> compressed, HashMap<String, Long> expiries) {
+        HashMap<String, String> res = new HashMap<>();
+        forEachPartition(predHash, predHashEnd, (i, rangeStart, rangeEnd) ->
+                this.partitions[i].collect(res, owners, compressed, expiries, rangeStart, rangeEnd));
+        logger.fine("Collected " + res.size() + " pairs of the range " + predHash + " - " + predHashEnd);
+        return res;
+    }
+
+    /**
+     * reads the pairs of the range one at a time in the order of the partitions, so a scan does not hold the range in memory.
+     */
+    @Override
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String, String> consumer) {
+        forEachPartition(predHash, predHashEnd, (i, rangeStart, rangeEnd) ->
+                this.partitions[i].scan(rangeStart, rangeEnd, consumer));
+    }
+
+    @Override
+    public void rangeScanStored(String predHash, String predHashEnd, StoredValueConsumer consumer) {
+        forEachPartition(predHash, predHashEnd, (i, rangeStart, rangeEnd) ->
+                this.partitions[i].scanStored(rangeStart, rangeEnd, consumer));
+    }
+
+    /**
+     * copies the key directories of the partitions, which costs time proportional to the number of keys but reads no value.
+     * The compaction is paused until the snapshot is closed, so the values it points to stay in place.
+     * The partitions are copied one after the other, so a write that runs concurrently may be part of the snapshot
+     * for some partitions only.
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        this.openSnapshots.incrementAndGet();
+        KeyDir[] dirs = new KeyDir[this.partitions.length];
+        for (int i = 0; i < this.partitions.length; i++)
+            dirs[i] = this.partitions[i].snapshotKeyDir();
+        return new LogSnapshot(this, dirs);
+    }
+
+    /**
+     * @return the number of keys, including expired keys that were not deleted yet.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (LogPartition partition : this.partitions)
+            size += partition.size();
+        return size;
+    }
+
+    /**
+     * calls the action for every partition that holds keys of a hash range. Partitions that lie completely inside the range
+     * are passed without a range, the partitions at the boundaries of the range with the range.
+     * @param predHash the start hash of the range or "ALL" for every partition.
+     * @param predHashEnd the end hash of the range.
+     */
+    void forEachPartition(String predHash, String predHashEnd, PartitionAction action) {
+        if (predHash.equals("ALL")) {
+            for (int i = 0; i < this.partitions.length; i++)
+                action.apply(i, null, null);
+            return;
+        }
+        BigInteger start = new BigInteger(predHash, 16);
+        BigInteger end = new BigInteger(predHashEnd, 16);
+        for (int i = 0; i < this.partitions.length; i++) {
+            switch (coverage(this.partitions[i], start, end)) {
+                case FULL:
+                    action.apply(i, null, null);
+                    break;
+                case PARTIAL:
+                    action.apply(i, predHash, predHashEnd);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * determines how much of a partition lies in the range [start, end) of the ring,
+     * with the same wrap around semantics as Metadata.hashInRange.
+     */
+    private static Coverage coverage(LogPartition partition, BigInteger start, BigInteger end) {
+        BigInteger partitionStart = partition.getStart();
+        BigInteger partitionEnd = partition.getEnd();
+        if (start.equals(end))
+            return Coverage.FULL;
+        if (start.compareTo(end) < 0) {
+            if (start.compareTo(partitionStart) <= 0 && partitionEnd.compareTo(end) <= 0)
+                return Coverage.FULL;
+            if (partitionEnd.compareTo(start) <= 0 || partitionStart.compareTo(end) >= 0)
+                return Coverage.NONE;
+            return Coverage.PARTIAL;
+        }
+        // the range wraps around: [start, 2^128) and [0, end)
+        if (partitionStart.compareTo(start) >= 0 || partitionEnd.compareTo(end) <= 0)
+            return Coverage.FULL;
+        if (partitionStart.compareTo(end) >= 0 && partitionEnd.compareTo(start) <= 0)
+            return Coverage.NONE;
+        return Coverage.PARTIAL;
+    }
+
+    @Override
+    public HashMap<String, String> getAllPairs() {
+        return getTransferedKVPairs("ALL", "");
+    }
+
+    @Override
+    public void deleteTransferedKVPairs(HashMap<String, String> data) {
+        HashMap<Integer, List<String>> keysByPartition = new HashMap<>();
+        for (String key : data.keySet())
+            keysByPartition.computeIfAbsent(partitionIndex(key), i -> new ArrayList<>()).add(key);
+        for (Map.Entry<Integer, List<String>> keys : keysByPartition.entrySet())
+            this.partitions[keys.getKey()].deleteAll(keys.getValue());
+    }
+
+    /**
+     * writes a single range tombstone into every partition that holds keys of the range, instead of a tombstone per key,
+     * and waits once until all of them are durable. Partitions inside the range are cleared as a whole.
+     */
+    @Override
+    public void deleteRange(String predHash, String predHashEnd) {
+        long[] ticket = {0};
+        forEachPartition(predHash, predHashEnd, (i, rangeStart, rangeEnd) ->
+                ticket[0] = Math.max(ticket[0], this.partitions[i].deleteRange(rangeStart, rangeEnd)));
+        try {
+            this.groupCommitter.awaitDurable(ticket[0]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * cancels the compaction and the expiry sweeps, makes the pending appends durable and closes the segments.
+     */
+    @Override
+    public void close() {
+        this.timer.cancel();
+        this.groupCommitter.close();
+        try {
+            for (LogPartition partition : this.partitions)
+                partition.close();
+        } catch (IOException e) {
+            logger.warning("Could not close the data log in " + this.path);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the share of bytes in the sealed segments of all partitions that belong to superseded values or tombstones.
+     */
+    public double garbageRatio() {
+        long size = 0;
+        long dead = 0;
+        for (LogPartition partition : this.partitions) {
+            size += partition.sealedBytes();
+            dead += partition.deadBytes();
+        }
+        return size == 0 ? 0 : (double) dead / size;
+    }
+
+    /**
+     * compacts the sealed segments of every partition.
+     */
+    public void compact() {
+        for (LogPartition partition : this.partitions)
+            partition.compact();
+    }
+
+    /**
+     * writes the hint files of all sealed segments that have none.
+     */
+    public void writeMissingHints() {
+        for (LogPartition partition : this.partitions)
+            partition.writeMissingHints();
+    }
+
+    /**
+     * @return true while a snapshot is open, the compaction must not remove segments then.
+     */
+    boolean hasOpenSnapshots() {
+        return this.openSnapshots.get() > 0;
+    }
+
+    void closeSnapshot() {
+        this.openSnapshots.decrementAndGet();
+    }
+
+    LogPartition[] getPartitions() {
+        return partitions;
+    }
+
+    long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    boolean isMmapReads() {
+        return mmapReads;
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
+    TimerWheel getExpiryWheel() {
+        return expiryWheel;
+    }
+
+    GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+    long getCompactionIoBudget() {
+        return compactionIoBudget;
+    }
+
+    void addUserBytesWritten(long bytes) {
+        this.userBytesWritten.addAndGet(bytes);
+    }
+
+    public CompactionStats getCompactionStats() {
+        return compactionStats;
+    }
+
+    /**
+     * @return the bytes appended to the log by puts and deletes, used to compute the write amplification.
+     */
+    public long getUserBytesWritten() {
+        return userBytesWritten.get();
+    }
+
+    private enum Coverage {
+        NONE, PARTIAL, FULL
+    }
+
+    /**
+     * Action on the part of a partition that lies in a hash range.
+     */
+    interface PartitionAction {
+        /**
+         * @param partition the index of the partition.
+         * @param rangeStart the hash where the range starts, null if the whole partition lies in the range.
+         * @param rangeEnd the hash where the range ends.
+         */
+        void apply(int partition, String rangeStart, String rangeEnd);
+    }
+}
@@ -0,0 +1,211 @@
+package de.tum.i13.server.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Metadata;
+
+/**
+ * Storage engine that keeps all pairs in a hash map on the heap and nothing on disk,
+ * so the data is lost on restart. Meant for benchmarks, where it gives the throughput of the server
+ * without any storage cost to compare the other engines against.
+ * Range scans hash every key, as the map is not ordered by hash.
+ */
+public class MemoryStorageEngine implements StorageEngine {
+    private ConcurrentHashMap<String, Entry> entries;
+    private TimerWheel expiryWheel;
+    private Timer expiryTimer;
+
+    public MemoryStorageEngine() {
+        this.entries = new ConcurrentHashMap<>();
+        this.expiryWheel = new TimerWheel(Constants.EXPIRY_WHEEL_SLOTS, Constants.EXPIRY_SWEEP_INTERVAL);
+        this.expiryTimer = new Timer("expiry-sweeper", true);
+        this.expiryTimer.schedule(new ExpirySweeper(this, this.expiryWheel, Constants.EXPIRY_BATCH_SIZE),
+                Constants.EXPIRY_SWEEP_INTERVAL, Constants.EXPIRY_SWEEP_INTERVAL);
+    }
+
+    /**
+     * @return the live entry of the key, null if the key does not exist or expired.
+     */
+    private Entry liveEntry(String key) {
+        Entry entry = this.entries.get(key);
+        return entry == null || entry.isExpired(System.currentTimeMillis()) ? null : entry;
+    }
+
+    @Override
+    public String get(String key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.isExpired(System.currentTimeMillis())) {
+            this.entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public String getOwner(String key) {
+        Entry entry = liveEntry(key);
+        return entry == null ? null : entry.owner;
+    }
+
+    @Override
+    public long getExpiry(String key) {
+        Entry entry = liveEntry(key);
+        return entry == null ? 0 : entry.expiresAt;
+    }
+
+    @Override
+    public boolean put(String key, String value) {
+        return put(key, value, null, 0);
+    }
+
+    @Override
+    public boolean put(String key, String value, String owner) {
+        return put(key, value, owner, 0);
+    }
+
+    @Override
+    public boolean put(String key, String value, String owner, long expiresAt) {
+        Entry previous = this.entries.put(key, new Entry(value, owner, expiresAt));
+        if (expiresAt != 0)
+            this.expiryWheel.schedule(key, expiresAt);
+        return previous != null && !previous.isExpired(System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt) {
+        return put(key, Compression.decode(compressedValue, true), owner, expiresAt);
+    }
+
+    @Override
+    public void bulkLoad(Map<String, String> pairs, String owner) {
+        for (Map.Entry<String, String> pair : pairs.entrySet())
+            this.entries.put(pair.getKey(), new Entry(pair.getValue(), owner, 0));
+    }
+
+    @Override
+    public boolean delete(String key) {
+        Entry previous = this.entries.remove(key);
+        return previous != null && !previous.isExpired(System.currentTimeMillis());
+    }
+
+    @Override
+    public void deleteExpired(Collection<String> keys) {
+        long now = System.currentTimeMillis();
+        for (String key : keys)
+            this.entries.computeIfPresent(key, (k, entry) -> entry.isExpired(now) ? null : entry);
+    }
+
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd) {
+        return getTransferedKVPairs(predHash, predHashEnd, null);
+    }
+
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners) {
+        return getTransferedKVPairs(predHash, predHashEnd, owners, null, null);
+    }
+
+    /**
+     * the values are kept uncompressed, so compressed stays empty.
+     */
+    @Override
+    public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners,
+                                                        HashMap<String, byte[]> compressed, HashMap<String, Long> expiries) {
+        HashMap<String, String> res = new HashMap<>();
+        forEachLive(predHash, predHashEnd, (key, entry) -> {
+            res.put(key, entry.value);
+            if (owners != null && entry.owner != null)
+                owners.put(key, entry.owner);
+            if (expiries != null && entry.expiresAt != 0)
+                expiries.put(key, entry.expiresAt);
+        });
+        return res;
+    }
+
+    @Override
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String, String> consumer) {
+        forEachLive(predHash, predHashEnd, (key, entry) -> consumer.accept(key, entry.value));
+    }
+
+    /**
+     * the values are kept as strings, so they are passed UTF-8 encoded and uncompressed.
+     */
+    @Override
+    public void rangeScanStored(String predHash, String predHashEnd, StoredValueConsumer consumer) {
+        forEachLive(predHash, predHashEnd, (key, entry) ->
+                consumer.accept(key, entry.value.getBytes(StandardCharsets.UTF_8), false, entry.expiresAt));
+    }
+
+    private void forEachLive(String predHash, String predHashEnd, BiConsumer<String, Entry> consumer) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+            if (!entry.getValue().isExpired(now) && (predHash.equals("ALL") || Metadata.hashInRange(entry.getKey(), predHash, predHashEnd)))
+                consumer.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * copies the pairs, a concurrent write may or may not be part of the snapshot.
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        HashMap<String, String> owners = new HashMap<>();
+        HashMap<String, Long> expiries = new HashMap<>();
+        HashMap<String, String> pairs = getTransferedKVPairs("ALL", "", owners, null, expiries);
+        return new CopySnapshot(pairs, owners, expiries);
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public HashMap<String, String> getAllPairs() {
+        return getTransferedKVPairs("ALL", "");
+    }
+
+    @Override
+    public void deleteTransferedKVPairs(HashMap<String, String> data) {
+        for (String key : data.keySet())
+            this.entries.remove(key);
+    }
+
+    @Override
+    public void deleteRange(String predHash, String predHashEnd) {
+        if (predHash.equals("ALL"))
+            this.entries.clear();
+        else
+            this.entries.keySet().removeIf(key -> Metadata.hashInRange(key, predHash, predHashEnd));
+    }
+
+    @Override
+    public void close() {
+        this.expiryTimer.cancel();
+    }
+
+    private static class Entry {
+        private final String value;
+        private final String owner;
+        private final long expiresAt;
+
+        Entry(String value, String owner, long expiresAt) {
+            this.value = value;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package de.tum.i13.server.storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tum.i13.shared.Constants;
+
+/**
+ * A single data file of the log. Records are only ever appended to the active segment,
+ * older segments are immutable and only read.
+ */
+public class Segment {
+    private int id;
+    private Path path;
+    private FileChannel channel;
+    private long size;
+    private AtomicLong deadBytes;
+    private volatile MappedByteBuffer mapped;
+
+    Segment(int id, Path path) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = this.channel.size();
+        this.deadBytes = new AtomicLong();
+    }
+
+    /**
+     * opens the segment with the given id, creating its file if needed.
+     * @param dir the folder where the segment files reside.
+     * @param id the id of the segment.
+     * @return the opened segment.
+     */
+    public static Segment open(Path dir, int id) throws IOException {
+        return new Segment(id, dir.resolve(fileName(id)));
+    }
+
+    public static String fileName(int id) {
+        return String.format("%s%06d%s", Constants.SEGMENT_PREFIX, id, Constants.SEGMENT_SUFFIX);
+    }
+
+    /**
+     * parses the segment id out of a file name.
+     * @param fileName the name of the file.
+     * @return the id, -1 if the file is not a segment.
+     */
+    public static int parseId(String fileName) {
+        if (!fileName.startsWith(Constants.SEGMENT_PREFIX) || !fileName.endsWith(Constants.SEGMENT_SUFFIX))
+            return -1;
+        try {
+            return Integer.parseInt(fileName.substring(Constants.SEGMENT_PREFIX.length(), fileName.length() - Constants.SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * reads all complete records of the segment in order.
+     * @param consumer called with every record and its offset in the segment.
+     * @return the offset right behind the last complete record.
+     */
+    public long scan(RecordConsumer consumer) throws IOException {
+        long offset = 0;
+        try (FileChannel channel = FileChannel.open(this.path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            long length = channel.size();
+            LogRecord record;
+            while ((record = LogRecord.read(in, length - offset)) != null) {
+                consumer.accept(record, offset);
+                offset += record.size();
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * appends the bytes at the end of the segment.
+     * @param bytes the encoded record.
+     * @return the offset where the bytes were written.
+     */
+    public long append(byte[] bytes) throws IOException {
+        long offset = this.size;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+            this.channel.write(buffer, offset + buffer.position());
+        this.size += bytes.length;
+        return offset;
+    }
+
+    /**
+     * maps the segment into memory, so reads are served from the page cache without a read call.
+     * Only sealed segments may be mapped, as the mapping does not grow with appends.
+     * Segments too large for a single mapping keep using positioned reads.
+     */
+    public void map() throws IOException {
+        if (this.mapped == null && this.size > 0 && this.size <= Integer.MAX_VALUE)
+            this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.size);
+    }
+
+    /**
+     * reads a value from the mapping if the segment is mapped, with a single positioned read otherwise.
+     * @param offset the offset of the value bytes in the segment.
+     * @param length the number of value bytes.
+     * @return the value bytes as stored in the segment.
+     */
+    public byte[] read(long offset, int length) throws IOException {
+        MappedByteBuffer mapping = this.mapped;
+        if (mapping != null) {
+            byte[] value = new byte[length];
+            ByteBuffer view = mapping.duplicate();
+            view.position((int) offset);
+            view.get(value);
+            return value;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of segment " + this.path);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * cuts the segment off at the given size.
+     * @param size the new size of the segment.
+     */
+    public void truncate(long size) throws IOException {
+        this.channel.truncate(size);
+        this.size = size;
+    }
+
+    /**
+     * forces all appended records of the segment to the disk.
+     * A segment that was closed by a compaction was already forced when it was sealed.
+     */
+    public void force() throws IOException {
+        try {
+            this.channel.force(false);
+        } catch (ClosedChannelException e) {
+            // nothing left to force
+        }
+    }
+
+    public void close() throws IOException {
+        // the mapping itself is released once it is garbage collected
+        this.mapped = null;
+        this.channel.close();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of records in this segment that were superseded or deleted.
+     */
+    public long getDeadBytes() {
+        return deadBytes.get();
+    }
+
+    public void addDeadBytes(long bytes) {
+        this.deadBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Callback for the records read by a scan.
+     */
+    public interface RecordConsumer {
+        void accept(LogRecord record, long offset) throws IOException;
+    }
+}
@@ -0,0 +1,200 @@
+package de.tum.i13.server.storage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage backend used by the PersistenceKVStore to persist the key-value pairs of a server.
+ * The backend is chosen with the storage option of the Config, see PersistenceKVStore.createStorageEngine.
+ * A key may have a time to live, given as the time in milliseconds since the epoch at which it expires (0 if it never does).
+ * Expired keys are neither returned nor transfered and are deleted by the engine in the background.
+ */
+public interface StorageEngine {
+
+    /**
+     * gets the value for a key from the storage.
+     *
+     * @param key the key that identifies the given value.
+     * @return the value, which is indexed by the given key, null if not found.
+     */
+    public String get(String key);
+
+    /**
+     * gets the owner of a key from the storage.
+     *
+     * @param key the key that identifies the value.
+     * @return the user that is allowed to alter the key, null if the key has no owner or is not found.
+     */
+    public String getOwner(String key);
+
+    /**
+     * Inserts a key-value pair without owner into the storage.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key.
+     * @return true if an existing value was updated, false if the key was inserted.
+     */
+    public boolean put(String key, String value);
+
+    /**
+     * Inserts a key-value pair together with its owner into the storage.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @return true if an existing value was updated, false if the key was inserted.
+     */
+    public boolean put(String key, String value, String owner);
+
+    /**
+     * Inserts a key-value pair together with its owner and expiry into the storage.
+     *
+     * @param key   the key that identifies the given value.
+     * @param value the value that is indexed by the given key.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return true if an existing value was updated, false if the key was inserted.
+     */
+    public boolean put(String key, String value, String owner, long expiresAt);
+
+    /**
+     * gets the expiry of a key from the storage.
+     *
+     * @param key the key that identifies the value.
+     * @return the time in milliseconds since the epoch at which the key expires, 0 if it never does or is not found.
+     */
+    public long getExpiry(String key);
+
+    /**
+     * Inserts a value that was compressed by Compression, e.g. on another server, together with its owner.
+     * Engines that compress their values store it without compressing it again.
+     *
+     * @param key   the key that identifies the given value.
+     * @param compressedValue the compressed value.
+     * @param owner the user that is allowed to alter the key, null if anyone is.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     * @return true if an existing value was updated, false if the key was inserted.
+     */
+    public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt);
+
+    /**
+     * Inserts a batch of key-value pairs with the same owner at once, e.g. to seed the server with a dataset.
+     * The batch is written with as few writes as the engine allows and is waited for only once until it is durable.
+     * Existing keys are overwritten and lose their expiry.
+     *
+     * @param pairs the key-value pairs.
+     * @param owner the user that is allowed to alter the keys, null if anyone is.
+     */
+    public void bulkLoad(Map<String,String> pairs, String owner);
+
+    /**
+     * Deletes the value for a given key from the storage.
+     *
+     * @param key the key that identifies the value.
+     * @return true if a value was deleted, false if the key was not found.
+     */
+    public boolean delete(String key);
+
+    /**
+     * Deletes the given keys that are expired by now, keys that were written again meanwhile are kept.
+     *
+     * @param keys the keys that may have expired.
+     */
+    public void deleteExpired(Collection<String> keys);
+
+    /**
+     * returns the key-value pairs whose key hash lies in the given range.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @return map of the key-value pairs in the range.
+     */
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd);
+
+    /**
+     * returns the key-value pairs whose key hash lies in the given range together with their owners.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @param owners filled with the owners of the returned keys that have one.
+     * @return map of the key-value pairs in the range.
+     */
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String,String> owners);
+
+    /**
+     * returns the key-value pairs whose key hash lies in the given range together with their owners,
+     * values that are stored compressed are returned compressed, so a transfer does not inflate them.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @param owners filled with the owners of the returned keys that have one, may be null.
+     * @param compressed filled with the pairs of the range whose values are stored compressed, may be null.
+     * @param expiries filled with the expiries of the returned keys that have one, may be null.
+     * @return map of the other key-value pairs in the range, all of them if compressed is null.
+     */
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String,String> owners,
+                                                       HashMap<String,byte[]> compressed, HashMap<String,Long> expiries);
+
+    /**
+     * passes the key-value pairs whose key hash lies in the given range to the consumer, expired keys are skipped.
+     * Pairs that are written during the scan may or may not be passed.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @param consumer receives the key and the value of every pair.
+     */
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String,String> consumer);
+
+    /**
+     * passes the pairs whose key hash lies in the given range to the consumer with their values as they are stored,
+     * so compressed values are not inflated. Expired keys are skipped, pairs that are written during the scan may or may not be passed.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @param consumer receives every pair with its stored value and expiry time.
+     */
+    public void rangeScanStored(String predHash, String predHashEnd, StoredValueConsumer consumer);
+
+    /**
+     * takes a snapshot of all key-value pairs, which has to be closed once it is no longer needed.
+     *
+     * @return the snapshot.
+     */
+    public StorageSnapshot snapshot();
+
+    /**
+     * @return the number of stored keys, which may include expired keys that were not deleted yet.
+     */
+    public int size();
+
+    /**
+     * returns the map of the all key-value pairs.
+     *
+     * @return map of the key-value pairs.
+     */
+    public HashMap<String,String> getAllPairs();
+
+    /**
+     * deletes the transfered key-value pairs and their owners.
+     *
+     * @param data map of the transfered key-value pairs.
+     */
+    public void deleteTransferedKVPairs(HashMap<String,String> data);
+
+    /**
+     * deletes all key-value pairs whose key hash lies in the given range together with their owners,
+     * e.g. after the range was handed off to another server.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     */
+    public void deleteRange(String predHash, String predHashEnd);
+
+    /**
+     * stops the background work of the engine and releases its files, so the folder can be opened again.
+     * The engine must not be used afterwards.
+     */
+    public void close();
+}
@@ -0,0 +1,45 @@
+package de.tum.i13.server.storage;
+
+import java.util.HashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only view of the pairs of a storage engine as they were when the snapshot was taken,
+ * writes to the engine after that are not visible in it.
+ * A snapshot may hold on to resources of the engine (e.g. log segments that the compaction must keep) until it is closed.
+ */
+public interface StorageSnapshot extends AutoCloseable {
+
+    /**
+     * returns the key-value pairs of the snapshot whose key hash lies in the given range.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @param owners filled with the owners of the returned keys that have one, may be null.
+     * @param compressed filled with the pairs of the range whose values are stored compressed, may be null.
+     * @param expiries filled with the expiries of the returned keys that have one, may be null.
+     * @return map of the other key-value pairs in the range, all of them if compressed is null.
+     */
+    public HashMap<String,String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String,String> owners,
+                                                       HashMap<String,byte[]> compressed, HashMap<String,Long> expiries);
+
+    /**
+     * passes the key-value pairs of the snapshot whose key hash lies in the given range to the consumer one at a time.
+     *
+     * @param predHash the start hash of the range or "ALL" for every pair.
+     * @param predHashEnd the end hash of the range.
+     * @param consumer receives the key and the value of every pair.
+     */
+    public void rangeScan(String predHash, String predHashEnd, BiConsumer<String,String> consumer);
+
+    /**
+     * @return the number of keys in the snapshot.
+     */
+    public int size();
+
+    /**
+     * releases the resources of the engine the snapshot holds on to.
+     */
+    @Override
+    public void close();
+}
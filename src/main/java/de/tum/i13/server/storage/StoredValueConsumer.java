@@ -0,0 +1,14 @@
+package de.tum.i13.server.storage;
+
+/**
+ * Callback for the pairs of a scan that passes the values as they are stored, see StorageEngine.rangeScanStored.
+ */
+public interface StoredValueConsumer {
+    /**
+     * @param key the key of the pair.
+     * @param storedValue the value as stored, deflated if compressed is true and UTF-8 encoded otherwise.
+     * @param compressed whether the stored value is compressed.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires, 0 if it never does.
+     */
+    void accept(String key, byte[] storedValue, boolean compressed, long expiresAt);
+}
@@ -0,0 +1,88 @@
+package de.tum.i13.server.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timer wheel of the keys that expire: a ring of slots that each cover one tick,
+ * a key is kept in the slot of its expiry time modulo the ring.
+ * Scheduling costs O(1) and every tick only looks at the keys of one slot,
+ * keys that expire more than one turn of the ring later stay in their slot until their turn comes.
+ * The wheel may hold keys that were overwritten or deleted meanwhile, the caller checks them again.
+ */
+public class TimerWheel {
+    private final long tickMillis;
+    private final List<List<Timeout>> slots;
+    private long lastTick;
+
+    /**
+     * @param numberOfSlots the number of slots of the ring.
+     * @param tickMillis the time covered by a slot.
+     */
+    public TimerWheel(int numberOfSlots, long tickMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(numberOfSlots);
+        for (int i = 0; i < numberOfSlots; i++)
+            this.slots.add(new ArrayList<>());
+        this.lastTick = System.currentTimeMillis() / tickMillis - 1;
+    }
+
+    /**
+     * @param key the key.
+     * @param expiresAt the time in milliseconds since the epoch at which the key expires.
+     */
+    public synchronized void schedule(String key, long expiresAt) {
+        // keys that are due already go to the next slot that is swept
+        long tick = Math.max(expiresAt / this.tickMillis, this.lastTick + 1);
+        slot(tick).add(new Timeout(key, expiresAt));
+    }
+
+    /**
+     * moves the wheel forward to the given time.
+     * @param now the current time in milliseconds since the epoch.
+     * @return the keys that expired until now.
+     */
+    public synchronized List<String> advance(long now) {
+        List<String> due = new ArrayList<>();
+        long nowTick = now / this.tickMillis;
+        // after a long pause every slot is swept once
+        long from = Math.max(this.lastTick + 1, nowTick - this.slots.size() + 1);
+        for (long tick = from; tick <= nowTick; tick++) {
+            Iterator<Timeout> timeouts = slot(tick).iterator();
+            while (timeouts.hasNext()) {
+                Timeout timeout = timeouts.next();
+                if (timeout.expiresAt <= now) {
+                    due.add(timeout.key);
+                    timeouts.remove();
+                }
+            }
+        }
+        this.lastTick = Math.max(this.lastTick, nowTick);
+        return due;
+    }
+
+    /**
+     * @return the number of scheduled keys, including those that were overwritten meanwhile.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (List<Timeout> slot : this.slots)
+            size += slot.size();
+        return size;
+    }
+
+    private List<Timeout> slot(long tick) {
+        return this.slots.get((int) (tick % this.slots.size()));
+    }
+
+    private static class Timeout {
+        private final String key;
+        private final long expiresAt;
+
+        Timeout(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package de.tum.i13.shared;
+
+import picocli.CommandLine;
+
+/**
+ * Converts a size with an optional unit into bytes, e.g., 512MB, 64KB, 2GB or 1000.
+ */
+public class ByteSizeTypeConverter implements CommandLine.ITypeConverter<Long> {
+    @Override
+    public Long convert(final String value) throws Exception {
+        String size = value.trim().toUpperCase();
+        long unit = 1;
+        if (size.endsWith("KB")) {
+            unit = 1024L;
+        } else if (size.endsWith("MB")) {
+            unit = 1024L * 1024;
+        } else if (size.endsWith("GB")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            size = size.substring(0, size.length() - 2).trim();
+        } else if (size.endsWith("B")) {
+            size = size.substring(0, size.length() - 1).trim();
+        }
+        try {
+            long bytes = Long.parseLong(size);
+            if (bytes < 0) {
+                throw new CommandLine.TypeConversionException("A size can not be negative");
+            }
+            return bytes * unit;
+        } catch (final NumberFormatException e) {
+            throw new CommandLine.TypeConversionException("Specified size is not a number of B, KB, MB or GB");
+        }
+    }
+}
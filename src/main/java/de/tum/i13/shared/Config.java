@@ -32,9 +32,30 @@ public class Config {
     @CommandLine.Option(names = "-c", description = "Size of the cache, e.g., 100 keys")
     public int cacheSize;
 
-    @CommandLine.Option(names = "-s", description = "Cache displacement strategy, FIFO, LRU, LFU", defaultValue = "FIFO")
+    @CommandLine.Option(names = "-cm", description = "Memory of the cached values, e.g., 512MB, the strategy displaces keys until the values fit. 0 bounds the cache by -c only", defaultValue = "0", converter = ByteSizeTypeConverter.class)
+    public long cacheMemory;
+
+    @CommandLine.Option(names = "-s", description = "Cache displacement strategy, FIFO, LRU, LFU or TINYLFU (LRU window and frequency admitted segmented LRU)", defaultValue = "FIFO")
     public String cacheStrategy;
 
+    @CommandLine.Option(names = "-st", description = "Storage engine, LOG (append-only data log), LEGACY (serialized HashMap files) or MEMORY (heap only, loses the data on restart)", defaultValue = "LOG")
+    public String storageEngine;
+
+    @CommandLine.Option(names = "-fsync", description = "Durability of the data log: always, batch:<ms> (group commit window) or never", defaultValue = Constants.DEFAULT_FSYNC_POLICY)
+    public String fsyncPolicy;
+
+    @CommandLine.Option(names = "-rm", description = "Read path of the data log: pread (positioned reads) or mmap (memory mapped sealed segments)", defaultValue = Constants.READ_MODE_PREAD)
+    public String readMode;
+
+    @CommandLine.Option(names = "-cl", description = "Deflate level (1-9) of the values in the data log, 0 disables compression", defaultValue = "" + Constants.DEFAULT_COMPRESSION_LEVEL)
+    public int compressionLevel;
+
+    @CommandLine.Option(names = "-ct", description = "Size in bytes from which values in the data log are compressed", defaultValue = "" + Constants.DEFAULT_COMPRESSION_THRESHOLD)
+    public int compressionThreshold;
+
+    @CommandLine.Option(names = "-vm", description = "Memory of cached values: offheap (slab allocated direct buffers) or heap", defaultValue = Constants.VALUE_MEMORY_OFFHEAP)
+    public String valueMemory;
+
     public static Config parseCommandlineArgs(String[] args) {
         Config cfg = new Config();
         CommandLine.ParseResult parseResult = new CommandLine(cfg).registerConverter(InetSocketAddress.class, new InetSocketAddressTypeConverter()).parseArgs(args);
@@ -72,7 +93,14 @@ public class Config {
                 ", usagehelp=" + usagehelp +
                 ", loglevel='" + loglevel + '\'' +
                 ", cacheSize=" + cacheSize +
+                ", cacheMemory=" + cacheMemory +
                 ", cacheStrategy='" + cacheStrategy + '\'' +
+                ", storageEngine='" + storageEngine + '\'' +
+                ", fsyncPolicy='" + fsyncPolicy + '\'' +
+                ", readMode='" + readMode + '\'' +
+                ", compressionLevel=" + compressionLevel +
+                ", compressionThreshold=" + compressionThreshold +
+                ", valueMemory='" + valueMemory + '\'' +
                 '}';
     }
 }
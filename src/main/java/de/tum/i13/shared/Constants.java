@@ -7,11 +7,45 @@ public class Constants {
 
 	public static final String [] OWNER_FILENAMES = {"u_a-h.txt","u_i-q.txt","u_r-z.txt","u_num.txt"};
 
+	public static final String [] EXPIRY_FILENAMES = {"e_a-h.txt","e_i-q.txt","e_r-z.txt","e_num.txt"};
+
+	public static final String BLOOM_SUFFIX = ".bloom"; // Bloom filter of the keys of a storage file, stored next to it
+	public static final int BLOOM_BITS_PER_KEY = 10; // about 1% false positives
+
+	public static final String SEGMENT_PREFIX = "segment-";
+	public static final String SEGMENT_SUFFIX = ".log";
+	public static final long MAX_SEGMENT_SIZE = 64 * 1024 * 1024; // 64 MB per data log segment
+	public static final String PARTITION_PREFIX = "partition-";
+	public static final int NUMBER_OF_PARTITIONS = 64; // MD5 ranges of the data log, must be a power of two up to 256
+
+	public static final String COMPACTION_TMP_SUFFIX = ".tmp";
+	public static final String COMPACTION_MERGE_SUFFIX = ".merge";
+	public static final String HINT_SUFFIX = ".hint";
+	public static final long COMPACTION_INTERVAL = 60 * 1000; // check for compaction every minute
+	public static final double COMPACTION_GARBAGE_RATIO = 0.5; // compact once half of the sealed bytes are garbage
+	public static final long COMPACTION_IO_BUDGET = 16 * 1024 * 1024; // bytes per second read and written by the compaction
+
+	public static final long EXPIRY_SWEEP_INTERVAL = 1000; // the expiry sweeper runs every second, one tick of the timer wheel
+	public static final int EXPIRY_WHEEL_SLOTS = 512; // ticks covered by one turn of the timer wheel
+	public static final int EXPIRY_BATCH_SIZE = 1000; // expired keys deleted at once by the sweeper
+
+	public static final String FSYNC_ALWAYS = "always";
+	public static final String FSYNC_BATCH = "batch";
+	public static final String FSYNC_NEVER = "never";
+	public static final String DEFAULT_FSYNC_POLICY = "batch:10";
+
+	public static final String READ_MODE_PREAD = "pread";
+	public static final String READ_MODE_MMAP = "mmap";
+
 	public static final String SERVER_NOTRESPONSIBLE = "server_not_responsible";
 	public static final String SERVER_STOPPED = "server_stopped";
 	public static final String SERVER_WRITELOCK = "server_write_lock";
 	public static final String SERVER_AVAILABLE = "server_available";
 
+	public static final int CATCH_UP_ROUNDS = 3; // catch-up rounds of a range handoff that run while writes continue
+	public static final int CATCH_UP_LOCK_THRESHOLD = 100; // changed keys that are left to the final catch-up under the write lock
+	public static final long HANDOFF_TIMEOUT = 300000; // ms without a message of a range handoff after which its change journals are dropped
+
 	public static final String KEYRANGE_SUCCESS = "keyrange_success ";
 	public static final String KEYRANGE_READ_SUCCESS = "keyrange_read_success ";
 	
@@ -22,6 +56,10 @@ public class Constants {
 	public static final String PUT_UPDATE = "put_update";
 	public static final String PUT_ERROR = "put_error";
 
+	public static final String IMPORT_SUCCESS = "import_success";
+	public static final String IMPORT_ERROR = "import_error";
+	public static final int IMPORT_BATCH_SIZE = 10000; // pairs of an import file that are written at once
+
 	public static final String DELETE_SUCCESS = "delete_success";
 	public static final String DELETE_ERROR = "delete_error";
 	public static final String NOT_FOUND = "not_found";
@@ -37,6 +75,31 @@ public class Constants {
 	public static final String FIFO = "FIFO";
 	public static final String LRU = "LRU";
 	public static final String LFU = "LFU";
+	public static final int LFU_AGING_PERIOD = 10; // hits per cached key after which the LFU frequencies are halved, 0 disables aging
+	public static final String TINYLFU = "TINYLFU";
+	public static final int CACHE_MIN_VALUE_SIZE = 128; // bytes per value assumed to derive the number of keys of a cache bounded by memory only
+	public static final int CACHE_SHARDS = 16; // shards of the cache with a lock each, a power of two
+	public static final int CACHE_MIN_SHARD_SIZE = 64; // keys per shard at least, smaller caches have fewer shards
+	public static final long CACHE_MIN_SHARD_WEIGHT = 1024 * 1024; // bytes per shard at least, so a shard holds a few of the largest values
+	public static final double TINYLFU_WINDOW_SHARE = 0.01; // share of the cache taken by the LRU window of new keys
+	public static final double TINYLFU_PROTECTED_SHARE = 0.8; // share of the main region taken by the protected segment
+	public static final int TINYLFU_SAMPLE_FACTOR = 10; // accesses per cached key after which the frequency sketch is halved
+
+	public static final String REPLICA_PREFIX = "replica-"; // folders of the replicated ranges next to the primary data
+	public static final String REPLICA_RANGE_FILENAME = "range";
+	public static final int REPLICA_PENDING_LIMIT = 1000; // missed updates a replica gets again key by key, one that missed more gets the full data
+	public static final String IMPORT_DIRECTORY = "import"; // folder of the data directory the import files are read from
+
+	public static final String VALUE_MEMORY_HEAP = "heap";
+	public static final String VALUE_MEMORY_OFFHEAP = "offheap";
+	public static final int DEFAULT_COMPRESSION_LEVEL = 0; // deflate level of stored values, 0 stores them uncompressed
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024; // values below this size are not worth compressing
+
+	public static final int SLAB_ARENA_SIZE = 4 * 1024 * 1024; // direct buffer size the off-heap value slots are carved from
+
+	public static final String STORAGE_LOG = "LOG";
+	public static final String STORAGE_LEGACY = "LEGACY";
+	public static final String STORAGE_MEMORY = "MEMORY";
 
 	public static String VALID_IP_REGEX = "^(([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])\\.){3}([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])$";
 	public static String VALID_HOSTNAME_REGEX = "^(([a-zA-Z0-9]|[a-zA-Z0-9][a-zA-Z0-9\\-]*[a-zA-Z0-9])\\.)*([A-Za-z0-9]|[A-Za-z0-9][A-Za-z0-9\\-]*[A-Za-z0-9])$";
@@ -48,7 +111,9 @@ public class Constants {
 			"disconnect:                 Tries to disconnect from the connected server. \n" +
 			"put <key> <value>:          Inserts a key-value pair into the storage server data structures or updates the current value with the given value if the server already contains the specified key. \n" +
 			"put <key> <value>:          Deletes the entry for the given key if <value> equals null. \n" +
+			"put_ttl <key> <seconds> <value>: Inserts or updates a key-value pair that expires after the given number of seconds. \n" +
 			"get <key>:                  Retrieves the value for the given key from the storage server. \n" +
+			"import <file>:              Imports the key-value pairs of a file in the import folder of every server (<data dir>/import), one pair per line with the key separated from the value by a space. \n" +
 			"register <username>:        Registers the username in the server users list. \n" +
 			"login <username>:           Logs the user in to be able to query the servers. \n" +
 			"logLevel <level>:           Sets the logger to the specified log level. \n" +
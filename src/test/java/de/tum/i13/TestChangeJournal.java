@@ -0,0 +1,81 @@
+package de.tum.i13;
+
+import de.tum.i13.server.kv.ChangeJournal;
+import de.tum.i13.shared.Metadata;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestChangeJournal {
+
+    // ------------------------------------------------ TESTS ----------------------------------------------------------
+    @Test
+    public void testDrainKeepsKeysOfOtherRangesAndRecordsOnlyWhileOpen() {
+        ChangeJournal journal = new ChangeJournal();
+        journal.record("before");
+        assertFalse(journal.contains("before"));
+
+        journal.open();
+        for (int i = 0; i < 100; i++)
+            journal.record("key" + i);
+        journal.record("key1");
+        assertEquals(100, journal.size());
+
+        String start = "40000000000000000000000000000000";
+        String end = "c0000000000000000000000000000000";
+        int inRange = journal.size(start, end);
+        assertTrue(inRange > 0 && inRange < 100);
+        assertEquals(100, journal.size("ALL", ""));
+        List<String> drained = journal.drain(start, end);
+        assertEquals(inRange, drained.size());
+        for (String key : drained)
+            assertTrue(Metadata.hashInRange(key, start, end));
+        assertEquals(0, journal.size(start, end));
+        assertEquals(100 - drained.size(), journal.size());
+        assertTrue(journal.drain(start, end).isEmpty());
+
+        // a key written again after it was drained is drained again
+        journal.record(drained.get(0));
+        assertEquals(1, journal.drain(start, end).size());
+        assertEquals(100 - drained.size(), journal.drain("ALL", "").size());
+
+        journal.close();
+        journal.record("after");
+        assertFalse(journal.contains("after"));
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void testAbandonedHandoffDropsTheJournal() throws InterruptedException {
+        ChangeJournal journal = new ChangeJournal();
+        journal.open(200);
+        journal.record("written");
+        assertTrue(journal.contains("written"));
+
+        // no message of the handoff arrives, so the lease runs out
+        Thread.sleep(400);
+        assertFalse(journal.isOpen());
+        assertFalse(journal.contains("written"));
+        journal.record("later");
+        assertEquals(0, journal.size());
+        assertTrue(journal.drain("ALL", "").isEmpty());
+        journal.renew();
+        assertFalse(journal.isOpen());
+    }
+
+    @Test
+    public void testRenewKeepsTheJournalOpen() throws InterruptedException {
+        ChangeJournal journal = new ChangeJournal();
+        journal.open(1000);
+        journal.record("written");
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(250);
+            journal.renew();
+        }
+        assertTrue(journal.isOpen());
+        assertTrue(journal.contains("written"));
+        journal.close();
+    }
+}
@@ -0,0 +1,140 @@
+package de.tum.i13;
+
+import de.tum.i13.server.filemanager.FileManager;
+import de.tum.i13.server.storage.BloomFilterStats;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFileManager {
+    private static final String TESTING_DIRECTORY = "src/test/testdata/";
+    private FileManager fileManager;
+
+    // ----------------------------------------- JUnit utility methods -------------------------------------------------
+    @BeforeEach
+    public void restartTestEnvironment() {
+        deleteFiles(TESTING_DIRECTORY);
+        this.fileManager = new FileManager(Paths.get(TESTING_DIRECTORY));
+    }
+
+    @AfterEach
+    public void tearDownEnvironment() {
+        this.fileManager.close();
+        deleteFiles(TESTING_DIRECTORY);
+    }
+
+    // ------------------------------------------------ TESTS ----------------------------------------------------------
+    @Test
+    public void testConcurrentWritersOfDifferentBuckets() throws InterruptedException {
+        String[] prefixes = {"a", "k", "s", "1"};
+        Thread[] writers = new Thread[prefixes.length];
+        for (int t = 0; t < writers.length; t++) {
+            String prefix = prefixes[t];
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 20; i++) {
+                    this.fileManager.put(prefix + i, "value" + i, "user" + prefix);
+                    assertEquals("value" + i, this.fileManager.get(prefix + i));
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+        assertEquals(80, this.fileManager.getAllPairs().size());
+        assertEquals("userk", this.fileManager.getOwner("k3"));
+    }
+
+    @Test
+    public void testOwnersDoNotOverwriteValues() {
+        // keys of the same bucket, the owner of the second must not replace the bucket of the values
+        this.fileManager.put("avocado", "green");
+        this.fileManager.put("apple", "red", "alice");
+        assertEquals("green", this.fileManager.get("avocado"));
+        assertEquals("red", this.fileManager.get("apple"));
+        assertEquals("alice", this.fileManager.getOwner("apple"));
+        assertNull(this.fileManager.getOwner("avocado"));
+
+        this.fileManager.close();
+        FileManager restarted = new FileManager(Paths.get(TESTING_DIRECTORY));
+        assertEquals("green", restarted.get("avocado"));
+        assertEquals("red", restarted.get("apple"));
+        assertEquals("alice", restarted.getOwner("apple"));
+        assertEquals(2, restarted.getAllPairs().size());
+        restarted.close();
+    }
+
+    @Test
+    public void testDeleteTransferedPairs() {
+        for (int i = 0; i < 10; i++) {
+            this.fileManager.put("a" + i, "value" + i, "alice");
+            this.fileManager.put("z" + i, "value" + i);
+        }
+        HashMap<String, String> owners = new HashMap<>();
+        HashMap<String, String> all = this.fileManager.getTransferedKVPairs("ALL", "", owners);
+        assertEquals(20, all.size());
+        assertEquals(10, owners.size());
+
+        all.remove("a0");
+        this.fileManager.deleteTransferedKVPairs(all);
+        assertEquals(1, this.fileManager.getAllPairs().size());
+        assertEquals("alice", this.fileManager.getOwner("a0"));
+        assertNull(this.fileManager.getOwner("a1"));
+    }
+
+    @Test
+    public void testDeleteRange() {
+        for (int i = 0; i < 20; i++)
+            this.fileManager.put("key" + i, "value" + i, "alice", i % 2 == 0 ? 0 : System.currentTimeMillis() + 60000);
+        String start = "00000000000000000000000000000000";
+        String end = "80000000000000000000000000000000";
+        this.fileManager.deleteRange(start, end);
+        for (int i = 0; i < 20; i++) {
+            boolean deleted = Metadata.hashInRange("key" + i, start, end);
+            assertEquals(deleted ? null : "value" + i, this.fileManager.get("key" + i));
+            assertEquals(deleted ? null : "alice", this.fileManager.getOwner("key" + i));
+            if (deleted)
+                assertEquals(0, this.fileManager.getExpiry("key" + i));
+        }
+    }
+
+    @Test
+    public void testBloomFiltersAnswerMissesAndSurviveRestart() {
+        for (int i = 0; i < 100; i++)
+            this.fileManager.put("key" + i, "value" + i);
+        this.fileManager.delete("key0");
+        for (int i = 0; i < 1000; i++)
+            assertNull(this.fileManager.get("absent" + i));
+        BloomFilterStats stats = this.fileManager.getBloomFilterStats();
+        assertEquals(1000, stats.getNegatives() + stats.getFalsePositives());
+        assertTrue(stats.falsePositiveRate() < 0.05, stats.toString());
+
+        // the filters are loaded from their files, a lost filter file is rebuilt from the bucket
+        this.fileManager.close();
+        new File(TESTING_DIRECTORY + Constants.FILENAMES[0] + Constants.BLOOM_SUFFIX).delete();
+        FileManager restarted = new FileManager(Paths.get(TESTING_DIRECTORY));
+        assertNull(restarted.get("key0"));
+        for (int i = 1; i < 100; i++)
+            assertEquals("value" + i, restarted.get("key" + i));
+        assertEquals(99, restarted.getBloomFilterStats().getTruePositives());
+    }
+
+    private static void deleteFiles(String directory) {
+        File directoryFile = new File(directory);
+        for (File file: Objects.requireNonNull(directoryFile.listFiles())) {
+            if (file.isDirectory())
+                deleteFiles(file.getPath());
+            if (!file.getName().equals(".gitignore")) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package de.tum.i13;
+
+import de.tum.i13.server.kvcache.CacheStats;
+import de.tum.i13.server.kvcache.KVCache;
+import de.tum.i13.server.memory.HeapValueStore;
+import de.tum.i13.server.nio.StartSimpleNioServer;
+import de.tum.i13.shared.Config;
+import de.tum.i13.shared.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestKVCache {
+
+    @Test
+    public void testLRUEvictsLeastRecentlyUsedKey() {
+        KVCache cache = new KVCache(3, Constants.LRU);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertEquals("1", cache.get("a"));
+        // b is the least recently used key now
+        cache.put("d", "4");
+        assertFalse(cache.isKeyInCache("b"));
+        assertTrue(cache.isKeyInCache("a"));
+
+        // updating a cached key does not evict anything
+        cache.put("c", "5");
+        assertEquals("5", cache.get("c"));
+        cache.delete("a");
+        cache.put("e", "6");
+        cache.put("f", "7");
+        assertFalse(cache.isKeyInCache("d"));
+        assertTrue(cache.isKeyInCache("c"));
+        assertTrue(cache.isKeyInCache("e"));
+        assertTrue(cache.isKeyInCache("f"));
+    }
+
+    @Test
+    public void testLFUEvictsLeastFrequentlyUsedKey() {
+        KVCache cache = new KVCache(3, Constants.LFU);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        for (int i = 0; i < 3; i++)
+            cache.get("a");
+        cache.get("c");
+        // b was never read
+        cache.put("d", "4");
+        assertFalse(cache.isKeyInCache("b"));
+        // c and d are used once, d less recently
+        cache.get("d");
+        cache.put("e", "5");
+        assertFalse(cache.isKeyInCache("c"));
+        assertTrue(cache.isKeyInCache("a"));
+        assertTrue(cache.isKeyInCache("d"));
+        assertTrue(cache.isKeyInCache("e"));
+    }
+
+    @Test
+    public void testLFUAgingForgetsOldHotKeys() {
+        // the frequencies are halved after 10 hits per cached key
+        KVCache cache = new KVCache(3, Constants.LFU);
+        cache.put("old", "1");
+        for (int i = 0; i < 20; i++)
+            cache.get("old");
+        cache.put("x", "2");
+        cache.put("y", "3");
+        for (int i = 0; i < 15; i++) {
+            cache.get("x");
+            cache.get("y");
+        }
+        // without aging old would have 21 against 16, halved at the 30th hit it has 10 against 13
+        cache.put("z", "4");
+        assertFalse(cache.isKeyInCache("old"));
+        assertTrue(cache.isKeyInCache("x"));
+        assertTrue(cache.isKeyInCache("y"));
+    }
+
+    @Test
+    public void testTinyLFUKeepsHotKeysDuringScan() {
+        KVCache cache = new KVCache(100, Constants.TINYLFU);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i) == null)
+                    cache.put("hot" + i, "value");
+            }
+        }
+        for (int i = 0; i < 300; i++)
+            cache.put("scan" + i, "value");
+        for (int i = 0; i < 50; i++)
+            assertTrue(cache.isKeyInCache("hot" + i), "hot" + i);
+        // once the cache is full the scan only passes through the window
+        assertTrue(cache.isKeyInCache("scan299"));
+        assertFalse(cache.isKeyInCache("scan150"));
+    }
+
+    @Test
+    public void testMemoryBoundHoldsForEveryStrategy() {
+        String value = new String(new char[100]).replace('\0', 'v');
+        for (String strategy : new String[]{Constants.FIFO, Constants.LRU, Constants.LFU, Constants.TINYLFU}) {
+            // 1000 bytes hold 5 values of 100 chars on the heap, far below 100 keys
+            KVCache cache = new KVCache(100, 1000, strategy, new HeapValueStore());
+            for (int i = 0; i < 20; i++)
+                cache.put("key" + i, value);
+            CacheStats stats = cache.getStats();
+            assertEquals(1000, stats.getWeight(), strategy);
+            assertEquals(15, stats.getEvictionsBySize(), strategy);
+            assertEquals(0, stats.getEvictionsByCount(), strategy);
+
+            // a value larger than the cache is not cached and drops the old value of its key
+            cache.put("key19", value + value + value + value + value + value);
+            assertFalse(cache.isKeyInCache("key19"), strategy);
+            assertEquals(800, stats.getWeight(), strategy);
+            assertEquals(1, stats.getRejections(), strategy);
+        }
+    }
+
+    @Test
+    public void testMemoryBoundFromServerConfig() {
+        // with only a memory bound the number of keys is derived from it instead of defaulting to 10
+        Config cfg = Config.parseCommandlineArgs(new String[]{"-d", "src/test/testdata/", "-cm", "64KB", "-s", "LRU"});
+        StartSimpleNioServer.applyCacheDefaults(cfg);
+        assertEquals(0, cfg.cacheSize);
+        KVCache cache = new KVCache(cfg.cacheSize, cfg.cacheMemory, cfg.cacheStrategy, new HeapValueStore());
+        String value = new String(new char[100]).replace('\0', 'v');
+        int cached = 0;
+        for (int i = 0; i < 1000; i++)
+            cache.put("key" + i, value);
+        for (int i = 0; i < 1000; i++)
+            cached += cache.isKeyInCache("key" + i) ? 1 : 0;
+        // 64 KB hold 327 values of 200 bytes
+        assertEquals(327, cached);
+        assertTrue(cache.getStats().getWeight() <= 64 * 1024);
+
+        Config keysOnly = Config.parseCommandlineArgs(new String[]{"-d", "src/test/testdata/"});
+        StartSimpleNioServer.applyCacheDefaults(keysOnly);
+        assertEquals(10, keysOnly.cacheSize);
+    }
+
+    @Test
+    public void testConcurrentAccessKeepsShardsConsistent() throws InterruptedException {
+        KVCache cache = new KVCache(2000, Constants.LRU);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    String key = "key" + random.nextInt(5000);
+                    int operation = random.nextInt(10);
+                    if (operation == 0)
+                        cache.delete(key);
+                    else if (operation < 4)
+                        cache.put(key, "value");
+                    else
+                        cache.get(key);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        int cached = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (cache.isKeyInCache("key" + i)) {
+                cached++;
+                assertEquals("value", cache.get("key" + i));
+            }
+        }
+        assertTrue(cached <= 2000);
+        // every value takes 10 bytes on the heap
+        assertEquals(10L * cached, cache.getStats().getWeight());
+    }
+}
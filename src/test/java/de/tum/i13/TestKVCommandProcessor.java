@@ -38,6 +38,12 @@ public class TestKVCommandProcessor {
         deleteFiles();
         Config cfg = new Config();
         cfg.cacheStrategy = Constants.FIFO;
+        cfg.storageEngine = Constants.STORAGE_LOG;
+        cfg.fsyncPolicy = Constants.DEFAULT_FSYNC_POLICY;
+        cfg.readMode = Constants.READ_MODE_PREAD;
+        cfg.compressionLevel = Constants.DEFAULT_COMPRESSION_LEVEL;
+        cfg.compressionThreshold = Constants.DEFAULT_COMPRESSION_THRESHOLD;
+        cfg.valueMemory = Constants.VALUE_MEMORY_OFFHEAP;
         cfg.cacheSize = 10;
         cfg.dataDir = Paths.get(TESTING_DIRECTORY);
         PersistenceKVStore kvStore = new PersistenceKVStore(cfg);
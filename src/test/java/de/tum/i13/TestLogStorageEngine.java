@@ -0,0 +1,539 @@
+package de.tum.i13;
+
+import de.tum.i13.server.storage.Compression;
+import de.tum.i13.server.storage.FsyncPolicy;
+import de.tum.i13.server.storage.HintFile;
+import de.tum.i13.server.storage.LogPartition;
+import de.tum.i13.server.storage.LogRecord;
+import de.tum.i13.server.storage.LogStorageEngine;
+import de.tum.i13.server.storage.Segment;
+import de.tum.i13.server.storage.StorageSnapshot;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLogStorageEngine {
+    private static final String TESTING_DIRECTORY = "src/test/testdata/";
+    private Path path;
+
+    // ----------------------------------------- JUnit utility methods -------------------------------------------------
+    @BeforeEach
+    public void restartTestEnvironment() {
+        deleteFiles(TESTING_DIRECTORY);
+        this.path = Paths.get(TESTING_DIRECTORY);
+    }
+
+    @AfterEach
+    public void tearDownEnvironment() {
+        deleteFiles(TESTING_DIRECTORY);
+    }
+
+    // ------------------------------------------------ TESTS ----------------------------------------------------------
+    @Test
+    public void testPutGetDelete() {
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        assertFalse(engine.put("key", "value"));
+        assertEquals("value", engine.get("key"));
+        assertTrue(engine.put("key", "value with spaces"));
+        assertEquals("value with spaces", engine.get("key"));
+        assertTrue(engine.delete("key"));
+        assertNull(engine.get("key"));
+        assertFalse(engine.delete("key"));
+    }
+
+    @Test
+    public void testIndexIsRebuiltOnRestart() {
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        engine.put("a", "1");
+        engine.put("b", "2");
+        engine.put("a", "3");
+        engine.delete("b");
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path);
+        assertEquals("3", restarted.get("a"));
+        assertNull(restarted.get("b"));
+        assertEquals(1, restarted.getAllPairs().size());
+    }
+
+    @Test
+    public void testSegmentsRollAndReload() {
+        List<String> keys = keysOfOnePartition(20);
+        LogStorageEngine engine = new LogStorageEngine(this.path, 64);
+        for (int i = 0; i < 20; i++)
+            engine.put(keys.get(i), "value" + i);
+        engine.put(keys.get(0), "updated");
+        Path partition = this.path.resolve(LogPartition.directoryName(LogStorageEngine.partitionIndex(keys.get(0))));
+        assertTrue(partition.resolve(Segment.fileName(2)).toFile().exists());
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 64);
+        assertEquals("updated", restarted.get(keys.get(0)));
+        assertEquals("value19", restarted.get(keys.get(19)));
+        assertEquals(20, restarted.getAllPairs().size());
+    }
+
+    @Test
+    public void testMemoryMappedReads() {
+        List<String> keys = keysOfOnePartition(20);
+        LogStorageEngine engine = new LogStorageEngine(this.path, 64, FsyncPolicy.parse("never"), true);
+        for (int i = 0; i < 20; i++)
+            engine.put(keys.get(i), "value" + i);
+        engine.put(keys.get(3), "updated");
+        for (int i = 4; i < 20; i++)
+            assertEquals("value" + i, engine.get(keys.get(i)));
+        assertEquals("updated", engine.get(keys.get(3)));
+
+        engine.compact();
+        engine.close();
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 64, FsyncPolicy.parse("never"), true);
+        assertEquals("value0", restarted.get(keys.get(0)));
+        assertEquals("updated", restarted.get(keys.get(3)));
+        assertEquals(20, restarted.getAllPairs().size());
+    }
+
+    @Test
+    public void testCompactionDropsGarbage() {
+        List<String> keys = keysOfOnePartition(21);
+        LogStorageEngine engine = new LogStorageEngine(this.path, 128);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 20; i++)
+                engine.put(keys.get(i), "value" + round);
+        }
+        for (int i = 0; i < 10; i++)
+            engine.delete(keys.get(i));
+        char[] large = new char[200];
+        Arrays.fill(large, 'x');
+        engine.put(keys.get(20), new String(large));
+
+        assertTrue(engine.garbageRatio() > 0.5);
+        engine.compact();
+        assertEquals(1, engine.getCompactionStats().getRuns());
+        assertTrue(engine.getCompactionStats().getBytesReclaimed() > 0);
+        assertEquals(0.0, engine.garbageRatio());
+        assertEquals("value4", engine.get(keys.get(15)));
+        assertNull(engine.get(keys.get(5)));
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 128);
+        assertEquals(11, restarted.getAllPairs().size());
+        assertEquals("value4", restarted.get(keys.get(10)));
+        assertNull(restarted.get(keys.get(0)));
+    }
+
+    @Test
+    public void testRebuildFromHintFiles() throws IOException {
+        List<String> keys = keysOfOnePartition(20);
+        LogStorageEngine engine = new LogStorageEngine(this.path, 64);
+        for (int i = 0; i < 20; i++)
+            engine.put(keys.get(i), "value" + i, i % 2 == 0 ? "alice" : null);
+        engine.delete(keys.get(1));
+        engine.writeMissingHints();
+        Path partition = this.path.resolve(LogPartition.directoryName(LogStorageEngine.partitionIndex(keys.get(0))));
+        File hint = HintFile.path(partition, 1).toFile();
+        assertTrue(hint.exists());
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 64);
+        assertEquals(19, restarted.getAllPairs().size());
+        assertEquals("value0", restarted.get(keys.get(0)));
+        assertEquals("alice", restarted.getOwner(keys.get(0)));
+        assertNull(restarted.get(keys.get(1)));
+
+        // a damaged hint is ignored and the segment is scanned instead
+        restarted.close();
+        try (RandomAccessFile file = new RandomAccessFile(hint, "rw")) {
+            file.seek(file.length() - 1);
+            file.write(file.readByte() ^ 1);
+        }
+        restarted = new LogStorageEngine(this.path, 64);
+        assertEquals(19, restarted.getAllPairs().size());
+        assertEquals("value0", restarted.get(keys.get(0)));
+    }
+
+    @Test
+    public void testConcurrentPutsWithGroupCommit() throws InterruptedException {
+        LogStorageEngine engine = new LogStorageEngine(this.path, 1024 * 1024, FsyncPolicy.parse("always"));
+        Thread[] writers = new Thread[8];
+        for (int t = 0; t < writers.length; t++) {
+            int writer = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 25; i++)
+                    engine.put("w" + writer + "k" + i, "value" + i);
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+        engine.close();
+        assertEquals(200, new LogStorageEngine(this.path, 1024 * 1024, FsyncPolicy.parse("never")).getAllPairs().size());
+    }
+
+    @Test
+    public void testInvalidFsyncPolicy() {
+        assertEquals("batch:5", FsyncPolicy.parse("batch:5").toString());
+        assertThrows(IllegalArgumentException.class, () -> FsyncPolicy.parse("batch:"));
+        assertThrows(IllegalArgumentException.class, () -> FsyncPolicy.parse("sometimes"));
+    }
+
+    @Test
+    public void testIncompleteRecordIsTruncated() throws IOException {
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        engine.put("a", "1");
+        engine.put("b", "2");
+        engine.close();
+
+        Path partition = this.path.resolve(LogPartition.directoryName(LogStorageEngine.partitionIndex("b")));
+        File log = partition.resolve(Segment.fileName(1)).toFile();
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path);
+        assertEquals("1", restarted.get("a"));
+        assertNull(restarted.get("b"));
+        restarted.put("c", "4");
+        restarted.close();
+        assertEquals("4", new LogStorageEngine(this.path).get("c"));
+    }
+
+    @Test
+    public void testCorruptedRecordIsTruncated() throws IOException {
+        List<String> keys = keysOfOnePartition(2);
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        engine.put(keys.get(0), "1");
+        engine.put(keys.get(1), "2");
+        engine.close();
+
+        Path partition = this.path.resolve(LogPartition.directoryName(LogStorageEngine.partitionIndex(keys.get(0))));
+        File log = partition.resolve(Segment.fileName(1)).toFile();
+        long length = log.length();
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            // flip the value byte of the last record
+            file.seek(length - 1);
+            file.write('3');
+        }
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path);
+        assertEquals("1", restarted.get(keys.get(0)));
+        assertNull(restarted.get(keys.get(1)));
+        assertTrue(log.length() < length);
+    }
+
+    @Test
+    public void testRecordWithImpossibleLengthIsTruncated() throws IOException {
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        engine.put("a", "1");
+        engine.close();
+
+        Path partition = this.path.resolve(LogPartition.directoryName(LogStorageEngine.partitionIndex("a")));
+        File log = partition.resolve(Segment.fileName(1)).toFile();
+        long length = log.length();
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            // a torn header whose value length would allocate almost 2 GB
+            file.seek(length);
+            file.writeInt(0);
+            file.writeInt(1);
+            file.writeInt(Integer.MAX_VALUE);
+            file.writeInt(0);
+            file.write('b');
+        }
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path);
+        assertEquals("1", restarted.get("a"));
+        assertEquals(length, log.length());
+        restarted.close();
+    }
+
+    @Test
+    public void testLargeRecordsSurviveRestart() {
+        // 120 KB of chars that take two bytes each in UTF-8, followed by another record of the segment
+        List<String> keys = keysOfOnePartition(2);
+        String large = new String(new char[122880]).replace('\0', '\u00e4');
+        LogStorageEngine engine = new LogStorageEngine(this.path, Constants.MAX_SEGMENT_SIZE, FsyncPolicy.parse("never"));
+        engine.put(keys.get(0), large);
+        engine.put(keys.get(1), "after");
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, Constants.MAX_SEGMENT_SIZE, FsyncPolicy.parse("never"));
+        assertEquals(large, restarted.get(keys.get(0)));
+        assertEquals("after", restarted.get(keys.get(1)));
+        restarted.close();
+    }
+
+    @Test
+    public void testTransferAndDeleteRange() {
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        for (int i = 0; i < 50; i++)
+            engine.put("key" + i, "value" + i);
+
+        HashMap<String, String> all = engine.getTransferedKVPairs("ALL", "");
+        assertEquals(50, all.size());
+
+        String start = "00000000000000000000000000000000";
+        String end = "80000000000000000000000000000000";
+        HashMap<String, String> half = engine.getTransferedKVPairs(start, end);
+        for (int i = 0; i < 50; i++)
+            assertEquals(Metadata.hashInRange("key" + i, start, end), half.containsKey("key" + i));
+
+        // a range that wraps around the ring and starts and ends inside partitions
+        String wrapStart = "F123456789ABCDEF0123456789ABCDEF";
+        String wrapEnd = "1fedcba9876543210fedcba987654321";
+        HashMap<String, String> wrapped = engine.getTransferedKVPairs(wrapStart, wrapEnd);
+        for (int i = 0; i < 50; i++)
+            assertEquals(Metadata.hashInRange("key" + i, wrapStart, wrapEnd), wrapped.containsKey("key" + i));
+
+        // the ring hands out hashes without leading zeros
+        assertEquals(half, engine.getTransferedKVPairs("0", end));
+
+        engine.deleteTransferedKVPairs(half);
+        assertEquals(50 - half.size(), engine.getAllPairs().size());
+        for (String key : half.keySet())
+            assertNull(engine.get(key));
+    }
+
+    @Test
+    public void testRangeDeleteSurvivesRestartAndCompaction() {
+        LogStorageEngine engine = new LogStorageEngine(this.path, 256, FsyncPolicy.parse("never"));
+        for (int i = 0; i < 200; i++)
+            engine.put("key" + i, "value" + i, "alice");
+
+        // a range that wraps around the ring, so whole and boundary partitions are deleted
+        String start = "c0000000000000000000000000000001";
+        String end = "4fedcba9876543210fedcba987654321";
+        engine.deleteRange(start, end);
+        engine.put("key0", "written again");
+        int kept = 0;
+        for (int i = 1; i < 200; i++) {
+            boolean deleted = Metadata.hashInRange("key" + i, start, end);
+            assertEquals(deleted ? null : "value" + i, engine.get("key" + i));
+            kept += deleted ? 0 : 1;
+        }
+        assertEquals(kept + 1, engine.getAllPairs().size());
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 256, FsyncPolicy.parse("never"));
+        assertEquals(kept + 1, restarted.getAllPairs().size());
+        assertEquals("written again", restarted.get("key0"));
+        restarted.compact();
+        restarted.writeMissingHints();
+        restarted.close();
+        LogStorageEngine compacted = new LogStorageEngine(this.path, 256, FsyncPolicy.parse("never"));
+        assertEquals(kept + 1, compacted.getAllPairs().size());
+
+        compacted.deleteRange("ALL", "");
+        assertTrue(compacted.getAllPairs().isEmpty());
+        compacted.close();
+        assertTrue(new LogStorageEngine(this.path, 256, FsyncPolicy.parse("never")).getAllPairs().isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIsIsolatedAndPinsSegments() {
+        LogStorageEngine engine = new LogStorageEngine(this.path, 256, FsyncPolicy.parse("never"));
+        for (int i = 0; i < 100; i++)
+            engine.put("key" + i, "value" + i, "alice");
+
+        StorageSnapshot snapshot = engine.snapshot();
+        for (int i = 0; i < 100; i++)
+            engine.put("key" + i, "changed" + i);
+        engine.delete("key0");
+        engine.put("new", "value");
+        // the compaction must not drop the segments the snapshot points to
+        engine.compact();
+
+        HashMap<String, String> owners = new HashMap<>();
+        HashMap<String, String> pairs = snapshot.getTransferedKVPairs("ALL", "", owners, null, null);
+        assertEquals(100, snapshot.size());
+        assertEquals(100, pairs.size());
+        assertEquals("value0", pairs.get("key0"));
+        assertEquals("value99", pairs.get("key99"));
+        assertEquals("alice", owners.get("key50"));
+        int[] scanned = {0};
+        snapshot.rangeScan("ALL", "", (key, value) -> {
+            assertEquals("value" + key.substring(3), value);
+            scanned[0]++;
+        });
+        assertEquals(100, scanned[0]);
+        snapshot.close();
+
+        assertEquals(100, engine.size());
+        assertNull(engine.get("key0"));
+        assertEquals("changed1", engine.get("key1"));
+        double garbage = engine.garbageRatio();
+        engine.compact();
+        assertTrue(engine.garbageRatio() < garbage);
+        assertEquals("changed99", engine.get("key99"));
+    }
+
+    @Test
+    public void testBulkLoadRollsSegmentsAndSurvivesRestart() {
+        LogStorageEngine engine = new LogStorageEngine(this.path, 1024, FsyncPolicy.parse("batch:5"));
+        engine.put("key7", "old", "bob", System.currentTimeMillis() + 60000);
+        HashMap<String, String> pairs = new HashMap<>();
+        for (int i = 0; i < 2000; i++)
+            pairs.put("key" + i, "value" + i);
+        engine.bulkLoad(pairs, "alice");
+        assertEquals(2000, engine.size());
+        assertEquals("value7", engine.get("key7"));
+        assertEquals("alice", engine.getOwner("key7"));
+        assertEquals(0, engine.getExpiry("key7"));
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 1024, FsyncPolicy.parse("never"));
+        assertEquals(pairs, restarted.getAllPairs());
+        assertEquals("alice", restarted.getOwner("key1999"));
+        long segments = 0;
+        for (File partition : Objects.requireNonNull(this.path.toFile().listFiles(File::isDirectory)))
+            segments += Objects.requireNonNull(partition.list((dir, name) -> Segment.parseId(name) >= 0)).length;
+        assertTrue(segments > 64);
+    }
+
+    @Test
+    public void testOwnerIsStoredWithValue() {
+        LogStorageEngine engine = new LogStorageEngine(this.path, 64);
+        engine.put("a", "1", "alice");
+        engine.put("b", "2");
+        engine.put("a", "3", "alice");
+        assertEquals("alice", engine.getOwner("a"));
+        assertNull(engine.getOwner("b"));
+        engine.compact();
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 64);
+        assertEquals("3", restarted.get("a"));
+        assertEquals("alice", restarted.getOwner("a"));
+        HashMap<String, String> owners = new HashMap<>();
+        assertEquals(2, restarted.getTransferedKVPairs("ALL", "", owners).size());
+        assertEquals(1, owners.size());
+        assertEquals("alice", owners.get("a"));
+        restarted.delete("a");
+        assertNull(restarted.getOwner("a"));
+    }
+
+    @Test
+    public void testUnpartitionedSegmentsAreMigrated() throws IOException {
+        Segment segment = Segment.open(this.path, 1);
+        segment.append(LogRecord.put("a", "1").encode());
+        segment.append(LogRecord.put("b", "2", "bob").encode());
+        segment.append(LogRecord.tombstone("a").encode());
+        segment.close();
+
+        LogStorageEngine engine = new LogStorageEngine(this.path);
+        assertNull(engine.get("a"));
+        assertEquals("2", engine.get("b"));
+        assertEquals("bob", engine.getOwner("b"));
+        assertFalse(this.path.resolve(Segment.fileName(1)).toFile().exists());
+        engine.close();
+        assertEquals("2", new LogStorageEngine(this.path).get("b"));
+    }
+
+    @Test
+    public void testExpiredKeysAreSkippedAndSwept() throws InterruptedException {
+        LogStorageEngine engine = new LogStorageEngine(this.path, 4096, FsyncPolicy.parse("never"));
+        long now = System.currentTimeMillis();
+        engine.put("expired", "gone", "alice", now - 1);
+        engine.put("later", "kept", "alice", now + 60000);
+        engine.put("forever", "kept");
+        assertNull(engine.get("expired"));
+        assertNull(engine.getOwner("expired"));
+        assertEquals("kept", engine.get("later"));
+        assertEquals(now + 60000, engine.getExpiry("later"));
+        assertEquals(0, engine.getExpiry("forever"));
+
+        // expired keys are not transfered, the expiries of the others go along
+        engine.put("expired", "gone", null, now - 1);
+        HashMap<String, Long> expiries = new HashMap<>();
+        HashMap<String, String> pairs = engine.getTransferedKVPairs("ALL", "", null, null, expiries);
+        assertEquals(2, pairs.size());
+        assertEquals(1, expiries.size());
+        assertEquals(now + 60000, (long) expiries.get("later"));
+
+        // the expiry survives a restart and the sweeper deletes the key without it being read
+        engine.put("soon", "short lived", null, System.currentTimeMillis() + 200);
+        engine.close();
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 4096, FsyncPolicy.parse("never"));
+        assertEquals(now + 60000, restarted.getExpiry("later"));
+        assertEquals(3, restarted.getAllPairs().size());
+        Thread.sleep(2500);
+        assertEquals(2, restarted.getAllPairs().size());
+        assertFalse(restarted.delete("soon"));
+        assertFalse(restarted.put("soon", "again"));
+    }
+
+    @Test
+    public void testCompressedValuesSurviveRestartAndTransfer() {
+        StringBuilder mail = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            mail.append("please forward the attached contract ").append(i % 7).append('\n');
+        Compression compression = new Compression(6, 1024);
+        LogStorageEngine engine = new LogStorageEngine(this.path, 4096, FsyncPolicy.parse("never"), false, compression);
+        List<String> keys = keysOfOnePartition(10);
+        for (String key : keys)
+            engine.put(key, mail + key, "alice");
+        engine.put("small", "below the threshold");
+        engine.compact();
+        engine.close();
+
+        LogStorageEngine restarted = new LogStorageEngine(this.path, 4096, FsyncPolicy.parse("never"), false, Compression.none());
+        for (String key : keys)
+            assertEquals(mail + key, restarted.get(key));
+        assertEquals("below the threshold", restarted.get("small"));
+
+        HashMap<String, String> owners = new HashMap<>();
+        HashMap<String, byte[]> compressed = new HashMap<>();
+        HashMap<String, String> plain = restarted.getTransferedKVPairs("ALL", "", owners, compressed, null);
+        assertEquals(keys.size(), compressed.size());
+        assertEquals(1, plain.size());
+        assertTrue(compressed.get(keys.get(0)).length < mail.length() / 3);
+
+        // the receiver stores the transfered bytes as they are
+        restarted.close();
+        deleteFiles(TESTING_DIRECTORY);
+        LogStorageEngine receiver = new LogStorageEngine(this.path.resolve("receiver"));
+        for (String key : compressed.keySet())
+            receiver.putCompressed(key, compressed.get(key), owners.get(key), 0);
+        assertEquals(mail + keys.get(0), receiver.get(keys.get(0)));
+        assertEquals("alice", receiver.getOwner(keys.get(0)));
+        receiver.close();
+        assertEquals(mail + keys.get(1), new LogStorageEngine(this.path.resolve("receiver")).get(keys.get(1)));
+    }
+
+    /**
+     * @return keys that all hash into the same partition, so a single partition rolls its segments.
+     */
+    private static List<String> keysOfOnePartition(int count) {
+        List<String> keys = new ArrayList<>();
+        int partition = LogStorageEngine.partitionIndex("key0");
+        for (int i = 0; keys.size() < count; i++) {
+            if (LogStorageEngine.partitionIndex("key" + i) == partition)
+                keys.add("key" + i);
+        }
+        return keys;
+    }
+
+    private static void deleteFiles(String directory) {
+        File directoryFile = new File(directory);
+        for (File file: Objects.requireNonNull(directoryFile.listFiles())) {
+            if (file.isDirectory())
+                deleteFiles(file.getPath());
+            if (!file.getName().equals(".gitignore")) {
+                file.delete();
+            }
+        }
+    }
+}
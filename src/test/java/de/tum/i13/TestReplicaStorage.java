@@ -0,0 +1,182 @@
+package de.tum.i13;
+
+import de.tum.i13.server.kv.ReplicaStorage;
+import de.tum.i13.server.storage.Compression;
+import de.tum.i13.server.storage.FsyncPolicy;
+import de.tum.i13.server.storage.LogStorageEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestReplicaStorage {
+    private static final String TESTING_DIRECTORY = "src/test/testdata/";
+    private Path path;
+
+    // ----------------------------------------- JUnit utility methods -------------------------------------------------
+    @BeforeEach
+    public void restartTestEnvironment() {
+        deleteFiles(TESTING_DIRECTORY);
+        this.path = Paths.get(TESTING_DIRECTORY);
+    }
+
+    @AfterEach
+    public void tearDownEnvironment() {
+        deleteFiles(TESTING_DIRECTORY);
+    }
+
+    // ------------------------------------------------ TESTS ----------------------------------------------------------
+    @Test
+    public void testReplicaSurvivesRestart() {
+        ReplicaStorage replica = new ReplicaStorage(new LogStorageEngine(this.path), this.path);
+        assertFalse(replica.isInUse());
+        HashMap<String, String> data = new HashMap<>();
+        data.put("a", "1");
+        data.put("b", "2");
+        replica.replaceAll(data, null, null, "00", "ff");
+        replica.update("c", "3", 0, "00", "ff");
+        replica.update("a", null, 0, "00", "ff");
+        replica.close();
+
+        ReplicaStorage restarted = new ReplicaStorage(new LogStorageEngine(this.path), this.path);
+        assertTrue(restarted.isInUse());
+        assertEquals("00", restarted.getStartHash());
+        assertEquals("ff", restarted.getEndHash());
+        assertNull(restarted.get("a"));
+        assertEquals("2", restarted.get("b"));
+        assertEquals("3", restarted.get("c"));
+
+        // a full copy drops the keys the primary no longer has
+        data.remove("a");
+        data.remove("b");
+        data.put("d", "4");
+        restarted.replaceAll(data, null, null, "10", "ff");
+        assertNull(restarted.get("b"));
+        assertNull(restarted.get("c"));
+        assertEquals("4", restarted.get("d"));
+
+        restarted.clear();
+        assertFalse(restarted.isInUse());
+        assertNull(restarted.get("d"));
+        restarted.close();
+        assertFalse(new ReplicaStorage(new LogStorageEngine(this.path), this.path).isInUse());
+    }
+
+    @Test
+    public void testFullCopyWritesOnlyChangedKeys() {
+        StringBuilder mail = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            mail.append("see you at the meeting ").append(i % 3).append('\n');
+        LogStorageEngine primary = new LogStorageEngine(this.path.resolve("primary"), 4096, FsyncPolicy.parse("never"), false,
+                new Compression(6, 1024));
+        for (int i = 0; i < 10; i++)
+            primary.put("key" + i, "value" + i, null, i == 0 ? System.currentTimeMillis() + 60000 : 0);
+        primary.put("mail", mail.toString());
+
+        AtomicInteger writes = new AtomicInteger();
+        LogStorageEngine engine = new LogStorageEngine(this.path.resolve("replica"), 4096, FsyncPolicy.parse("never")) {
+            @Override
+            public boolean put(String key, String value, String owner, long expiresAt) {
+                writes.incrementAndGet();
+                return super.put(key, value, owner, expiresAt);
+            }
+
+            @Override
+            public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt) {
+                writes.incrementAndGet();
+                return super.putCompressed(key, compressedValue, owner, expiresAt);
+            }
+        };
+        ReplicaStorage replica = new ReplicaStorage(engine, this.path.resolve("replica"));
+        HashMap<String, byte[]> compressed = new HashMap<>();
+        HashMap<String, Long> expiries = new HashMap<>();
+        HashMap<String, String> data = primary.getTransferedKVPairs("ALL", "", null, compressed, expiries);
+        assertEquals(1, compressed.size());
+        replica.replaceAll(data, compressed, expiries, "00", "ff");
+        assertEquals(11, writes.get());
+
+        // the same copy again writes nothing, a changed value and a changed expiry are written
+        replica.replaceAll(data, compressed, expiries, "00", "ff");
+        assertEquals(11, writes.get());
+        data.put("key1", "changed");
+        expiries.put("key2", System.currentTimeMillis() + 60000);
+        data.remove("key3");
+        replica.replaceAll(data, compressed, expiries, "00", "ff");
+        assertEquals(13, writes.get());
+        assertEquals("changed", replica.get("key1"));
+        assertNull(replica.get("key3"));
+        assertEquals(mail.toString(), replica.get("mail"));
+        replica.close();
+        primary.close();
+    }
+
+    @Test
+    public void testFullCopyComparesStoredBytes() {
+        StringBuilder mail = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            mail.append("see you at the meeting ").append(i % 3).append('\n');
+        LogStorageEngine primary = new LogStorageEngine(this.path.resolve("primary"), 4096, FsyncPolicy.parse("never"), false,
+                new Compression(6, 1024));
+        primary.put("mail", mail.toString());
+        primary.put("short", "value");
+
+        // the replica is neither collected nor are its values inflated to compare them
+        AtomicInteger writes = new AtomicInteger();
+        LogStorageEngine engine = new LogStorageEngine(this.path.resolve("replica"), 4096, FsyncPolicy.parse("never"), false,
+                new Compression(6, 1024)) {
+            @Override
+            public HashMap<String, String> getTransferedKVPairs(String predHash, String predHashEnd, HashMap<String, String> owners,
+                                                                HashMap<String, byte[]> compressed, HashMap<String, Long> expiries) {
+                throw new AssertionError("the replica was collected");
+            }
+
+            @Override
+            public void rangeScan(String predHash, String predHashEnd, BiConsumer<String, String> consumer) {
+                throw new AssertionError("the replica values were inflated");
+            }
+
+            @Override
+            public boolean putCompressed(String key, byte[] compressedValue, String owner, long expiresAt) {
+                writes.incrementAndGet();
+                return super.putCompressed(key, compressedValue, owner, expiresAt);
+            }
+        };
+        ReplicaStorage replica = new ReplicaStorage(engine, this.path.resolve("replica"));
+        HashMap<String, byte[]> compressed = new HashMap<>();
+        HashMap<String, String> data = primary.getTransferedKVPairs("ALL", "", null, compressed, null);
+        replica.replaceAll(data, compressed, null, "00", "ff");
+        assertEquals(1, writes.get());
+        replica.replaceAll(data, compressed, null, "00", "ff");
+        assertEquals(1, writes.get());
+
+        primary.put("mail", mail.append("bye\n").toString());
+        compressed.clear();
+        data = primary.getTransferedKVPairs("ALL", "", null, compressed, null);
+        replica.replaceAll(data, compressed, null, "00", "ff");
+        assertEquals(2, writes.get());
+        assertEquals(mail.toString(), replica.get("mail"));
+        assertEquals("value", replica.get("short"));
+        replica.close();
+        primary.close();
+    }
+
+    private static void deleteFiles(String directory) {
+        File directoryFile = new File(directory);
+        for (File file: Objects.requireNonNull(directoryFile.listFiles())) {
+            if (file.isDirectory())
+                deleteFiles(file.getPath());
+            if (!file.getName().equals(".gitignore")) {
+                file.delete();
+            }
+        }
+    }
+}
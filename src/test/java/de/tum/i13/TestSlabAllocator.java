@@ -0,0 +1,61 @@
+package de.tum.i13;
+
+import de.tum.i13.server.kvcache.KVCache;
+import de.tum.i13.server.memory.SlabAllocator;
+import de.tum.i13.server.memory.ValueHandle;
+import de.tum.i13.shared.Constants;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSlabAllocator {
+
+    // ------------------------------------------------ TESTS ----------------------------------------------------------
+    @Test
+    public void testStoreAndReleaseReusesSlots() {
+        SlabAllocator allocator = new SlabAllocator();
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200000; i++)
+            large.append((char) ('a' + i % 26));
+
+        ValueHandle small = allocator.store("value");
+        ValueHandle unicode = allocator.store("wert-\u00e4\u00f6\u00fc");
+        ValueHandle oversized = allocator.store(large.toString());
+        assertEquals("value", small.get());
+        assertEquals("wert-\u00e4\u00f6\u00fc", unicode.get());
+        assertEquals(large.toString(), oversized.get());
+        long reserved = allocator.getReservedBytes();
+        // a value takes its whole slot, an oversized one its own buffer
+        assertEquals(64, small.size());
+        assertEquals(64, unicode.size());
+        assertEquals(large.length(), oversized.size());
+
+        small.release();
+        unicode.release();
+        oversized.release();
+        assertNull(small.get());
+        assertEquals(0, allocator.getUsedBytes());
+
+        // released slots are handed out again instead of growing the arenas
+        for (int i = 0; i < 100; i++)
+            allocator.store("value" + i).release();
+        assertEquals(reserved - large.length(), allocator.getReservedBytes());
+    }
+
+    @Test
+    public void testCacheReleasesEvictedValues() {
+        SlabAllocator allocator = new SlabAllocator();
+        KVCache cache = new KVCache(2, Constants.FIFO, allocator);
+        cache.put("k1", "v1");
+        cache.put("k2", "v2");
+        cache.put("k1", "v1-updated");
+        cache.put("k3", "v3");
+
+        assertNull(cache.get("k1"));
+        assertEquals("v2", cache.get("k2"));
+        assertEquals("v3", cache.get("k3"));
+        assertEquals(4, allocator.getUsedBytes());
+        assertEquals(2 * 64, cache.getStats().getWeight());
+        assertEquals(allocator.getReservedBytes(), cache.getReservedBytes());
+    }
+}